@@ -34,12 +34,16 @@ public class API {
             URL url = new URL(urlString);
             HttpURLConnection connection = (HttpURLConnection) url.openConnection();
             connection.setRequestMethod("GET");
+            // The responses are large JSON texts, so they are asked compressed
+            connection.setRequestProperty("Accept-Encoding", "gzip");
 
             if (connection.getResponseCode() != 200) {
                 throw new RuntimeException("Connection failed: " + connection.getResponseCode());
             }
 
-            BufferedReader br = new BufferedReader(new InputStreamReader((connection.getInputStream())));
+            // The response is decompressed only if the server did compress it
+            BufferedReader br = new BufferedReader(new InputStreamReader(
+                    Compression.decompress(connection.getInputStream())));
             String line;
             StringBuilder sb = new StringBuilder();
             while ((line = br.readLine()) != null) {
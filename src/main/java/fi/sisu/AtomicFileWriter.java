@@ -0,0 +1,147 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class for replacing the content of a file so that a crash never leaves the
+ * file half written. The new content is written to a temporary file next to
+ * the target, forced to the disk and then renamed over the target, so the
+ * target has either its old or its new content. The directory is forced to
+ * the disk after the rename, so that the rename itself survives a crash, and
+ * the target keeps its permissions.
+ */
+public final class AtomicFileWriter {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Interface for writing the content of a file to a stream.
+     */
+    public interface Content {
+
+        /**
+         * Writes the content to the given stream. The stream must not be
+         * closed.
+         *
+         * @param out the stream to write to.
+         * @throws IOException if the content can not be written.
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private AtomicFileWriter() {
+    }
+
+    /**
+     * Replaces the content of the given file with the given bytes.
+     *
+     * @param target the file to write.
+     * @param data the new content of the file.
+     * @throws IOException if the file can not be written. The file keeps its
+     * old content in that case.
+     */
+    public static void write(Path target, byte[] data) throws IOException {
+        write(target, out -> out.write(data));
+    }
+
+    /**
+     * Replaces the content of the given file with the content written by the
+     * given writer.
+     *
+     * @param target the file to write.
+     * @param content the writer of the new content.
+     * @throws IOException if the file can not be written. The file keeps its
+     * old content in that case.
+     */
+    public static void write(Path target, Content content) throws IOException {
+        Path absoluteTarget = target.toAbsolutePath();
+        Path temp = createTempFile(absoluteTarget);
+        try {
+            copyPermissions(absoluteTarget, temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                content.writeTo(out);
+                out.flush();
+                // Make sure the content is on the disk before it replaces the old content
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, absoluteTarget, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+            }
+            forceDirectory(absoluteTarget.getParent());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to the given file. Unlike
+     * Files.createTempFile, the file gets the default permissions of new files
+     * instead of permissions readable only by the owner.
+     *
+     * @param target the file to be written.
+     * @return the temporary file.
+     * @throws IOException if the file can not be created.
+     */
+    private static Path createTempFile(Path target) throws IOException {
+        while (true) {
+            Path temp = target.resolveSibling(target.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + TEMP_SUFFIX);
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // Another write uses the same name, so another name is tried
+            }
+        }
+    }
+
+    /**
+     * Gives the temporary file the permissions of the file it replaces, if the
+     * file exists and the file system has POSIX permissions.
+     *
+     * @param target the file to be replaced.
+     * @param temp the temporary file.
+     * @throws IOException if the permissions can not be read or set.
+     */
+    private static void copyPermissions(Path target, Path temp) throws IOException {
+        try {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+        } catch (NoSuchFileException | UnsupportedOperationException e) {
+            // A new file, or no POSIX permissions
+        }
+    }
+
+    /**
+     * Forces the entries of a directory to the disk. Does nothing on the
+     * platforms where a directory can not be opened, such as Windows.
+     *
+     * @param directory the directory.
+     * @throws IOException if the directory can not be forced to the disk.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException | UnsupportedOperationException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
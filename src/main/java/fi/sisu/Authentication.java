@@ -1,9 +1,20 @@
 package fi.sisu;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * The Authentication class handles user authentication and registration.
+ * The Authentication class handles user authentication and registration. It
+ * also keeps the data of the logged in user in memory for the session, so that
+ * reading it does not touch the disk. The saves are written through to the
+ * user file, and the data is read again only if the file was changed by
+ * someone else or a change of the file was reported. The methods touching the
+ * session are synchronized, as they are called both on the JavaFX thread and
+ * on the threads of the PersistenceService. The saves write a copy of the
+ * session user without holding the lock, so that reading the session on the
+ * JavaFX thread does not wait for the disk.
  */
 public class Authentication {
 
@@ -15,6 +26,27 @@ public class Authentication {
      * The cause of any errors that occur during login or registration.
      */
     private String errorCause;
+    /**
+     * The stored data of the logged in user, or null if it is not read yet.
+     * Only copies of it are given out, so it always matches the user file.
+     */
+    private User sessionUser;
+    /**
+     * The stamp of the user file when the session user was read or saved.
+     */
+    private FileStamp sessionStamp;
+    /**
+     * Whether the user file may have changed since the session user was read.
+     */
+    private boolean sessionStale;
+    /**
+     * The files of the logged in user watched for changes made by others.
+     */
+    private List<Path> watchedFiles = List.of();
+    /**
+     * The listener marking the session user stale when its files change.
+     */
+    private final Runnable sessionInvalidator = this::invalidateCurrentlyLoggedInUser;
 
     /**
      * Attempts to log in the user with the given student number.
@@ -22,35 +54,140 @@ public class Authentication {
      * @param studentNumber the student number to log in with
      * @return true if the login was successful, false otherwise
      */
-    public boolean login(String studentNumber) {
-        User userFromFile = readUserFromFile(studentNumber);
+    public synchronized boolean login(String studentNumber) {
+        errorCause = "Opiskelijanumero on väärin tai sitä ei löytynyt!";
+        // Unregistered student numbers are ruled out in memory without opening a file
+        if (!UserReaderWriter.mightBeRegistered(studentNumber)) {
+            return false;
+        }
+        // Only the header is read, the courses are read when the main scene is opened
+        User userFromFile = UserReaderWriter.readUserHeader(UserReaderWriter.fileNameOf(studentNumber));
         if (userFromFile != null) {
             currentlyLoggedInStudentNumber = studentNumber;
+            sessionUser = null;
+            watchSessionFiles(studentNumber);
         }
-        errorCause = "Opiskelijanumero on väärin tai sitä ei löytynyt!";
         return userFromFile != null;
     }
 
+    /**
+     * Starts watching the files of the logged in user for changes made by
+     * others, and stops watching the files of the previous user.
+     *
+     * @param studentNumber the student number of the logged in user
+     */
+    private synchronized void watchSessionFiles(String studentNumber) {
+        FileChangeWatcher watcher = FileChangeWatcher.getShared();
+        for (Path file : watchedFiles) {
+            watcher.unwatch(file, sessionInvalidator);
+        }
+        watchedFiles = UserReaderWriter.filesOf(studentNumber);
+        for (Path file : watchedFiles) {
+            watcher.watch(file, sessionInvalidator);
+        }
+    }
+
     /**
      * Gets the currently logged in student number.
      *
      * @return the currently logged in student number, or null if no user is
      * logged in
      */
-    public String getCurrentlyLoggedInStudentNumber() {
+    public synchronized String getCurrentlyLoggedInStudentNumber() {
         return currentlyLoggedInStudentNumber;
     }
 
     /**
-     * Gets the currently logged in user.
+     * Gets the currently logged in user. The user is read from the disk only
+     * the first time and after a reported change, otherwise a copy of the
+     * user in memory is returned.
+     *
+     * @return a copy of the currently logged in user, or null if no user is
+     * logged in
+     */
+    public synchronized User getCurrentlyLoggedInUser() {
+        User user = getSessionUser();
+        return user == null ? null : new User(user);
+    }
+
+    /**
+     * Reports that the file of the logged in user may have changed, for
+     * example when a file watcher notices a change. The file is checked on the
+     * next read, and read again if it changed.
+     */
+    public synchronized void invalidateCurrentlyLoggedInUser() {
+        sessionStale = true;
+    }
+
+    /**
+     * Sets the degree programme of the logged in user and writes it to the
+     * user file.
      *
-     * @return the currently logged in user, or null if no user is logged in
+     * @param degreeProgramme the selected degree programme
+     * @return true if the degree programme was saved, false otherwise
      */
-    public User getCurrentlyLoggedInUser() {
-        if (getCurrentlyLoggedInStudentNumber() == null) {
+    public boolean saveDegreeProgramme(DegreeProgramme degreeProgramme) {
+        User user = copyFreshSessionUser();
+        if (user == null) {
+            return false;
+        }
+        boolean saved = new UserReaderWriter(null).setDegreeModuleToAUser(degreeProgramme, user);
+        if (saved) {
+            updateSessionUser(user);
+        }
+        return saved;
+    }
+
+    /**
+     * Replaces the courses of the logged in user with the given selection and
+     * writes them to the user file. The courses are copied, so later changes
+     * to the given courses are saved only when this is called again.
+     *
+     * @param selectedCourses the selected courses in the order they are saved
+     * @return the report of the changes, or null if writing failed or no user
+     * is logged in
+     */
+    public CourseChangeReport saveCourses(List<CourseUnit> selectedCourses) {
+        User user = copyFreshSessionUser();
+        if (user == null) {
             return null;
         }
-        return readUserFromFile(getCurrentlyLoggedInStudentNumber());
+        List<CourseUnit> courses = new ArrayList<>(selectedCourses.size());
+        for (CourseUnit course : selectedCourses) {
+            CourseUnit courseCopy = new CourseUnit(course);
+            courseCopy.setCompleted(course.isCompleted());
+            courses.add(courseCopy);
+        }
+        CourseChangeReport report = new UserReaderWriter(null).saveCourses(courses, user);
+        if (report != null && report.hasChanges()) {
+            updateSessionUser(user);
+        }
+        return report;
+    }
+
+    /**
+     * Returns a copy of the session user for saving, after checking that the
+     * user file has not been changed by someone else.
+     *
+     * @return a copy of the session user, or null if no user is logged in or
+     * the user can not be read
+     */
+    private synchronized User copyFreshSessionUser() {
+        User user = getFreshSessionUser();
+        return user == null ? null : new User(user);
+    }
+
+    /**
+     * Replaces the session user with the saved copy, if the same user is still
+     * logged in. The stamp is left as it is, as the write is recorded as an
+     * own write and a later change by someone else must still be noticed.
+     *
+     * @param savedUser the saved copy of the session user
+     */
+    private synchronized void updateSessionUser(User savedUser) {
+        if (sessionUser != null && savedUser.getStudentNumber().equals(currentlyLoggedInStudentNumber)) {
+            sessionUser = savedUser;
+        }
     }
 
     /**
@@ -58,7 +195,7 @@ public class Authentication {
      *
      * @return the error cause
      */
-    public String getErrorCause() {
+    public synchronized String getErrorCause() {
         return errorCause;
     }
 
@@ -71,9 +208,9 @@ public class Authentication {
      * @return true if the information is valid, false otherwise
      * @throws IOException if an error occurs while checking the information
      */
-    public boolean isRegisterInfoValid(String studentNumber, String studentName) throws IOException {
+    public synchronized boolean isRegisterInfoValid(String studentNumber, String studentName) throws IOException {
         // Perform validation on name and student number fields
-        if (readUserFromFile(studentNumber) != null) {
+        if (UserReaderWriter.isRegistered(studentNumber)) {
             errorCause = "Opiskelijanumero on jo rekisteröity!";
             return false;
         } else if (studentNumber.isEmpty()) {
@@ -89,35 +226,64 @@ public class Authentication {
         iReadAndWriteToFile registerWriter = new UserReaderWriter(regUser);
 
         try {
-            registerWriter.writeToFile(studentNumber + ".json");
-            regUser.toString();
+            registerWriter.writeToFile(UserReaderWriter.fileNameOf(studentNumber));
         } catch (Exception e) {
             System.err.println("Error writing to file: " + e.getMessage());
-            System.out.println();
             return false;
         }
         return true;
     }
 
     /**
-     * Reads a user from file with the given student number.
+     * Returns the stored data of the logged in user, reading it if it is not
+     * read yet or the user file was reported changed.
      *
-     * @param studentNumber the student number to read the user for
-     * @return the User object read from file, or null if no user was found
+     * @return the session user, or null if no user is logged in or the user
+     * can not be read
      */
-    private User readUserFromFile(String studentNumber) {
-        User newUser = new User();
-        UserReaderWriter userReaderWriter = new UserReaderWriter(newUser);
+    private User getSessionUser() {
+        if (currentlyLoggedInStudentNumber == null) {
+            return null;
+        }
+        if (sessionUser == null || sessionStale) {
+            return getFreshSessionUser();
+        }
+        return sessionUser;
+    }
 
-        try {
-            boolean readSuccess = userReaderWriter.readFromFile(studentNumber + ".json");
-            if (readSuccess) {
-                return userReaderWriter.getUser(studentNumber + ".json");
-            }
-        } catch (Exception e) {
-            System.err.println("Error reading user from file: " + e.getMessage());
+    /**
+     * Returns the stored data of the logged in user after checking that the
+     * user file has not been changed by someone else. Only the attributes of
+     * the file are read, unless the file has changed.
+     *
+     * @return the session user, or null if no user is logged in or the user
+     * can not be read
+     */
+    private User getFreshSessionUser() {
+        if (currentlyLoggedInStudentNumber == null) {
+            return null;
+        }
+        String fileName = UserReaderWriter.fileNameOf(currentlyLoggedInStudentNumber);
+        FileStamp stamp = UserReaderWriter.stampOf(fileName);
+        sessionStale = false;
+        if (sessionUser != null && (stamp.equals(sessionStamp) || UserReaderWriter.isOwnWrite(fileName, stamp))) {
+            sessionStamp = stamp;
+            return sessionUser;
         }
+        sessionUser = readUserFromFile(currentlyLoggedInStudentNumber);
+        // Reading writes the delayed saves first, so the stamp is read again
+        sessionStamp = UserReaderWriter.stampOf(fileName);
+        return sessionUser;
+    }
 
-        return null;
+    /**
+     * Reads a user from file with the given student number. The file is read
+     * once, with all the courses of the user.
+     *
+     * @param studentNumber the student number to read the user for
+     * @return the User object read from file, or null if no user was found
+     */
+    private User readUserFromFile(String studentNumber) {
+        return new UserReaderWriter(new User()).getUser(UserReaderWriter.fileNameOf(studentNumber));
     }
 }
@@ -3,9 +3,13 @@ package fi.sisu;
 import com.google.gson.*;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -22,7 +26,28 @@ public class BackgroundHandler {
     private final String COURSE_API_URL_START = "https://sis-tuni.funidata.fi/kori/api/course-units/by-group-id?groupId=";
     private final String COURSE_API_URL_END = "&universityId=tuni-university-root-id";
 
-    private HashMap<String, DegreeProgramme> degreeProgrammes = new HashMap<>();
+    // The maps below are filled on the JavaFX thread and read also by the threads saving and reading the
+    // users, so they are concurrent maps
+    private final ConcurrentHashMap<String, DegreeProgramme> degreeProgrammes = new ConcurrentHashMap<>();
+    // Ids of the degree programmes, whose data has already been searched from the API
+    private final Set<String> loadedDegreeProgrammeIds = ConcurrentHashMap.newKeySet();
+    // Locks held while the data of each degree programme is searched, so that it is searched only once
+    private final ConcurrentHashMap<String, Object> loadLocks = new ConcurrentHashMap<>();
+    // Sorted view of the degree programmes, cleared whenever the map changes
+    private volatile List<DegreeProgramme> sortedDegreeProgrammes;
+    // Pool for sharing identical strings between all modules of the catalog
+    private final StringPool stringPool = new StringPool();
+    // Full-text index of all loaded modules, updated as new modules are loaded
+    private final SearchIndex searchIndex = new SearchIndex();
+    // Ids of the degree programmes by the words of their names and codes
+    private final PrefixTrie<String> degreeProgrammeTrie = new PrefixTrie<>();
+    // Study modules, also the ones containing the course through their child
+    // modules, and ids of the degree programmes containing each course by the
+    // groupId of the course, filled when a degree programme has been loaded
+    private final ConcurrentHashMap<String, Set<StudyModule>> studyModulesByCourseGroupId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> degreeProgrammeIdsByCourseGroupId = new ConcurrentHashMap<>();
+    // All loaded courses by their ids
+    private final ConcurrentHashMap<String, CourseUnit> courseUnitsById = new ConcurrentHashMap<>();
 
     /**
      * On construction, set all degree programmes from the API to the
@@ -60,13 +85,19 @@ public class BackgroundHandler {
         // Check that the array is not null
         if (jsonArray != null && !jsonArray.isJsonNull()) {
             for (JsonElement jsonElement : jsonArray) {
-                // Check that the element is not null and if it is not, get its data
-                // with addCoreDataToModule and add a new degree programme
+                // Check that the element is not null and if it is not, create
+                // a new degree programme from its data with createDegreeProgramme
                 if (!jsonElement.isJsonNull()) {
                     JsonObject jsonDegreeProgramme = gson.fromJson(jsonElement, JsonObject.class);
-                    DegreeProgramme newDP = new DegreeProgramme("", "", "", 0, "", "NULL", "NULL");
-                    addCoreDataToModule(jsonDegreeProgramme, newDP);
+                    DegreeProgramme newDP = createDegreeProgramme(jsonDegreeProgramme);
                     degreeProgrammes.put(newDP.getId(), newDP);
+                    sortedDegreeProgrammes = null;
+                    searchIndex.add(newDP);
+                    degreeProgrammeTrie.add(newDP.getName(), newDP.getId());
+                    if (!newDP.getCode().equals(DegreeModule.NULL_TEXT)) {
+                        degreeProgrammeTrie.add(newDP.getCode(), newDP.getId());
+                        degreeProgrammeTrie.addWord(SearchIndex.foldCode(newDP.getCode()), newDP.getId());
+                    }
                 }
             }
         } else {
@@ -76,26 +107,62 @@ public class BackgroundHandler {
 
     /**
      * Searches a specific degree programme from the API and saves its data with
-     * the help of method searchStudyModulesRecursively.
+     * the help of method searchStudyModulesRecursively. The data of a degree
+     * programme is searched only once, after which the already loaded degree
+     * programme is returned. Calls for the same degree programme from several
+     * threads wait for each other, so the data is not searched twice.
+     *
+     * @param degreeProgramme the degree programme to search data about.
+     * @return the degree programme with its data and study modules, or the
+     * given degree programme if its data could not be searched.
+     */
+    public DegreeProgramme getDataOfDegreeProgramme(DegreeProgramme degreeProgramme) {
+        synchronized (loadLocks.computeIfAbsent(degreeProgramme.getId(), id -> new Object())) {
+            if (loadedDegreeProgrammeIds.contains(degreeProgramme.getId())) {
+                return degreeProgrammes.get(degreeProgramme.getId());
+            }
+            return loadDataOfDegreeProgramme(degreeProgramme);
+        }
+    }
+
+    /**
+     * Searches the data of a degree programme from the API. Called while
+     * holding the load lock of the degree programme.
      *
      * @param degreeProgramme the degree programme to search data about.
+     * @return the degree programme with its data and study modules, or the
+     * given degree programme if its data could not be searched.
      */
-    public void getDataOfDegreeProgramme(DegreeProgramme degreeProgramme) {
+    private DegreeProgramme loadDataOfDegreeProgramme(DegreeProgramme degreeProgramme) {
         try {
             // Get the moduleRuleGroupsResponse from the API
             JsonElement jsonElement = API.getJsonFromApi(MODULE_API_URL_START + degreeProgramme.getGroupId() + MODULE_API_URL_END);
             JsonObject degreeProgrammeData = jsonElement.getAsJsonArray().get(0).getAsJsonObject();
-            addAdditionalDataToModule(degreeProgrammeData, degreeProgramme);
+            DegreeProgramme loadedDP = createLoadedDegreeProgramme(degreeProgrammeData, degreeProgramme);
+            loadedDP.setRule(parseRule(degreeProgrammeData.get("rule")));
 
             JsonObject rule = degreeProgrammeData.get("rule").getAsJsonObject();
             while (!rule.has("rules")) {
                 rule = rule.get("rule").getAsJsonObject();
             }
             JsonArray rules = rule.get("rules").getAsJsonArray();
-            searchStudyModulesRecursively(rules, degreeProgramme);
+            searchStudyModulesRecursively(rules, loadedDP);
+            // Build the index of the degree programme now that all of its content is loaded
+            loadedDP.getIndex();
+            for (StudyModule studyModule : loadedDP.getStudyModulesAsList()) {
+                indexContainingModules(studyModule, new ArrayDeque<>(), loadedDP);
+            }
+
+            // Replace the degree programme from the search results with the loaded one
+            degreeProgrammes.put(loadedDP.getId(), loadedDP);
+            sortedDegreeProgrammes = null;
+            searchIndex.add(loadedDP);
+            loadedDegreeProgrammeIds.add(loadedDP.getId());
+            return loadedDP;
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return degreeProgramme;
     }
 
     /**
@@ -156,12 +223,12 @@ public class BackgroundHandler {
      */
     private void addStudyModulesRecursively(JsonObject groupData, DegreeProgramme degreeProgramme, StudyModule previousModule) {
         try {
-            // Check that the moduleRuleGroupsResponse is not null and then get data about the module
-            // with addCoreDataToModule and addAdditionalDataToModule
+            // Check that the moduleRuleGroupsResponse is not null and then create
+            // the module from its data with createStudyModule
             if (groupData != null && !groupData.isJsonNull()) {
-                StudyModule newStudyModule = new StudyModule("", "", "", 0, "", "", "");
-                addCoreDataToModule(groupData, newStudyModule);
-                addAdditionalDataToModule(groupData, newStudyModule);
+                StudyModule newStudyModule = createStudyModule(groupData);
+                newStudyModule.setRule(parseRule(groupData.get("rule")));
+                searchIndex.add(newStudyModule);
 
                 JsonObject rule = groupData.get("rule").getAsJsonObject();
                 while (!rule.has("rules")) {
@@ -247,164 +314,292 @@ public class BackgroundHandler {
         }
     }
 
+    /**
+     * Parses the given rule of a degree programme or a study module, keeping
+     * its structure and requirements. Rules of other types, such as rules
+     * allowing any course, are parsed as rules that are always fulfilled, so
+     * the rules around them can still be fulfilled.
+     *
+     * @param ruleElement the rule from the API response.
+     * @return the parsed rule, or null if the rule is missing.
+     */
+    private Rule parseRule(JsonElement ruleElement) {
+        if (ruleElement == null || !ruleElement.isJsonObject()) {
+            return null;
+        }
+        JsonObject ruleObject = ruleElement.getAsJsonObject();
+        switch (ruleObject.get("type").getAsString()) {
+            case "CompositeRule":
+                List<Rule> rules = new ArrayList<>();
+                for (JsonElement childElement : ruleObject.get("rules").getAsJsonArray()) {
+                    Rule child = parseRule(childElement);
+                    rules.add(child != null ? child : alwaysFulfilledRule());
+                }
+                boolean allMandatory = ruleObject.has("allMandatory") && !ruleObject.get("allMandatory").isJsonNull()
+                        && ruleObject.get("allMandatory").getAsBoolean();
+                int min = 0;
+                int max = CompositeRule.NO_MAX;
+                if (ruleObject.has("require") && ruleObject.get("require").isJsonObject()) {
+                    JsonObject require = ruleObject.get("require").getAsJsonObject();
+                    min = getIntOrDefault(require, "min", 0);
+                    max = getIntOrDefault(require, "max", CompositeRule.NO_MAX);
+                }
+                return new CompositeRule(min, max, allMandatory, rules);
+            case "CreditsRule":
+                Rule rule = parseRule(ruleObject.get("rule"));
+                if (rule == null) {
+                    rule = alwaysFulfilledRule();
+                }
+                JsonObject credits = ruleObject.get("credits").getAsJsonObject();
+                return new CreditsRule(getIntOrDefault(credits, "min", 0),
+                        getIntOrDefault(credits, "max", CompositeRule.NO_MAX), rule);
+            case "ModuleRule":
+                return new ModuleRule(ruleObject.get("moduleGroupId").getAsString());
+            case "CourseUnitRule":
+                return new CourseUnitRule(ruleObject.get("courseUnitGroupId").getAsString());
+            default:
+                return alwaysFulfilledRule();
+        }
+    }
+
+    /**
+     * Creates a rule that is always fulfilled, used in place of the rules
+     * that are not evaluated.
+     *
+     * @return a composite rule requiring none of its zero rules.
+     */
+    private Rule alwaysFulfilledRule() {
+        return new CompositeRule(0, CompositeRule.NO_MAX, false, new ArrayList<>());
+    }
+
+    /**
+     * Helper method for getting an optional number from the provided
+     * jsonObject.
+     *
+     * @param jsonObject the object to get the number from.
+     * @param memberName the name of the number.
+     * @param defaultValue the value returned if the number is missing or null.
+     * @return the number, or the default value.
+     */
+    private int getIntOrDefault(JsonObject jsonObject, String memberName, int defaultValue) {
+        if (jsonObject.has(memberName) && !jsonObject.get(memberName).isJsonNull()) {
+            return jsonObject.get(memberName).getAsInt();
+        }
+        return defaultValue;
+    }
+
     /**
      * Creates and adds a CourseUnit to the provided module with the help of
-     * methods addCoreDataToModule and addAdditionalDataToModule.
+     * method createCourseUnit.
      *
      * @param courseUnitDataObject the API response of the data for this course.
      * @param studyModule the studyModule to add to course to.
      */
     private void addCourseUnit(JsonObject courseUnitDataObject, StudyModule studyModule) {
-        // Check that the courseUnitDataObject is not null and then get data about the course with addCoreDataToModule and
-        // addAdditionalDataToModule and finally add the course to the modules courseUnits map
+        // Check that the courseUnitDataObject is not null and then create the course from its data
+        // with createCourseUnit and finally add the course to the modules courseUnits map
         if (courseUnitDataObject != null && !courseUnitDataObject.isJsonNull()) {
-            CourseUnit newCourseUnit = new CourseUnit("", "", "", 0, "", "", "");
-            addCoreDataToModule(courseUnitDataObject, newCourseUnit);
-            addAdditionalDataToModule(courseUnitDataObject, newCourseUnit);
+            CourseUnit newCourseUnit = createCourseUnit(courseUnitDataObject);
             studyModule.addCourseUnit(newCourseUnit);
+            searchIndex.add(newCourseUnit);
+            courseUnitsById.put(newCourseUnit.getId(), newCourseUnit);
+        }
+    }
+
+    /**
+     * Adds the courses of the given study module and its child modules to the
+     * reverse index of the containing modules. Each course is recorded under
+     * the study module it is in and under all modules above it.
+     *
+     * @param studyModule the study module.
+     * @param ancestors the study modules above the study module, outermost
+     * first.
+     * @param degreeProgramme the degree programme containing the study module.
+     */
+    private void indexContainingModules(StudyModule studyModule, ArrayDeque<StudyModule> ancestors,
+            DegreeProgramme degreeProgramme) {
+        ancestors.addLast(studyModule);
+        for (CourseUnit courseUnit : studyModule.getCourseUnitsAsList()) {
+            studyModulesByCourseGroupId.computeIfAbsent(courseUnit.getGroupId(),
+                    groupId -> ConcurrentHashMap.newKeySet()).addAll(ancestors);
+            degreeProgrammeIdsByCourseGroupId.computeIfAbsent(courseUnit.getGroupId(),
+                    groupId -> ConcurrentHashMap.newKeySet()).add(degreeProgramme.getId());
+        }
+        for (StudyModule childModule : studyModule.getChildStudyModulesAsList()) {
+            indexContainingModules(childModule, ancestors, degreeProgramme);
         }
+        ancestors.removeLast();
     }
 
     /**
-     * Helper method for getting core data about a degree programme, study
-     * module or course unit. Gets the data from the provided jsonObject and
-     * adds the data to the provided module using its setter methods.
+     * Creates a degree programme from the search results of the API. The
+     * description and outcomes are added when the data of the degree programme
+     * is searched with getDataOfDegreeProgramme.
      *
-     * @param jsonObject the moduleRuleGroupsResponse to search the core data
-     * from.
-     * @param module the degree programme, study module or course unit to add
-     * the data to.
+     * @param jsonObject the search result of the degree programme.
+     * @return the created degree programme.
      */
-    private void addCoreDataToModule(JsonObject jsonObject, DegreeModule module) {
+    private DegreeProgramme createDegreeProgramme(JsonObject jsonObject) {
         String id = jsonObject.get("id").getAsString();
         String groupId = jsonObject.get("groupId").getAsString();
+        String name = jsonObject.get("name").getAsString();
+        int minCredits = jsonObject.get("credits").getAsJsonObject().get("min").getAsInt();
 
-        String code = "NULL";
-        if (jsonObject.has("code") && !jsonObject.get("code").isJsonNull()) {
-            code = jsonObject.get("code").getAsString();
-        }
+        return new DegreeProgramme(name, id, groupId, minCredits, getCode(jsonObject),
+                DegreeModule.NULL_TEXT, DegreeModule.NULL_TEXT, 0, stringPool);
+    }
+
+    /**
+     * Creates a degree programme with its description and outcomes. The core
+     * data is taken from the degree programme of the search results.
+     *
+     * @param jsonObject the API response of the degree programme.
+     * @param degreeProgramme the degree programme of the search results.
+     * @return the created degree programme.
+     */
+    private DegreeProgramme createLoadedDegreeProgramme(JsonObject jsonObject, DegreeProgramme degreeProgramme) {
+        String outcomes = getLocalizedString(jsonObject, "learningOutcomes");
+        String description = getLocalizedString(jsonObject, "contentDescription");
 
-        String name;
+        return new DegreeProgramme(degreeProgramme.getName(), degreeProgramme.getId(), degreeProgramme.getGroupId(),
+                degreeProgramme.getMinCredits(), degreeProgramme.getCode(), textOrNull(description),
+                textOrNull(outcomes), getLabelFlags(description, outcomes), stringPool);
+    }
+
+    /**
+     * Creates a study module from the API response.
+     *
+     * @param jsonObject the API response of the study module.
+     * @return the created study module.
+     */
+    private StudyModule createStudyModule(JsonObject jsonObject) {
+        String id = jsonObject.get("id").getAsString();
+        String groupId = jsonObject.get("groupId").getAsString();
+        String name = getLocalizedString(jsonObject.get("name").getAsJsonObject());
         int minCredits = 0;
+        if (jsonObject.has("targetCredits")) {
+            minCredits = jsonObject.get("targetCredits").getAsJsonObject().get("min").getAsInt();
+        }
 
-        // Search the data based on the instance of the provided module
-        if (module instanceof DegreeProgramme) {
-            name = jsonObject.get("name").getAsString();
-            JsonObject jsonCredits = jsonObject.get("credits").getAsJsonObject();
-            minCredits = jsonCredits.get("min").getAsInt();
+        // Study modules and grouping modules have their descriptions in different fields
+        String outcomes = getLocalizedString(jsonObject, "outcomes");
+        String description;
+        if (jsonObject.get("type").getAsString().equals("StudyModule")) {
+            description = getLocalizedString(jsonObject, "contentDescription");
         } else {
-            JsonObject jsonName = jsonObject.get("name").getAsJsonObject();
-            if (jsonName.has("fi")) {
-                name = jsonName.get("fi").getAsString();
-            } else {
-                name = jsonName.get("en").getAsString();
-            }
-            if (module instanceof StudyModule) {
-                if (jsonObject.has("targetCredits")) {
-                    JsonObject jsonCredits = jsonObject.get("targetCredits").getAsJsonObject();
-                    minCredits = jsonCredits.get("min").getAsInt();
-                }
-            } else {
-                JsonObject jsonCredits = jsonObject.get("credits").getAsJsonObject();
-                minCredits = jsonCredits.get("min").getAsInt();
-            }
+            description = getLocalizedString(jsonObject, "description");
         }
-        // Set the found data to the provided module
-        module.setName(name);
-        module.setId(id);
-        module.setGroupId(groupId);
-        module.setCode(code);
-        module.setMinCredits(minCredits);
+
+        return new StudyModule(name, id, groupId, minCredits, getCode(jsonObject), textOrNull(description),
+                textOrNull(outcomes), getLabelFlags(description, outcomes), stringPool);
     }
 
     /**
-     * Helper method for getting additional data (description and outcomes)
-     * about a degree programme, study module or course unit. Gets the data from
-     * the provided jsonObject and adds the data to the provided module using
-     * its setter methods.
+     * Creates a course unit from the API response.
      *
-     * @param jsonObject the moduleRuleGroupsResponse to search the additional
-     * data from.
-     * @param module the degree programme, study module or course unit to add
-     * the data to.
+     * @param jsonObject the API response of the course unit.
+     * @return the created course unit.
      */
-    private void addAdditionalDataToModule(JsonObject jsonObject, DegreeModule module) {
-        String outcomes = "NULL";
-        String description = "NULL";
-
-        // Search the data based on the instance of the provided module
-        if (module instanceof DegreeProgramme) {
-            if (jsonObject.has("learningOutcomes") && !jsonObject.get("learningOutcomes").isJsonNull()) {
-                JsonObject jsonOutcomes = jsonObject.get("learningOutcomes").getAsJsonObject();
-                if (jsonOutcomes.has("fi")) {
-                    outcomes = "Oppimistavoitteet: " + jsonOutcomes.get("fi").getAsString();
-                } else {
-                    outcomes = "Oppimistavoitteet: " + jsonOutcomes.get("en").getAsString();
-                }
-            }
-            if (jsonObject.has("contentDescription") && !jsonObject.get("contentDescription").isJsonNull()) {
-                JsonObject jsonDescription = jsonObject.get("contentDescription").getAsJsonObject();
-                if (jsonDescription.has("fi")) {
-                    description = "Kuvaus: " + jsonDescription.get("fi").getAsString();
-                } else {
-                    description = "Kuvaus: " + jsonDescription.get("en").getAsString();
-                }
-            }
-        } else {
-            if (jsonObject.has("outcomes") && !jsonObject.get("outcomes").isJsonNull()) {
-                JsonObject jsonOutcomes = jsonObject.get("outcomes").getAsJsonObject();
-                if (jsonOutcomes.has("fi")) {
-                    outcomes = "Oppimistavoitteet: " + jsonOutcomes.get("fi").getAsString();
-                } else {
-                    outcomes = "Oppimistavoitteet: " + jsonOutcomes.get("en").getAsString();
-                }
-            }
-            if (module instanceof StudyModule) {
-                String type = jsonObject.get("type").getAsString();
-                if (type.equals("StudyModule")) {
-                    if (jsonObject.has("contentDescription") && !jsonObject.get("contentDescription").isJsonNull()) {
-                        JsonObject jsonDescription = jsonObject.get("contentDescription").getAsJsonObject();
-                        if (jsonDescription.has("fi")) {
-                            description = "Kuvaus: " + jsonDescription.get("fi").getAsString();
-                        } else {
-                            description = "Kuvaus: " + jsonDescription.get("en").getAsString();
-                        }
-                    }
-                } else {
-                    if (jsonObject.has("description") && !jsonObject.get("description").isJsonNull()) {
-                        JsonObject jsonDescription = jsonObject.get("description").getAsJsonObject();
-                        if (jsonDescription.has("fi")) {
-                            description = "Kuvaus: " + jsonDescription.get("fi").getAsString();
-                        } else {
-                            description = "Kuvaus: " + jsonDescription.get("en").getAsString();
-                        }
-                    }
-                }
-            } else {
-                if (jsonObject.has("content") && !jsonObject.get("content").isJsonNull()) {
-                    JsonObject jsonDescription = jsonObject.get("content").getAsJsonObject();
-                    if (jsonDescription.has("fi")) {
-                        description = "Kuvaus: " + jsonDescription.get("fi").getAsString();
-                    } else {
-                        description = "Kuvaus: " + jsonDescription.get("en").getAsString();
-                    }
-                }
-            }
+    private CourseUnit createCourseUnit(JsonObject jsonObject) {
+        String id = jsonObject.get("id").getAsString();
+        String groupId = jsonObject.get("groupId").getAsString();
+        String name = getLocalizedString(jsonObject.get("name").getAsJsonObject());
+        int minCredits = jsonObject.get("credits").getAsJsonObject().get("min").getAsInt();
+
+        String outcomes = getLocalizedString(jsonObject, "outcomes");
+        String description = getLocalizedString(jsonObject, "content");
+
+        return new CourseUnit(name, id, groupId, minCredits, getCode(jsonObject), textOrNull(description),
+                textOrNull(outcomes), getLabelFlags(description, outcomes), stringPool);
+    }
+
+    /**
+     * Helper method for getting the code of a degree programme, study module or
+     * course unit from the provided jsonObject.
+     *
+     * @param jsonObject the API response to search the code from.
+     * @return the code, or the NULL text if there is no code.
+     */
+    private String getCode(JsonObject jsonObject) {
+        if (jsonObject.has("code") && !jsonObject.get("code").isJsonNull()) {
+            return jsonObject.get("code").getAsString();
         }
-        // Set the found data to the provided module
-        module.setDescription(description);
-        module.setOutcomes(outcomes);
+        return DegreeModule.NULL_TEXT;
     }
 
     /**
-     * Returns all degree programmes as a list, sorted by the names.
+     * Helper method for getting a text from a localized object of the API. The
+     * Finnish text is preferred over the English one.
+     *
+     * @param localizedObject the localized object containing the texts.
+     * @return the Finnish text, or the English text if there is no Finnish one.
+     */
+    private String getLocalizedString(JsonObject localizedObject) {
+        if (localizedObject.has("fi")) {
+            return localizedObject.get("fi").getAsString();
+        }
+        return localizedObject.get("en").getAsString();
+    }
+
+    /**
+     * Helper method for getting a text from an optional localized field of the
+     * provided jsonObject.
+     *
+     * @param jsonObject the API response to search the text from.
+     * @param memberName the name of the localized field.
+     * @return the text of the field, or null if the field does not exist.
+     */
+    private String getLocalizedString(JsonObject jsonObject, String memberName) {
+        if (jsonObject.has(memberName) && !jsonObject.get(memberName).isJsonNull()) {
+            return getLocalizedString(jsonObject.get(memberName).getAsJsonObject());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the given text, or the NULL text if the text was not found.
+     *
+     * @param text the text or null.
+     * @return the text or the NULL text.
+     */
+    private static String textOrNull(String text) {
+        return text != null ? text : DegreeModule.NULL_TEXT;
+    }
+
+    /**
+     * Returns the label flags of a module, so that the found description and
+     * outcomes are shown with their labels.
+     *
+     * @param description the found description or null.
+     * @param outcomes the found outcomes or null.
+     * @return the label flags.
+     */
+    private static int getLabelFlags(String description, String outcomes) {
+        int labelFlags = 0;
+        if (description != null) {
+            labelFlags |= DegreeModule.DESCRIPTION_LABEL_FLAG;
+        }
+        if (outcomes != null) {
+            labelFlags |= DegreeModule.OUTCOMES_LABEL_FLAG;
+        }
+        return labelFlags;
+    }
+
+    /**
+     * Returns all degree programmes as an unmodifiable list, sorted by the
+     * names.
      *
      * @return a sorted list of all degree programmes.
      */
     public List<DegreeProgramme> getDegreeProgrammesAsList() {
-        ArrayList<DegreeProgramme> list = new ArrayList<>(degreeProgrammes.values());
-        list.sort(DegreeModule::compareTo);
-        return list;
+        List<DegreeProgramme> sorted = sortedDegreeProgrammes;
+        if (sorted == null) {
+            ArrayList<DegreeProgramme> list = new ArrayList<>(degreeProgrammes.values());
+            list.sort(DegreeModule::compareTo);
+            sorted = Collections.unmodifiableList(list);
+            sortedDegreeProgrammes = sorted;
+        }
+        return sorted;
     }
 
     /**
@@ -417,4 +612,98 @@ public class BackgroundHandler {
     public DegreeProgramme getDegreeProgrammeById(String id) {
         return degreeProgrammes.get(id);
     }
+
+    /**
+     * Returns a loaded course searched by its id. Only the courses of the
+     * degree programmes already loaded with getDataOfDegreeProgramme are
+     * found.
+     *
+     * @param id the id of the course.
+     * @return the course, or null if it is not loaded.
+     */
+    public CourseUnit getCourseUnitById(String id) {
+        return courseUnitsById.get(id);
+    }
+
+    /**
+     * Returns the study modules containing the course with the given groupId,
+     * directly or through their child modules. Only the degree programmes
+     * already loaded with getDataOfDegreeProgramme are included.
+     *
+     * @param courseGroupId the groupId of the course.
+     * @return list of the study modules containing the course, sorted by the
+     * names.
+     */
+    public List<StudyModule> getStudyModulesContaining(String courseGroupId) {
+        ArrayList<StudyModule> list = new ArrayList<>(
+                studyModulesByCourseGroupId.getOrDefault(courseGroupId, Set.of()));
+        list.sort(DegreeModule::compareTo);
+        return list;
+    }
+
+    /**
+     * Returns the degree programmes containing the course with the given
+     * groupId. Only the degree programmes already loaded with
+     * getDataOfDegreeProgramme are included.
+     *
+     * @param courseGroupId the groupId of the course.
+     * @return list of the degree programmes containing the course, sorted by
+     * the names.
+     */
+    public List<DegreeProgramme> getDegreeProgrammesContaining(String courseGroupId) {
+        ArrayList<DegreeProgramme> list = new ArrayList<>();
+        for (String id : degreeProgrammeIdsByCourseGroupId.getOrDefault(courseGroupId, Set.of())) {
+            list.add(degreeProgrammes.get(id));
+        }
+        list.sort(DegreeModule::compareTo);
+        return list;
+    }
+
+    /**
+     * Finds the ids of the degree programmes having a word in their name or
+     * code starting with each word of the given query. Used for filtering the
+     * degree programmes while the user types.
+     *
+     * @param query the start of the name or the code.
+     * @return set of the ids of the matching degree programmes.
+     */
+    public Set<String> findDegreeProgrammeIds(String query) {
+        return degreeProgrammeTrie.find(query);
+    }
+
+    /**
+     * Searches the loaded degree programmes, study modules and courses by their
+     * names, codes, descriptions and learning outcomes.
+     *
+     * @param query the search query.
+     * @param limit the maximum amount of results.
+     * @return list of the best matching modules, best match first.
+     */
+    public List<DegreeModule> searchModules(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * Searches the loaded modules passing the given filter, for example the
+     * modules of a single degree programme. The filter is applied before the
+     * limit.
+     *
+     * @param query the search query.
+     * @param limit the maximum amount of results.
+     * @param filter the filter the results must pass.
+     * @return list of the best matching modules, best match first.
+     */
+    public List<DegreeModule> searchModules(String query, int limit, Predicate<DegreeModule> filter) {
+        return searchIndex.search(query, limit, filter);
+    }
+
+    /**
+     * Returns the string pool shared by all modules of the catalog. Its report
+     * can be used to see how much memory the deduplication saves.
+     *
+     * @return the catalog string pool.
+     */
+    public StringPool getStringPool() {
+        return stringPool;
+    }
 }
@@ -0,0 +1,303 @@
+package fi.sisu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Class for storing the data of a user in a compact binary format. All texts
+ * of the user and its courses are written once to a dictionary at the start
+ * of the data, and the fields refer to them by their index, so repeated
+ * texts such as the ids shared by the courses and the "NULL" placeholders
+ * take only a byte. Lengths, indexes and credits are written as varints, and
+ * the completion flags of the courses as a bitset at the end.
+ * <p>
+ * The data starts with the bytes "SISU" and a version byte, which can never
+ * start a JSON file.
+ */
+public class BinaryUserCodec implements UserCodec {
+
+    /**
+     * Name of the format.
+     */
+    public static final String NAME = "binary";
+
+    private static final byte[] MAGIC = {'S', 'I', 'S', 'U'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    // The index of a missing text, such as the degree programme of a new user
+    private static final int NO_TEXT = 0;
+
+    /**
+     * Returns the name of the format.
+     *
+     * @return "binary".
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Checks whether the given data starts with the header of this format.
+     *
+     * @param data the data.
+     * @return true if the data starts with "SISU", otherwise false.
+     */
+    @Override
+    public boolean canDecode(byte[] data) {
+        if (data.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the data of the given user.
+     *
+     * @param user the user to encode.
+     * @return the encoded data.
+     */
+    @Override
+    public byte[] encode(User user) {
+        List<CourseUnit> courses = user.getCourses();
+        Dictionary dictionary = new Dictionary();
+        ByteArrayOutputStream fields = new ByteArrayOutputStream();
+        writeVarint(fields, dictionary.indexOf(user.getName()));
+        writeVarint(fields, dictionary.indexOf(user.getStudentNumber()));
+        writeVarint(fields, dictionary.indexOf(user.getDegreeModule()));
+        writeVarint(fields, courses.size());
+        for (CourseUnit course : courses) {
+            writeVarint(fields, dictionary.indexOf(course.getName()));
+            writeVarint(fields, dictionary.indexOf(course.getId()));
+            writeVarint(fields, dictionary.indexOf(course.getGroupId()));
+            writeVarint(fields, Math.max(0, course.getMinCredits()));
+            writeVarint(fields, dictionary.indexOf(course.getCode()));
+            writeVarint(fields, dictionary.indexOf(course.getDescription()));
+            writeVarint(fields, dictionary.indexOf(course.getOutcomes()));
+        }
+        byte[] completed = new byte[(courses.size() + 7) / 8];
+        for (int i = 0; i < courses.size(); i++) {
+            if (courses.get(i).isCompleted()) {
+                completed[i / 8] |= 1 << (i % 8);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(VERSION);
+        writeVarint(out, dictionary.texts.size());
+        for (String text : dictionary.texts) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        byte[] fieldBytes = fields.toByteArray();
+        out.write(fieldBytes, 0, fieldBytes.length);
+        out.write(completed, 0, completed.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a user from the given data.
+     *
+     * @param data the encoded data.
+     * @return the decoded user.
+     * @throws IOException if the data is broken or of an unknown version.
+     */
+    @Override
+    public User decode(byte[] data) throws IOException {
+        return read(data, false);
+    }
+
+    /**
+     * Decodes the name, the student number and the degree programme of a
+     * user, without reading its courses.
+     *
+     * @param data the encoded data.
+     * @return the decoded user without courses.
+     * @throws IOException if the data is broken or of an unknown version.
+     */
+    @Override
+    public User decodeHeader(byte[] data) throws IOException {
+        return read(data, true);
+    }
+
+    /**
+     * Reads a user from the encoded data.
+     *
+     * @param data the encoded data.
+     * @param headerOnly true if the courses are not read.
+     * @return the user.
+     * @throws IOException if the data is broken or of an unknown version.
+     */
+    private User read(byte[] data, boolean headerOnly) throws IOException {
+        if (!canDecode(data) || data.length < HEADER_SIZE) {
+            throw new IOException("Not binary user data");
+        }
+        if (data[MAGIC.length] != VERSION) {
+            throw new IOException("Unsupported binary user data version: " + data[MAGIC.length]);
+        }
+        Reader reader = new Reader(data, HEADER_SIZE);
+        int textCount = reader.readVarint();
+        // Index 0 is the missing text
+        String[] texts = new String[textCount + 1];
+        for (int i = 1; i <= textCount; i++) {
+            int length = reader.readVarint();
+            texts[i] = new String(data, reader.take(length), length, StandardCharsets.UTF_8);
+        }
+
+        User user = new User(reader.readText(texts), reader.readText(texts));
+        user.setDegreeModule(reader.readText(texts));
+        if (headerOnly) {
+            return user;
+        }
+        int courseCount = reader.readVarint();
+        List<CourseUnit> courses = new ArrayList<>(Math.min(courseCount, data.length));
+        for (int i = 0; i < courseCount; i++) {
+            String name = reader.readText(texts);
+            String id = reader.readText(texts);
+            String groupId = reader.readText(texts);
+            int minCredits = reader.readVarint();
+            String code = reader.readText(texts);
+            String description = reader.readText(texts);
+            String outcomes = reader.readText(texts);
+            courses.add(new CourseUnit(name, id, groupId, minCredits, code, description, outcomes));
+        }
+        int completed = reader.take((courseCount + 7) / 8);
+        for (int i = 0; i < courseCount; i++) {
+            courses.get(i).setCompleted((data[completed + i / 8] & (1 << (i % 8))) != 0);
+        }
+        user.setCourses(courses);
+        return user;
+    }
+
+    /**
+     * Writes an unsigned varint, 7 bits per byte with the highest bit set on
+     * all but the last byte.
+     *
+     * @param out the stream to write to.
+     * @param value the value, at least 0.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Class for the texts of the encoded user, each written once.
+     */
+    private static class Dictionary {
+
+        private final List<String> texts = new ArrayList<>();
+        private final HashMap<String, Integer> indexes = new HashMap<>();
+
+        /**
+         * Returns the index of the given text, adding it to the dictionary if
+         * it is not there yet.
+         *
+         * @param text the text, or null.
+         * @return the index of the text starting from 1, or NO_TEXT if the
+         * text is null.
+         */
+        int indexOf(String text) {
+            if (text == null) {
+                return NO_TEXT;
+            }
+            Integer index = indexes.get(text);
+            if (index == null) {
+                texts.add(text);
+                index = texts.size();
+                indexes.put(text, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Class for reading the encoded data with bounds checks, so that broken
+     * data gives an IOException.
+     */
+    private static class Reader {
+
+        private final byte[] data;
+        private int position;
+
+        /**
+         * Constructs a new reader.
+         *
+         * @param data the encoded data.
+         * @param position the position to start reading from.
+         */
+        Reader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        /**
+         * Reads an unsigned varint.
+         *
+         * @return the value.
+         * @throws IOException if the data ends or the value is too large.
+         */
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (position >= data.length) {
+                    throw new IOException("Unexpected end of binary user data");
+                }
+                int b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Invalid varint in binary user data");
+        }
+
+        /**
+         * Reads the index of a text and returns the text.
+         *
+         * @param texts the dictionary.
+         * @return the text, or null for NO_TEXT.
+         * @throws IOException if the index is not in the dictionary.
+         */
+        String readText(String[] texts) throws IOException {
+            int index = readVarint();
+            if (index >= texts.length) {
+                throw new IOException("Invalid text index in binary user data");
+            }
+            return texts[index];
+        }
+
+        /**
+         * Skips the given amount of bytes.
+         *
+         * @param length the amount of bytes.
+         * @return the position of the first skipped byte.
+         * @throws IOException if the data ends before.
+         */
+        int take(int length) throws IOException {
+            if (length > data.length - position) {
+                throw new IOException("Unexpected end of binary user data");
+            }
+            int start = position;
+            position += length;
+            return start;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package fi.sisu;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class for a rule requiring some of the rules under it. Either all of the
+ * rules are mandatory, or the amount of the fulfilled rules must be between
+ * the minimum and the maximum.
+ */
+public class CompositeRule extends Rule {
+
+    /**
+     * The maximum used when the amount of the fulfilled rules is not limited.
+     */
+    public static final int NO_MAX = Integer.MAX_VALUE;
+
+    private final int min;
+    private final int max;
+    private final boolean allMandatory;
+    private final List<Rule> rules;
+
+    /**
+     *
+     * @param min the minimum amount of the fulfilled rules.
+     * @param max the maximum amount of the fulfilled rules, or NO_MAX.
+     * @param allMandatory true if all of the rules must be fulfilled.
+     * @param rules the rules under this rule.
+     */
+    public CompositeRule(int min, int max, boolean allMandatory, List<Rule> rules) {
+        this.min = min;
+        this.max = max;
+        this.allMandatory = allMandatory;
+        this.rules = Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Returns the minimum amount of the fulfilled rules.
+     *
+     * @return the minimum amount.
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the maximum amount of the fulfilled rules.
+     *
+     * @return the maximum amount, or NO_MAX if it is not limited.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Returns whether all of the rules must be fulfilled.
+     *
+     * @return true if all of the rules are mandatory, otherwise false.
+     */
+    public boolean isAllMandatory() {
+        return allMandatory;
+    }
+
+    @Override
+    public List<Rule> getRules() {
+        return rules;
+    }
+}
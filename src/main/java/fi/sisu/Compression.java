@@ -0,0 +1,85 @@
+package fi.sisu;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class for compressing data with gzip. Compressed data is recognized from
+ * its first two bytes, so compressed and plain data can be read by the same
+ * code.
+ */
+public final class Compression {
+
+    private static final byte MAGIC_1 = (byte) 0x1F;
+    private static final byte MAGIC_2 = (byte) 0x8B;
+    private static final int BUFFER_SIZE = 8192;
+
+    private Compression() {
+    }
+
+    /**
+     * Checks whether the given data is compressed with gzip.
+     *
+     * @param data the data.
+     * @return true if the data starts with the gzip header, otherwise false.
+     */
+    public static boolean isCompressed(byte[] data) {
+        return data.length >= 2 && data[0] == MAGIC_1 && data[1] == MAGIC_2;
+    }
+
+    /**
+     * Compresses the given data.
+     *
+     * @param data the data.
+     * @return the compressed data.
+     * @throws IOException if the data can not be compressed.
+     */
+    public static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses the given data, if it is compressed.
+     *
+     * @param data the compressed or plain data.
+     * @return the plain data.
+     * @throws IOException if the compressed data is broken.
+     */
+    public static byte[] decompress(byte[] data) throws IOException {
+        if (!isCompressed(data)) {
+            return data;
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data), BUFFER_SIZE)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Returns a stream decompressing the given stream, if its data is
+     * compressed.
+     *
+     * @param in the stream of compressed or plain data.
+     * @return the stream of plain data.
+     * @throws IOException if the stream can not be read.
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == (MAGIC_1 & 0xFF) && second == (MAGIC_2 & 0xFF)) {
+            return new GZIPInputStream(buffered, BUFFER_SIZE);
+        }
+        return buffered;
+    }
+}
@@ -0,0 +1,287 @@
+package fi.sisu;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class for the snapshot of the courses saved by the users. The user files of
+ * the reference format store only the ids of their courses, and the rest of
+ * the data is read from the loaded degree programmes or from this snapshot,
+ * which is shared by all users. The snapshot has a version, which is
+ * increased every time new courses are added to it, and the user files
+ * tell the version they need, so that a snapshot older than the user file is
+ * read again.
+ * <p>
+ * The snapshot may be shared by several processes. New courses are added
+ * while holding a lock on a lock file next to the snapshot, named after it
+ * with the suffix ".lock", such as courseCatalog.json.lock in the working
+ * directory. The lock file is empty and is left in place, as deleting it
+ * could let two processes lock different files. If the snapshot was changed
+ * by another process, it is read again and the new courses are added to its
+ * courses, so that the courses added by others are kept. Placeholders of
+ * courses missing from the catalog are never added.
+ * <p>
+ * A snapshot file that can not be read is never written over, as the user
+ * files of other users may need its courses. Adding courses fails until the
+ * file can be read again.
+ */
+public class CourseCatalogSnapshot {
+
+    /**
+     * Name of the system property setting the file of the shared snapshot.
+     */
+    public static final String FILE_PROPERTY = "sisu.catalogFile";
+
+    private static final String DEFAULT_FILE = "courseCatalog.json";
+    private static final String LOCK_SUFFIX = ".lock";
+    // Locks of the snapshot files within this process, as a file lock is held by the whole process
+    private static final ConcurrentHashMap<Path, Object> LOCKS = new ConcurrentHashMap<>();
+    private static CourseCatalogSnapshot shared;
+
+    private final Path file;
+    private final LinkedHashMap<String, CourseUnit> courses = new LinkedHashMap<>();
+    private int version;
+    private boolean loaded;
+    // Whether reading the file failed, in which case the file is not written
+    private boolean loadFailed;
+    // Stamp of the file when it was read or written by this snapshot
+    private FileStamp stamp;
+
+    /**
+     * Constructs a snapshot stored in the given file. The file is read when
+     * the snapshot is used the first time.
+     *
+     * @param file the file of the snapshot.
+     */
+    public CourseCatalogSnapshot(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the snapshot shared by all users, stored in the file set with
+     * the FILE_PROPERTY system property. The snapshot is read again when its
+     * file is changed by another process.
+     *
+     * @return the shared snapshot.
+     */
+    public static synchronized CourseCatalogSnapshot getShared() {
+        if (shared == null) {
+            CourseCatalogSnapshot snapshot = new CourseCatalogSnapshot(
+                    Path.of(System.getProperty(FILE_PROPERTY, DEFAULT_FILE)));
+            FileChangeWatcher.getShared().watch(snapshot.file, snapshot::invalidate);
+            shared = snapshot;
+        }
+        return shared;
+    }
+
+    /**
+     * Replaces the shared snapshot. Used by the tests to keep the snapshot
+     * out of the working directory.
+     *
+     * @param snapshot the new shared snapshot, or null to read the file of the
+     * system property again.
+     */
+    static synchronized void setShared(CourseCatalogSnapshot snapshot) {
+        shared = snapshot;
+    }
+
+    /**
+     * Returns the file of the snapshot.
+     *
+     * @return the file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Drops the courses read from the file, if the file has been changed
+     * since this snapshot read or wrote it, so that the file is read again
+     * when the snapshot is used next time.
+     */
+    public synchronized void invalidate() {
+        if (!loaded || FileStamp.of(file).equals(stamp)) {
+            return;
+        }
+        loaded = false;
+        courses.clear();
+        version = 0;
+    }
+
+    /**
+     * Returns the version of the snapshot.
+     *
+     * @return the version, 0 if the snapshot is empty.
+     */
+    public synchronized int getVersion() {
+        load();
+        return version;
+    }
+
+    /**
+     * Makes sure the snapshot has at least the given version, reading the file
+     * again if a newer version has been written by another process since the
+     * file was read. Called before the courses of a user file written with
+     * that version are read.
+     *
+     * @param requiredVersion the version the user file was written with.
+     */
+    public synchronized void requireVersion(int requiredVersion) {
+        load();
+        if (version < requiredVersion) {
+            reload();
+        }
+    }
+
+    /**
+     * Returns a course of the snapshot.
+     *
+     * @param id the id of the course.
+     * @return the course, or null if the snapshot does not have it. The
+     * course is shared, so it must be copied before its completion is set.
+     */
+    public synchronized CourseUnit get(String id) {
+        load();
+        return courses.get(id);
+    }
+
+    /**
+     * Adds the given courses to the snapshot, and writes the snapshot to its
+     * file with a new version if any of them was not in it before. The
+     * placeholders of missing courses are skipped.
+     *
+     * @param newCourses the courses to add.
+     * @return the version of the snapshot containing the courses.
+     * @throws IOException if the snapshot can not be written, or its file can
+     * not be read and would lose courses if it was written.
+     */
+    public synchronized int addAll(Collection<CourseUnit> newCourses) throws IOException {
+        load();
+        if (!loadFailed && missingCourses(newCourses).isEmpty()) {
+            return version;
+        }
+        Path absoluteFile = file.toAbsolutePath();
+        synchronized (LOCKS.computeIfAbsent(absoluteFile, f -> new Object())) {
+            try (FileChannel lockChannel = FileChannel.open(
+                    absoluteFile.resolveSibling(absoluteFile.getFileName() + LOCK_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // The lock is released when the channel is closed
+                lockChannel.lock();
+                // Another process may have added courses since the file was read
+                if (loadFailed || !FileStamp.of(file).equals(stamp)) {
+                    reload();
+                }
+                if (loadFailed) {
+                    throw new IOException("The course catalog can not be read, so it is not written: " + file);
+                }
+                List<CourseUnit> missing = missingCourses(newCourses);
+                if (missing.isEmpty()) {
+                    return version;
+                }
+                for (CourseUnit course : missing) {
+                    courses.put(course.getId(), new CourseUnit(course));
+                }
+                version++;
+                AtomicFileWriter.write(file, out -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    write(writer);
+                });
+                stamp = FileStamp.of(file);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Returns the given courses that are not in the snapshot, without the
+     * placeholders of missing courses.
+     *
+     * @param newCourses the courses.
+     * @return the courses missing from the snapshot.
+     */
+    private List<CourseUnit> missingCourses(Collection<CourseUnit> newCourses) {
+        List<CourseUnit> missing = new ArrayList<>();
+        for (CourseUnit course : newCourses) {
+            if (!course.isPlaceholder() && !courses.containsKey(course.getId())) {
+                missing.add(course);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Writes the snapshot as JSON.
+     *
+     * @param writer the writer to write to.
+     * @throws IOException if the snapshot can not be written.
+     */
+    private void write(Writer writer) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.beginObject();
+        jsonWriter.name("version").value(version);
+        jsonWriter.name("courses").beginArray();
+        for (CourseUnit course : courses.values()) {
+            UserJsonWriter.writeFullCourse(course, jsonWriter);
+        }
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    /**
+     * Reads the snapshot from its file again.
+     */
+    private void reload() {
+        loaded = false;
+        courses.clear();
+        version = 0;
+        load();
+    }
+
+    /**
+     * Reads the snapshot from its file, if it is not read yet. A missing file
+     * leaves the snapshot empty, and a broken file leaves it with the courses
+     * read before the error and marks the load failed.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        loadFailed = false;
+        stamp = FileStamp.of(file);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
+            version = jsonObject.get("version").getAsInt();
+            for (JsonElement courseElement : jsonObject.getAsJsonArray("courses")) {
+                CourseUnit course = UserReaderWriter.parseCourse(courseElement.getAsJsonObject());
+                courses.put(course.getId(), course);
+            }
+        } catch (NoSuchFileException e) {
+            // No courses are saved yet
+        } catch (IOException | JsonParseException | IllegalStateException | NullPointerException e) {
+            System.err.println("Error reading course catalog: " + file);
+            e.printStackTrace();
+            loadFailed = true;
+        }
+    }
+}
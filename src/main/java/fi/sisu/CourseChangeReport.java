@@ -0,0 +1,92 @@
+package fi.sisu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class for the changes made to the courses of a user when the selection of
+ * courses is saved.
+ */
+public class CourseChangeReport {
+
+    private final List<CourseUnit> added = new ArrayList<>();
+    private final List<CourseUnit> removed = new ArrayList<>();
+    private final List<CourseUnit> completionChanged = new ArrayList<>();
+
+    /**
+     * Adds a course, which was not selected before.
+     *
+     * @param course the added course.
+     */
+    void addAdded(CourseUnit course) {
+        added.add(course);
+    }
+
+    /**
+     * Adds a course, which is no longer selected.
+     *
+     * @param course the removed course.
+     */
+    void addRemoved(CourseUnit course) {
+        removed.add(course);
+    }
+
+    /**
+     * Adds a course, which was marked completed or not completed.
+     *
+     * @param course the course with its new completion state.
+     */
+    void addCompletionChanged(CourseUnit course) {
+        completionChanged.add(course);
+    }
+
+    /**
+     * Returns the courses, which were not selected before.
+     *
+     * @return unmodifiable list of the added courses.
+     */
+    public List<CourseUnit> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * Returns the courses, which are no longer selected.
+     *
+     * @return unmodifiable list of the removed courses.
+     */
+    public List<CourseUnit> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Returns the courses, which were marked completed or not completed.
+     *
+     * @return unmodifiable list of the courses with their new completion
+     * states.
+     */
+    public List<CourseUnit> getCompletionChanged() {
+        return Collections.unmodifiableList(completionChanged);
+    }
+
+    /**
+     * Checks whether anything changed.
+     *
+     * @return true if courses were added, removed or their completion changed,
+     * otherwise false.
+     */
+    public boolean hasChanges() {
+        return !added.isEmpty() || !removed.isEmpty() || !completionChanged.isEmpty();
+    }
+
+    /**
+     * Returns a summary of the changes.
+     *
+     * @return the amounts of the added, removed and changed courses.
+     */
+    @Override
+    public String toString() {
+        return "added " + added.size() + ", removed " + removed.size()
+                + ", completion changed " + completionChanged.size();
+    }
+}
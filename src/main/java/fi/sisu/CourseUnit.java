@@ -4,7 +4,10 @@ package fi.sisu;
  * Class for modeling a Course. Extends the DegreeModule class.
  */
 public class CourseUnit extends DegreeModule {
-    public boolean completed = false;
+    // The only mutable state of a course is the user's completion status
+    private volatile boolean completed = false;
+    // Whether the course stands in for a course missing from the catalog
+    private final boolean placeholder;
 
     /**
      *
@@ -18,6 +21,71 @@ public class CourseUnit extends DegreeModule {
      */
     public CourseUnit(String name, String id, String groupId, int minCredits, String code, String description, String outcomes) {
         super(name, id, groupId, minCredits, code, description, outcomes);
+        this.placeholder = false;
+    }
+
+    /**
+     * Constructs a placeholder course with only its ids.
+     *
+     * @param id id of the course.
+     * @param groupId groupId of the course.
+     */
+    private CourseUnit(String id, String groupId) {
+        super(id, id, groupId, 0, NULL_TEXT, NULL_TEXT, NULL_TEXT);
+        this.placeholder = true;
+    }
+
+    /**
+     * Constructor used when building the catalog.
+     *
+     * @param name name of the course.
+     * @param id id of the course.
+     * @param groupId groupId of the course.
+     * @param minCredits credits to pass the course.
+     * @param code code of the course.
+     * @param description description of the course without its label.
+     * @param outcomes learning outcomes of the course without their label.
+     * @param labelFlags flags telling which texts are shown with their labels.
+     * @param stringPool pool used for sharing the strings.
+     */
+    CourseUnit(String name, String id, String groupId, int minCredits, String code, String description,
+            String outcomes, int labelFlags, StringPool stringPool) {
+        super(name, id, groupId, minCredits, code, description, outcomes, labelFlags, stringPool);
+        this.placeholder = false;
+    }
+
+    /**
+     * Constructs a copy of the given course without its completion status, so
+     * that the completion of a user can be set without changing the catalog.
+     *
+     * @param courseUnit the course to copy.
+     */
+    CourseUnit(CourseUnit courseUnit) {
+        super(courseUnit);
+        this.placeholder = courseUnit.placeholder;
+    }
+
+    /**
+     * Returns a placeholder for a course of a user that is not found in the
+     * loaded degree programmes or the course catalog. The placeholder has the
+     * id as its name and no other data, and it is never added to the catalog.
+     *
+     * @param id id of the course.
+     * @param groupId groupId of the course.
+     * @return the placeholder course.
+     */
+    static CourseUnit placeholder(String id, String groupId) {
+        return new CourseUnit(id, groupId);
+    }
+
+    /**
+     * Returns whether the course is a placeholder for a course missing from
+     * the catalog.
+     *
+     * @return true if the course is a placeholder, otherwise false.
+     */
+    public boolean isPlaceholder() {
+        return placeholder;
     }
 
     /**
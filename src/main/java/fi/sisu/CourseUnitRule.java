@@ -0,0 +1,26 @@
+package fi.sisu;
+
+/**
+ * Class for a rule requiring the course with the given group id.
+ */
+public class CourseUnitRule extends Rule {
+
+    private final String courseUnitGroupId;
+
+    /**
+     *
+     * @param courseUnitGroupId the group id of the required course.
+     */
+    public CourseUnitRule(String courseUnitGroupId) {
+        this.courseUnitGroupId = courseUnitGroupId;
+    }
+
+    /**
+     * Returns the group id of the required course.
+     *
+     * @return the group id of the course.
+     */
+    public String getCourseUnitGroupId() {
+        return courseUnitGroupId;
+    }
+}
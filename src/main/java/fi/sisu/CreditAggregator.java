@@ -0,0 +1,166 @@
+package fi.sisu;
+
+import java.util.HashSet;
+
+/**
+ * Class for keeping count of the selected and completed credits under every
+ * module of a degree programme. The credits are kept in Fenwick trees over the
+ * pre-order layout of the ProgrammeIndex, so selecting or completing a course
+ * updates the totals of all its ancestors in logarithmic time, and the total of
+ * any module is a range sum over its subtree.
+ * <p>
+ * A course can be in several study modules, and it is counted once in every
+ * module containing it. Its credits are added at each of its positions and
+ * subtracted at the lowest common ancestor of each two consecutive positions.
+ * The positions of a course under any module are consecutive in the pre-order,
+ * and the common ancestors of exactly those pairs are under the module too, so
+ * the sum over the subtree has the credits of the course once.
+ */
+public class CreditAggregator {
+
+    private final ProgrammeIndex index;
+    // Fenwick trees of the credits at each position, indexed from 1
+    private final int[] selectedCredits;
+    private final int[] completedCredits;
+    // Ids of the courses currently counted in the trees above
+    private final HashSet<String> selectedIds = new HashSet<>();
+    private final HashSet<String> completedIds = new HashSet<>();
+
+    /**
+     * Constructs a new aggregator with no selected or completed courses.
+     *
+     * @param index the index of the degree programme.
+     */
+    public CreditAggregator(ProgrammeIndex index) {
+        this.index = index;
+        this.selectedCredits = new int[index.size() + 1];
+        this.completedCredits = new int[index.size() + 1];
+    }
+
+    /**
+     * Sets whether the given course is selected by the user.
+     *
+     * @param courseUnit the course.
+     * @param selected true if the course is selected, otherwise false.
+     */
+    public void setSelected(CourseUnit courseUnit, boolean selected) {
+        update(selectedCredits, selectedIds, courseUnit, selected);
+    }
+
+    /**
+     * Sets whether the given course is completed by the user.
+     *
+     * @param courseUnit the course.
+     * @param completed true if the course is completed, otherwise false.
+     */
+    public void setCompleted(CourseUnit courseUnit, boolean completed) {
+        update(completedCredits, completedIds, courseUnit, completed);
+    }
+
+    /**
+     * Returns the sum of the credits of the selected courses under the given
+     * module.
+     *
+     * @param module the degree programme, study module or course.
+     * @return the selected credits, or 0 if the module is not in the degree
+     * programme.
+     */
+    public int getSelectedCredits(DegreeModule module) {
+        return sumOfSubtree(selectedCredits, module);
+    }
+
+    /**
+     * Returns the sum of the credits of the completed courses under the given
+     * module.
+     *
+     * @param module the degree programme, study module or course.
+     * @return the completed credits, or 0 if the module is not in the degree
+     * programme.
+     */
+    public int getCompletedCredits(DegreeModule module) {
+        return sumOfSubtree(completedCredits, module);
+    }
+
+    /**
+     * Adds or removes the credits of the course once under every module
+     * containing it, if its state changes.
+     *
+     * @param tree the Fenwick tree to update.
+     * @param ids the ids of the courses counted in the tree.
+     * @param courseUnit the course.
+     * @param counted true if the course should be counted, otherwise false.
+     */
+    private void update(int[] tree, HashSet<String> ids, CourseUnit courseUnit, boolean counted) {
+        boolean changed = counted ? ids.add(courseUnit.getId()) : ids.remove(courseUnit.getId());
+        if (!changed) {
+            return;
+        }
+        int[] positions = index.getPositions(courseUnit.getId());
+        for (int i = 0; i < positions.length; i++) {
+            int credits = index.getNode(positions[i]).getMinCredits();
+            add(tree, positions[i], counted ? credits : -credits);
+            if (i > 0) {
+                // The modules containing both positions have counted the course twice
+                add(tree, commonAncestor(positions[i - 1], positions[i]), counted ? -credits : credits);
+            }
+        }
+    }
+
+    /**
+     * Returns the lowest common ancestor of two positions.
+     *
+     * @param first the earlier position.
+     * @param second the later position.
+     * @return the position of the lowest module containing both positions.
+     */
+    private int commonAncestor(int first, int second) {
+        int ancestor = index.getParent(first);
+        while (ancestor > 0 && !index.isAncestor(ancestor, second)) {
+            ancestor = index.getParent(ancestor);
+        }
+        return Math.max(ancestor, 0);
+    }
+
+    /**
+     * Returns the sum of the subtree of the given module.
+     *
+     * @param tree the Fenwick tree to sum.
+     * @param module the module.
+     * @return the sum of the subtree.
+     */
+    private int sumOfSubtree(int[] tree, DegreeModule module) {
+        int position = index.getPosition(module.getId());
+        if (position == -1) {
+            return 0;
+        }
+        return prefixSum(tree, index.getSubtreeEnd(position)) - prefixSum(tree, position);
+    }
+
+    /**
+     * Adds the given value to a position of the Fenwick tree.
+     *
+     * @param tree the Fenwick tree.
+     * @param position the position, indexed from 0.
+     * @param value the value to add.
+     */
+    private static void add(int[] tree, int position, int value) {
+        for (int i = position + 1; i < tree.length; i += i & -i) {
+            tree[i] += value;
+        }
+    }
+
+    /**
+     * Returns the sum of the positions before the given position.
+     *
+     * @param tree the Fenwick tree.
+     * @param end the exclusive end position, indexed from 0.
+     * @return the sum of the positions from 0 to end.
+     */
+    private static int prefixSum(int[] tree, int end) {
+        int sum = 0;
+        for (int i = end; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
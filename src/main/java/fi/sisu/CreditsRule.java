@@ -0,0 +1,59 @@
+package fi.sisu;
+
+import java.util.List;
+
+/**
+ * Class for a rule requiring a minimum amount of credits from the rule under
+ * it.
+ */
+public class CreditsRule extends Rule {
+
+    private final int minCredits;
+    private final int maxCredits;
+    private final Rule rule;
+
+    /**
+     *
+     * @param minCredits the minimum amount of credits.
+     * @param maxCredits the maximum amount of credits, or CompositeRule.NO_MAX.
+     * @param rule the rule whose credits are counted.
+     */
+    public CreditsRule(int minCredits, int maxCredits, Rule rule) {
+        this.minCredits = minCredits;
+        this.maxCredits = maxCredits;
+        this.rule = rule;
+    }
+
+    /**
+     * Returns the minimum amount of credits.
+     *
+     * @return the minimum amount of credits.
+     */
+    public int getMinCredits() {
+        return minCredits;
+    }
+
+    /**
+     * Returns the maximum amount of credits. Credits above the maximum do not
+     * fail the rule, they are just not needed.
+     *
+     * @return the maximum amount of credits, or CompositeRule.NO_MAX.
+     */
+    public int getMaxCredits() {
+        return maxCredits;
+    }
+
+    /**
+     * Returns the rule whose credits are counted.
+     *
+     * @return the rule under this rule.
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public List<Rule> getRules() {
+        return List.of(rule);
+    }
+}
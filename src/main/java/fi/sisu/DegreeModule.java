@@ -1,38 +1,77 @@
 package fi.sisu;
 
-import java.util.Objects;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Locale;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
 /**
  * An abstract class for storing information on DegreeProgrammes, Modules and Courses.
+ * The information of this class is immutable after construction, so it can be
+ * read from any thread. The subclasses add state that is changed: the completion
+ * of a course, and the content, rule and sorted lists of study modules and degree
+ * programmes, which are filled while the catalog is loaded and must not be changed
+ * while other threads read them.
  */
 public abstract class DegreeModule implements Comparable<DegreeModule> {
-    private String name;
-    private String id;
-    private String groupId;
-    private int minCredits;
-    private String code;
-    private String description;
-    private String outcomes;
+    /**
+     * Sentinel text used when a Degree programme, Study module or Course has
+     * no code, description or learning outcomes.
+     */
+    public static final String NULL_TEXT = "NULL";
+    /**
+     * Label shown in front of the description.
+     */
+    public static final String DESCRIPTION_LABEL = "Kuvaus: ";
+    /**
+     * Label shown in front of the learning outcomes.
+     */
+    public static final String OUTCOMES_LABEL = "Oppimistavoitteet: ";
+
+    // Flags telling whether the description and outcomes are shown with their labels.
+    // The labels are stored as flags so that the texts themselves can be shared.
+    static final int DESCRIPTION_LABEL_FLAG = 1;
+    static final int OUTCOMES_LABEL_FLAG = 2;
+
+    // Collator for ordering the names in Finnish, where å, ä and ö come after z like in Swedish.
+    // Collators are not thread-safe, so it is only used through createSortKey.
+    private static final Collator COLLATOR = Collator.getInstance(new Locale("fi", "FI"));
+
+    private final String name;
+    private final String id;
+    private final String groupId;
+    private final int minCredits;
+    private final String code;
+    private final String description;
+    private final String outcomes;
+    private final int labelFlags;
+
+    // Values derived from the attributes above, computed once on construction
+    private final int hash;
+    private final String displayText;
+    private final CollationKey sortKey;
+    // Built from the long texts when it is first shown. Strings are immutable,
+    // so a tooltip built twice by different threads is harmless.
+    private String tooltipText;
 
     // Overriding equals operator to compare degreeModules by ID instead of object reference
     @Override
     public boolean equals(Object o) {
-        if (o == null) {
-            return false;
+        if (o == this) {
+            return true;
         }
         if (!(o instanceof DegreeModule)) {
             return false;
         }
         DegreeModule other = (DegreeModule) o;
-        return this.id.equals(other.id);
+        return this.hash == other.hash && this.id.equals(other.id);
     }
 
     // Required when overriding equals operator
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return hash;
     }
 
     /**
@@ -46,63 +85,133 @@ public abstract class DegreeModule implements Comparable<DegreeModule> {
      * @param outcomes learning outcomes of the Degree programme, Study module or Course.
      */
     public DegreeModule(String name, String id, String groupId, int minCredits, String code, String description, String outcomes) {
+        this(name, id, groupId, minCredits, code, description, outcomes, 0, null);
+    }
+
+    /**
+     * Constructor used when building the catalog. The description and outcomes
+     * are given without their labels, which are instead marked with the label
+     * flags. A label found at the start of the text is also turned into a flag.
+     *
+     * @param name name of the Degree programme, Study module or Course.
+     * @param id id of the Degree programme, Study module or Course.
+     * @param groupId group id of the Degree programme, Study module or Course.
+     * @param minCredits minimum credits of the Degree programme, Study module or Course.
+     * @param code code of the Degree programme, Study module or Course.
+     * @param description description of the Degree programme, Study module or Course.
+     * @param outcomes learning outcomes of the Degree programme, Study module or Course.
+     * @param labelFlags flags telling which texts are shown with their labels.
+     * @param stringPool pool used for sharing the strings, or null if the
+     * strings should not be pooled.
+     */
+    DegreeModule(String name, String id, String groupId, int minCredits, String code, String description,
+            String outcomes, int labelFlags, StringPool stringPool) {
+        // Parse out all html-elements and extra spaces of the description and learning outcomes
+        String parsedDescription = parseText(description);
+        String parsedOutcomes = parseText(outcomes);
+
+        // Texts that were saved with their labels are stored without them
+        if (parsedDescription.startsWith(DESCRIPTION_LABEL)) {
+            parsedDescription = parsedDescription.substring(DESCRIPTION_LABEL.length());
+            labelFlags |= DESCRIPTION_LABEL_FLAG;
+        }
+        if (parsedOutcomes.startsWith(OUTCOMES_LABEL)) {
+            parsedOutcomes = parsedOutcomes.substring(OUTCOMES_LABEL.length());
+            labelFlags |= OUTCOMES_LABEL_FLAG;
+        }
+
+        if (stringPool != null) {
+            name = stringPool.intern(name);
+            id = stringPool.intern(id);
+            groupId = stringPool.intern(groupId);
+            code = stringPool.intern(code);
+            parsedDescription = stringPool.intern(parsedDescription);
+            parsedOutcomes = stringPool.intern(parsedOutcomes);
+        }
+
         this.name = name;
         this.id = id;
         this.groupId = groupId;
         this.minCredits = minCredits;
         this.code = code;
+        this.description = parsedDescription;
+        this.outcomes = parsedOutcomes;
+        this.labelFlags = labelFlags;
 
-        // Parse out all html-elements and extra spaces of the description and learning outcomes with the help of Jsoup
-        Document doc = Jsoup.parse(outcomes);
-        this.outcomes = doc.text().replaceAll("(\\\\n|\\\\t)", "").replaceAll(" {2}", "");
-
-        doc = Jsoup.parse(description);
-        this.description = doc.text().replaceAll("(\\\\n|\\\\t)", "").replaceAll(" {2}", "");
+        this.hash = id.hashCode();
+        this.displayText = createDisplayText();
+        this.sortKey = createSortKey(name);
     }
 
     /**
-     * Set the name attribute of the Degree programme, Study module or Course.
+     * Constructs a copy of the given module. The texts are shared, so copying
+     * is cheap.
      *
-     * @param name the name to be set.
+     * @param module the module to copy.
      */
-    public void setName(String name) {
-        this.name = name;
+    DegreeModule(DegreeModule module) {
+        this.name = module.name;
+        this.id = module.id;
+        this.groupId = module.groupId;
+        this.minCredits = module.minCredits;
+        this.code = module.code;
+        this.description = module.description;
+        this.outcomes = module.outcomes;
+        this.labelFlags = module.labelFlags;
+        this.hash = module.hash;
+        this.displayText = module.displayText;
+        this.tooltipText = module.tooltipText;
+        this.sortKey = module.sortKey;
     }
 
     /**
-     * Returns the name of the Degree programme, Study module or Course.
+     * Creates the key used for sorting by the given name. Comparing the keys is
+     * as fast as comparing the names themselves.
      *
-     * @return name of the Degree programme, Study module or Course.
+     * @param name the name to create the key for.
+     * @return the collation key of the name.
      */
-    public String getName() {
-        return this.name;
+    private static CollationKey createSortKey(String name) {
+        synchronized (COLLATOR) {
+            return COLLATOR.getCollationKey(name);
+        }
     }
 
     /**
-     * Set the id attribute of the Degree programme, Study module or Course.
+     * Parses out all html-elements and extra spaces of the given text with the
+     * help of Jsoup.
      *
-     * @param id the id to be set.
+     * @param text the non parsed text acquired from the API.
+     * @return the parsed text.
      */
-    public void setId(String id) {
-        this.id = id;
+    private static String parseText(String text) {
+        // Skip parsing the sentinel and empty texts, so that they stay shared
+        if (text.isEmpty()) {
+            return "";
+        }
+        if (text.equals(NULL_TEXT)) {
+            return NULL_TEXT;
+        }
+        Document doc = Jsoup.parse(text);
+        return doc.text().replaceAll("(\\\\n|\\\\t)", "").replaceAll(" {2}", "");
     }
 
     /**
-     * Returns the id of the Degree programme, Study module or Course.
+     * Returns the name of the Degree programme, Study module or Course.
      *
-     * @return id of the Degree programme, Study module or Course.
+     * @return name of the Degree programme, Study module or Course.
      */
-    public String getId() {
-        return this.id;
+    public String getName() {
+        return this.name;
     }
 
     /**
-     * Set the groupId attribute of the Degree programme, Study module or Course.
+     * Returns the id of the Degree programme, Study module or Course.
      *
-     * @param groupId the groupId to be set.
+     * @return id of the Degree programme, Study module or Course.
      */
-    public void setGroupId(String groupId) {
-        this.groupId = groupId;
+    public String getId() {
+        return this.id;
     }
 
     /**
@@ -114,15 +223,6 @@ public abstract class DegreeModule implements Comparable<DegreeModule> {
         return this.groupId;
     }
 
-    /**
-     * Set the minCredits attribute of the Degree programme, Study module or Course.
-     *
-     * @param minCredits the minCredits to be set.
-     */
-    public void setMinCredits(int minCredits) {
-        this.minCredits = minCredits;
-    }
-
     /**
      * Returns the minimum credits of the Degree programme, Study module or Course.
      *
@@ -132,15 +232,6 @@ public abstract class DegreeModule implements Comparable<DegreeModule> {
         return this.minCredits;
     }
 
-    /**
-     * Set the code attribute of the Degree programme, Study module or Course.
-     *
-     * @param code the code to be set.
-     */
-    public void setCode(String code) {
-        this.code = code;
-    }
-
     /**
      * Returns the code of the Degree programme, Study module or Course.
      *
@@ -150,45 +241,27 @@ public abstract class DegreeModule implements Comparable<DegreeModule> {
         return code;
     }
 
-    /**
-     * Sets the description of the Degree programme, Study module or Course by
-     * parsing out the html elements and spaces.
-     *
-     * @param description the non parsed description acquired from the API.
-     */
-    public void setDescription(String description) {
-        Document doc = Jsoup.parse(description);
-        this.description = doc.text().replaceAll("(\\\\n|\\\\t)", "")
-                .replaceAll(" {2}", "");
-    }
-
     /**
      * Returns the description of the Degree programme, Study module or Course.
      *
      * @return description of the Degree programme, Study module or Course.
      */
     public String getDescription() {
+        if ((labelFlags & DESCRIPTION_LABEL_FLAG) != 0) {
+            return DESCRIPTION_LABEL + description;
+        }
         return description;
     }
 
-    /**
-     * Sets the outcomes of the Degree programme, Study module or Course by
-     * parsing out the html elements and spaces.
-     *
-     * @param outcomes the non parsed outcomes acquired from the API.
-     */
-    public void setOutcomes(String outcomes) {
-        Document doc = Jsoup.parse(outcomes);
-        this.outcomes = doc.text().replaceAll("(\\\\n|\\\\t)", "")
-                .replaceAll(" {2}", "");
-    }
-
     /**
      * Returns the learning outcomes of the Degree programme, Study module or Course.
      *
      * @return learning outcomes of the Degree programme, Study module or Course.
      */
     public String getOutcomes() {
+        if ((labelFlags & OUTCOMES_LABEL_FLAG) != 0) {
+            return OUTCOMES_LABEL + outcomes;
+        }
         return outcomes;
     }
 
@@ -199,7 +272,16 @@ public abstract class DegreeModule implements Comparable<DegreeModule> {
      */
     @Override
     public String toString() {
-        if (!this.getCode().equals("NULL")) {
+        return displayText;
+    }
+
+    /**
+     * Creates the string returned by toString.
+     *
+     * @return String of the Degree programme, Study module or Course.
+     */
+    private String createDisplayText() {
+        if (!this.getCode().equals(NULL_TEXT)) {
             if (this.getMinCredits() != 0) {
                 return this.getCode() + " " + this.getName() + " (" + this.getMinCredits() + " op)";
             } else {
@@ -216,13 +298,15 @@ public abstract class DegreeModule implements Comparable<DegreeModule> {
 
     /**
      * Comparator based on the name attribute for the Degree programmes, Study modules and Courses.
+     * The names are compared in the Finnish alphabetical order using the
+     * collation keys computed on construction.
      *
      * @param dM the Degree programme, Study module or Course to be compared to.
      * @return int based on the name attributes of the two compared Degree programmes, Study modules or Courses.
      */
     @Override
     public int compareTo(DegreeModule dM) {
-        return this.getName().compareTo(dM.getName());
+        return this.sortKey.compareTo(dM.sortKey);
     }
 
     /**
@@ -232,14 +316,32 @@ public abstract class DegreeModule implements Comparable<DegreeModule> {
      * @return a String of the additional data available from the Degree programme, Study module or Course.
      */
     public String getTooltipText() {
-        if (getOutcomes().equals("NULL") && getDescription().equals("NULL")) {
-            return "NULL";
-        } else if (getOutcomes().equals("NULL") && !getDescription().equals("NULL")) {
-            return getDescription();
-        } else if (!getOutcomes().equals("NULL") && getDescription().equals("NULL")) {
-            return getOutcomes();
-        } else {
-            return getDescription() + "\n\n" + getOutcomes();
+        String text = tooltipText;
+        if (text == null) {
+            text = createTooltipText();
+            tooltipText = text;
+        }
+        return text;
+    }
+
+    /**
+     * Creates the string returned by getTooltipText. Each labelled text is
+     * built only once.
+     *
+     * @return a String of the additional data available from the Degree programme, Study module or Course.
+     */
+    private String createTooltipText() {
+        String labelledDescription = getDescription();
+        String labelledOutcomes = getOutcomes();
+        boolean hasDescription = !labelledDescription.equals(NULL_TEXT);
+        boolean hasOutcomes = !labelledOutcomes.equals(NULL_TEXT);
+        if (hasDescription && hasOutcomes) {
+            return labelledDescription + "\n\n" + labelledOutcomes;
+        } else if (hasDescription) {
+            return labelledDescription;
+        } else if (hasOutcomes) {
+            return labelledOutcomes;
         }
+        return NULL_TEXT;
     }
 }
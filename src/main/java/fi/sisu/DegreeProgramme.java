@@ -1,6 +1,7 @@
 package fi.sisu;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -9,6 +10,13 @@ import java.util.List;
  */
 public class DegreeProgramme extends DegreeModule {
     private HashMap<String, StudyModule> studyModules = new HashMap<>();
+    // Sorted view of the study modules, sorted once when first needed and
+    // cleared whenever a study module is added
+    private List<StudyModule> sortedStudyModules;
+    // Flattened index of the degree programme, built when first needed
+    private ProgrammeIndex index;
+    // Rule telling which of the content is required, null if it is not known
+    private Rule rule;
 
     /**
      *
@@ -24,6 +32,24 @@ public class DegreeProgramme extends DegreeModule {
         super(name, id, groupId, minCredits, code, description, outcomes);
     }
 
+    /**
+     * Constructor used when building the catalog.
+     *
+     * @param name name of the degree programme.
+     * @param id id of the degree programme.
+     * @param groupId groupId of the degree programme.
+     * @param minCredits credits to pass the degree programme.
+     * @param code code of the degree programme.
+     * @param description description of the degree programme without its label.
+     * @param outcomes learning outcomes of the degree programme without their label.
+     * @param labelFlags flags telling which texts are shown with their labels.
+     * @param stringPool pool used for sharing the strings.
+     */
+    DegreeProgramme(String name, String id, String groupId, int minCredits, String code, String description,
+            String outcomes, int labelFlags, StringPool stringPool) {
+        super(name, id, groupId, minCredits, code, description, outcomes, labelFlags, stringPool);
+    }
+
     /**
      * Adds a studyModule to the studyModules map.
      *
@@ -31,17 +57,22 @@ public class DegreeProgramme extends DegreeModule {
      */
     public void addStudyModule(StudyModule studyModule) {
         studyModules.put(studyModule.getId(), studyModule);
+        sortedStudyModules = null;
+        index = null;
     }
 
     /**
-     * Returns all study modules as a list, sorted by the names.
+     * Returns all study modules as an unmodifiable list, sorted by the names.
      *
      * @return list of all study modules.
      */
     public List<StudyModule> getStudyModulesAsList() {
-        ArrayList<StudyModule> list = new ArrayList<>(studyModules.values());
-        list.sort(DegreeModule::compareTo);
-        return list;
+        if (sortedStudyModules == null) {
+            ArrayList<StudyModule> list = new ArrayList<>(studyModules.values());
+            list.sort(DegreeModule::compareTo);
+            sortedStudyModules = Collections.unmodifiableList(list);
+        }
+        return sortedStudyModules;
     }
 
     /**
@@ -53,4 +84,38 @@ public class DegreeProgramme extends DegreeModule {
     public StudyModule getStudyModuleById(String id) {
         return studyModules.get(id);
     }
+
+    /**
+     * Returns the flattened index of the degree programme and its content. The
+     * index is built on the first call after all study modules have been
+     * added.
+     *
+     * @return the index of the degree programme.
+     */
+    public ProgrammeIndex getIndex() {
+        if (index == null) {
+            index = new ProgrammeIndex(this);
+        }
+        return index;
+    }
+
+    /**
+     * Sets the rule telling which study modules and courses of the degree
+     * programme are required.
+     *
+     * @param rule the rule of the degree programme.
+     */
+    public void setRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Returns the rule telling which study modules and courses of the degree
+     * programme are required.
+     *
+     * @return the rule, or null if the rule is not known.
+     */
+    public Rule getRule() {
+        return rule;
+    }
 }
@@ -0,0 +1,309 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class for noticing changes of files made by other processes, so that the
+ * data read from them can be dropped from the memory. The directories of the
+ * watched files are watched with a WatchService. Where the file system does
+ * not support it, or polling is selected with a system property, the
+ * modification times and sizes of the watched files are polled instead.
+ * <p>
+ * The changes are collected for a short while before the listeners are
+ * called, so a burst of changes to the same file, such as a bulk edit or an
+ * atomic replace, calls the listeners of the file only once.
+ */
+public class FileChangeWatcher implements AutoCloseable {
+
+    /**
+     * Name of the system property selecting how the changes are noticed:
+     * "watch" (the default) uses the WatchService where it is available, and
+     * "poll" polls the watched files.
+     */
+    public static final String MODE_PROPERTY = "sisu.watchMode";
+    /**
+     * Name of the system property for the interval of the polling in
+     * milliseconds.
+     */
+    public static final String POLL_PROPERTY = "sisu.watchPollMillis";
+    private static final long DEFAULT_POLL_MILLIS = 2000;
+    // Time the changes are collected before the listeners are called
+    private static final long COALESCE_MILLIS = 100;
+    private static FileChangeWatcher shared;
+
+    private final HashMap<Path, CopyOnWriteArrayList<Runnable>> listeners = new HashMap<>();
+    // Latest stamp of each polled file
+    private final HashMap<Path, FileStamp> polled = new HashMap<>();
+    private final HashMap<Path, WatchKey> directories = new HashMap<>();
+    // Changed files waiting for the listeners to be called
+    private final LinkedHashSet<Path> changed = new LinkedHashSet<>();
+    private final ScheduledExecutorService scheduler;
+    private final WatchService watchService;
+    private boolean closed;
+
+    /**
+     * Constructs a new watcher.
+     *
+     * @param poll true to poll all files, false to use the WatchService where
+     * it is available.
+     * @param pollMillis the interval of the polling in milliseconds.
+     */
+    public FileChangeWatcher(boolean poll, long pollMillis) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        WatchService service = null;
+        if (!poll) {
+            try {
+                service = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                System.err.println("File watching is not available, polling the files instead: " + e.getMessage());
+            }
+        }
+        this.watchService = service;
+        if (service != null) {
+            Thread thread = new Thread(this::watchLoop, "file-watcher-events");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        scheduler.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the watcher shared by the application, created with the
+     * MODE_PROPERTY and POLL_PROPERTY system properties.
+     *
+     * @return the shared watcher.
+     */
+    public static synchronized FileChangeWatcher getShared() {
+        if (shared == null) {
+            shared = new FileChangeWatcher("poll".equals(System.getProperty(MODE_PROPERTY)),
+                    Long.getLong(POLL_PROPERTY, DEFAULT_POLL_MILLIS));
+        }
+        return shared;
+    }
+
+    /**
+     * Stops the shared watcher, if it has been created.
+     */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /**
+     * Starts calling the given listener when the given file changes. The file
+     * does not need to exist.
+     *
+     * @param file the file.
+     * @param listener the listener, called on the thread of the watcher.
+     */
+    public synchronized void watch(Path file, Runnable listener) {
+        if (closed) {
+            return;
+        }
+        Path key = file.toAbsolutePath().normalize();
+        listeners.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(listener);
+        if (!register(key.getParent())) {
+            polled.putIfAbsent(key, FileStamp.of(key));
+        }
+    }
+
+    /**
+     * Stops calling the given listener for the given file.
+     *
+     * @param file the file.
+     * @param listener the listener given to watch.
+     */
+    public synchronized void unwatch(Path file, Runnable listener) {
+        Path key = file.toAbsolutePath().normalize();
+        List<Runnable> fileListeners = listeners.get(key);
+        if (fileListeners != null && fileListeners.remove(listener) && fileListeners.isEmpty()) {
+            listeners.remove(key);
+            polled.remove(key);
+        }
+    }
+
+    /**
+     * Checks whether the given file is polled instead of watched with the
+     * WatchService.
+     *
+     * @param file the file.
+     * @return true if the file is polled, otherwise false.
+     */
+    public synchronized boolean isPolled(Path file) {
+        return polled.containsKey(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Stops the watcher. The listeners are not called after this.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            listeners.clear();
+            polled.clear();
+        }
+        scheduler.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the file watcher");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Registers a directory to the WatchService, if it is not registered yet.
+     *
+     * @param directory the directory.
+     * @return true if the directory is watched, false if its files must be
+     * polled.
+     */
+    private boolean register(Path directory) {
+        if (watchService == null || directory == null) {
+            return false;
+        }
+        if (directories.containsKey(directory)) {
+            return true;
+        }
+        try {
+            directories.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // For example a directory that does not exist yet
+            return false;
+        }
+    }
+
+    /**
+     * Takes the events of the WatchService until the watcher is closed.
+     */
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                Path directory = (Path) watchKey.watchable();
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Some events were lost, so any file of the directory may have changed
+                        markDirectoryChanged(directory);
+                    } else {
+                        markChanged(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!watchKey.reset()) {
+                    synchronized (this) {
+                        directories.remove(directory);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher is closed
+        }
+    }
+
+    /**
+     * Polls the stamps of the polled files.
+     */
+    private void poll() {
+        List<Path> files;
+        synchronized (this) {
+            files = new ArrayList<>(polled.keySet());
+        }
+        for (Path file : files) {
+            FileStamp stamp = FileStamp.of(file);
+            boolean changedNow;
+            synchronized (this) {
+                FileStamp previous = polled.get(file);
+                changedNow = previous != null && !previous.equals(stamp);
+                if (changedNow) {
+                    polled.put(file, stamp);
+                }
+            }
+            if (changedNow) {
+                markChanged(file);
+            }
+        }
+    }
+
+    /**
+     * Marks all watched files of a directory changed.
+     *
+     * @param directory the directory.
+     */
+    private synchronized void markDirectoryChanged(Path directory) {
+        for (Path file : listeners.keySet()) {
+            if (directory.equals(file.getParent())) {
+                markChanged(file);
+            }
+        }
+    }
+
+    /**
+     * Marks a file changed, and schedules the listeners to be called if no
+     * other changes are waiting.
+     *
+     * @param file the changed file.
+     */
+    private synchronized void markChanged(Path file) {
+        if (closed || !listeners.containsKey(file)) {
+            return;
+        }
+        boolean first = changed.isEmpty();
+        changed.add(file);
+        if (first) {
+            scheduler.schedule(this::deliver, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Calls the listeners of the changed files once per file.
+     */
+    private void deliver() {
+        Map<Path, List<Runnable>> calls = new HashMap<>();
+        synchronized (this) {
+            for (Path file : changed) {
+                List<Runnable> fileListeners = listeners.get(file);
+                if (fileListeners != null) {
+                    calls.put(file, fileListeners);
+                }
+            }
+            changed.clear();
+        }
+        for (Map.Entry<Path, List<Runnable>> entry : calls.entrySet()) {
+            for (Runnable listener : entry.getValue()) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling a change of file: " + entry.getKey());
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Class for the modification times and sizes of files, used to notice when
+ * the files are changed without reading them. Reading a stamp reads only the
+ * attributes of the files.
+ */
+public final class FileStamp {
+
+    // Modification time in milliseconds and size of each file, -1 for a missing file
+    private final long[] values;
+
+    /**
+     * Constructs a new stamp.
+     *
+     * @param values the modification times and sizes of the files.
+     */
+    private FileStamp(long[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Reads the stamp of the given files.
+     *
+     * @param files the files.
+     * @return the stamp of the files.
+     */
+    public static FileStamp of(Path... files) {
+        long[] values = new long[files.length * 2];
+        for (int i = 0; i < files.length; i++) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(files[i], BasicFileAttributes.class);
+                values[2 * i] = attributes.lastModifiedTime().toMillis();
+                values[2 * i + 1] = attributes.size();
+            } catch (NoSuchFileException e) {
+                values[2 * i] = -1;
+                values[2 * i + 1] = -1;
+            } catch (IOException e) {
+                // An unreadable file never equals another stamp
+                values[2 * i] = Long.MIN_VALUE;
+                values[2 * i + 1] = System.nanoTime();
+            }
+        }
+        return new FileStamp(values);
+    }
+
+    /**
+     * Checks whether the given object is a stamp of the same modification
+     * times and sizes.
+     *
+     * @param object the object to compare to.
+     * @return true if the files have not changed between the stamps.
+     */
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof FileStamp && Arrays.equals(values, ((FileStamp) object).values);
+    }
+
+    /**
+     * Returns the hash code of the stamp.
+     *
+     * @return the hash code.
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+}
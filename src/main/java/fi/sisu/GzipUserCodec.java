@@ -0,0 +1,88 @@
+package fi.sisu;
+
+import java.io.IOException;
+
+/**
+ * Class for storing the data of a user compressed with gzip. The data is
+ * encoded with another format before it is compressed, and any registered
+ * format is accepted inside compressed data when it is decoded, so
+ * compressed and plain user files can be read side by side.
+ */
+public class GzipUserCodec implements UserCodec {
+
+    /**
+     * Ending of the names of the compressed formats, such as "json+gzip".
+     */
+    public static final String SUFFIX = "+gzip";
+
+    private final UserCodec inner;
+
+    /**
+     * Constructs a new codec.
+     *
+     * @param inner the format the users are encoded in before compressing.
+     */
+    public GzipUserCodec(UserCodec inner) {
+        this.inner = inner;
+    }
+
+    /**
+     * Returns the name of the format.
+     *
+     * @return the name of the inner format followed by "+gzip".
+     */
+    @Override
+    public String getName() {
+        return inner.getName() + SUFFIX;
+    }
+
+    /**
+     * Checks whether the given data is compressed with gzip.
+     *
+     * @param data the data.
+     * @return true if the data starts with the gzip header, otherwise false.
+     */
+    @Override
+    public boolean canDecode(byte[] data) {
+        return Compression.isCompressed(data);
+    }
+
+    /**
+     * Encodes the data of the given user with the inner format and compresses
+     * it.
+     *
+     * @param user the user to encode.
+     * @return the compressed data.
+     * @throws IOException if the user can not be encoded.
+     */
+    @Override
+    public byte[] encode(User user) throws IOException {
+        return Compression.compress(inner.encode(user));
+    }
+
+    /**
+     * Decompresses the given data and decodes it with the format recognizing
+     * it.
+     *
+     * @param data the compressed data.
+     * @return the decoded user.
+     * @throws IOException if the data is broken.
+     */
+    @Override
+    public User decode(byte[] data) throws IOException {
+        return UserCodecs.decode(Compression.decompress(data));
+    }
+
+    /**
+     * Decompresses the given data and decodes the name, the student number
+     * and the degree programme of the user in it.
+     *
+     * @param data the compressed data.
+     * @return the decoded user without courses.
+     * @throws IOException if the data is broken.
+     */
+    @Override
+    public User decodeHeader(byte[] data) throws IOException {
+        return UserCodecs.decodeHeader(Compression.decompress(data));
+    }
+}
@@ -0,0 +1,511 @@
+package fi.sisu;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class for storing the data of a user as a JSON snapshot and a journal of the
+ * changes made after it. A write appends only the changes (course added,
+ * removed, completion changed, degree programme changed) as single lines to
+ * the journal file next to the snapshot, and a read replays them on the
+ * snapshot. When the journal grows past a threshold, it is compacted into a
+ * new snapshot in the background. Replaying a record twice gives the same
+ * result, so a crash during the compaction loses nothing. A line left
+ * incomplete by a crash during an append is cut off before the next append,
+ * so the later records are not written after it on the same line.
+ */
+public class JournalUserStore implements iReadAndWriteToFile {
+
+    /**
+     * Name of the system property for the size of the journal in bytes, after
+     * which it is compacted into the snapshot.
+     */
+    public static final String COMPACT_THRESHOLD_PROPERTY = "sisu.journalCompactBytes";
+    private static final long DEFAULT_COMPACT_THRESHOLD = 64 * 1024;
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private static final String ADD = "add";
+    private static final String REMOVE = "remove";
+    private static final String COMPLETED = "completed";
+    private static final String DEGREE = "degree";
+
+    private static final long COMPACT_THRESHOLD = Long.getLong(COMPACT_THRESHOLD_PROPERTY, DEFAULT_COMPACT_THRESHOLD);
+    private static final UserJsonWriter SNAPSHOT_WRITER = UserJsonWriter.fromSystemProperties();
+    // Locks and the latest known stored state of each snapshot file
+    private static final ConcurrentHashMap<Path, Object> LOCKS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Path, User> STATES = new ConcurrentHashMap<>();
+    // Stamps of the snapshot and the journal matching the known states, to notice changes made by others
+    private static final ConcurrentHashMap<Path, FileStamp> STAMPS = new ConcurrentHashMap<>();
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final User user;
+
+    /**
+     * Constructs a new store for the given user.
+     *
+     * @param user the user to read the data to or to write the data from.
+     */
+    public JournalUserStore(User user) {
+        this.user = user;
+    }
+
+    /**
+     * Reads the snapshot and replays the journal to the user of the store.
+     *
+     * @param fileName the name of the snapshot file.
+     * @return true if the user was read, false if the file does not exist or
+     * can not be read.
+     */
+    @Override
+    public boolean readFromFile(String fileName) {
+        User stored = readUser(Path.of(fileName));
+        if (stored == null) {
+            return false;
+        }
+        user.setName(stored.getName());
+        user.setStudentNumber(stored.getStudentNumber());
+        user.setDegreeModule(stored.getDegreeModule());
+        for (CourseUnit course : stored.getCourses()) {
+            user.addCourse(course);
+        }
+        return true;
+    }
+
+    /**
+     * Appends the changes of the user of the store to the journal. If there is
+     * no snapshot yet, or the name or the student number changed, a new
+     * snapshot is written instead.
+     *
+     * @param fileName the name of the snapshot file.
+     * @return true if the changes were written, otherwise false.
+     */
+    @Override
+    public boolean writeToFile(String fileName) {
+        try {
+            write(user, Path.of(fileName));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + fileName);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Reads the user stored in the given snapshot file and its journal.
+     *
+     * @param file the snapshot file.
+     * @return the user, or null if the file does not exist or can not be read.
+     */
+    public static User readUser(Path file) {
+        Path key = file.toAbsolutePath();
+        synchronized (lockOf(key)) {
+            User state = loadState(key);
+            return state == null ? null : new User(state);
+        }
+    }
+
+    /**
+     * Writes the changes of the given user compared to its stored state.
+     *
+     * @param user the user to write.
+     * @param file the snapshot file.
+     * @throws IOException if the changes can not be written.
+     */
+    public static void write(User user, Path file) throws IOException {
+        Path key = file.toAbsolutePath();
+        synchronized (lockOf(key)) {
+            User state = Files.exists(key) ? loadState(key) : null;
+            if (state == null || !Objects.equals(state.getName(), user.getName())
+                    || !Objects.equals(state.getStudentNumber(), user.getStudentNumber())) {
+                writeSnapshot(key, user);
+                return;
+            }
+
+            StringWriter records = new StringWriter();
+            appendChanges(state, user, records);
+            if (records.getBuffer().length() == 0) {
+                return;
+            }
+            long journalSize;
+            try (FileChannel channel = FileChannel.open(journalOf(key), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                truncateIncompleteLine(channel);
+                channel.position(channel.size());
+                ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                journalSize = channel.size();
+            }
+            STATES.put(key, new User(user));
+            STAMPS.put(key, stampOf(key));
+            if (journalSize > COMPACT_THRESHOLD) {
+                COMPACTOR.execute(() -> compact(key));
+            }
+        }
+    }
+
+    /**
+     * Cuts off the last line of a journal if it does not end with a line
+     * break, which happens when the application crashes during an append.
+     *
+     * @param channel the channel of the journal.
+     * @throws IOException if the journal can not be read or truncated.
+     */
+    private static void truncateIncompleteLine(FileChannel channel) throws IOException {
+        long end = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // Read the whole block
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    long length = start + i + 1;
+                    if (length < channel.size()) {
+                        System.err.println("Removing an incomplete journal record of " + (channel.size() - length)
+                                + " bytes");
+                        channel.truncate(length);
+                    }
+                    return;
+                }
+            }
+            end = start;
+        }
+        // No complete line at all
+        channel.truncate(0);
+    }
+
+    /**
+     * Writes the stored state of the given file as a new snapshot and empties
+     * its journal.
+     *
+     * @param file the snapshot file.
+     */
+    static void compact(Path file) {
+        Path key = file.toAbsolutePath();
+        synchronized (lockOf(key)) {
+            try {
+                User state = loadState(key);
+                if (state != null) {
+                    writeSnapshot(key, state);
+                }
+            } catch (IOException e) {
+                System.err.println("Error compacting file: " + key);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Forgets the stored states of all files, so that the files are read again
+     * on the next read. Used when the files may have been changed outside the
+     * application.
+     */
+    static void clearStates() {
+        STATES.clear();
+        STAMPS.clear();
+    }
+
+    /**
+     * Writes the given user as the snapshot and removes the journal. The
+     * snapshot is written before the journal is removed, so the data is never
+     * lost.
+     *
+     * @param file the snapshot file.
+     * @param user the user to write.
+     * @throws IOException if the snapshot can not be written.
+     */
+    private static void writeSnapshot(Path file, User user) throws IOException {
+        SNAPSHOT_WRITER.writeToFile(user, file);
+        Files.deleteIfExists(journalOf(file));
+        STATES.put(file, new User(user));
+        STAMPS.put(file, stampOf(file));
+    }
+
+    /**
+     * Returns the stored state of the given file, reading the snapshot and
+     * replaying the journal if the state is not known yet or the files were
+     * changed by others.
+     *
+     * @param file the snapshot file.
+     * @return the stored state, or null if the snapshot can not be read.
+     */
+    private static User loadState(Path file) {
+        if (!Files.exists(file)) {
+            STATES.remove(file);
+            return null;
+        }
+        User state = STATES.get(file);
+        if (state != null && stampOf(file).equals(STAMPS.get(file))) {
+            return state;
+        }
+        state = UserReaderWriter.readUserFile(file.toString());
+        if (state == null) {
+            return null;
+        }
+        Path journal = journalOf(file);
+        if (Files.exists(journal)) {
+            LinkedHashMap<String, CourseUnit> courses = coursesById(state);
+            try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!replay(state, courses, line)) {
+                        // An interrupted append, the records after it are still applied
+                        System.err.println("Skipping an invalid journal record in " + journal);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + journal);
+                e.printStackTrace();
+            }
+            state.setCourses(new ArrayList<>(courses.values()));
+        }
+        STATES.put(file, state);
+        STAMPS.put(file, stampOf(file));
+        return state;
+    }
+
+    /**
+     * Applies a single journal record to the given state.
+     *
+     * @param state the state to update.
+     * @param courses the courses of the state by their ids.
+     * @param line the record.
+     * @return true if the record was applied, false if it is not a complete
+     * record.
+     */
+    private static boolean replay(User state, LinkedHashMap<String, CourseUnit> courses, String line) {
+        JsonObject record;
+        try {
+            record = JsonParser.parseString(line).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            return false;
+        }
+        if (!isPrimitive(record, "op")) {
+            return false;
+        }
+        switch (record.get("op").getAsString()) {
+            case ADD:
+                if (!record.has("course") || !record.get("course").isJsonObject()
+                        || !isCompleteCourse(record.getAsJsonObject("course"))) {
+                    return false;
+                }
+                CourseUnit added = UserReaderWriter.parseCourse(record.getAsJsonObject("course"));
+                courses.put(added.getId(), added);
+                break;
+            case REMOVE:
+                if (!isPrimitive(record, "id")) {
+                    return false;
+                }
+                courses.remove(record.get("id").getAsString());
+                break;
+            case COMPLETED:
+                if (!isPrimitive(record, "id") || !isPrimitive(record, "value")) {
+                    return false;
+                }
+                CourseUnit changed = courses.get(record.get("id").getAsString());
+                if (changed != null) {
+                    changed.setCompleted(record.get("value").getAsBoolean());
+                }
+                break;
+            case DEGREE:
+                if (!record.has("value")) {
+                    return false;
+                }
+                if (record.get("value").isJsonNull()) {
+                    state.setDegreeModule(null);
+                } else if (isPrimitive(record, "value")) {
+                    state.setDegreeModule(record.get("value").getAsString());
+                } else {
+                    return false;
+                }
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a course of an add record has all the fields read by
+     * UserReaderWriter.parseCourse.
+     *
+     * @param course the JSON object of the course.
+     * @return true if the course can be parsed, otherwise false.
+     */
+    private static boolean isCompleteCourse(JsonObject course) {
+        if (!isPrimitive(course, "id") || !isPrimitive(course, "groupId") || !isPrimitive(course, "completed")) {
+            return false;
+        }
+        if (!course.has("courseName")) {
+            return true;
+        }
+        for (String field : new String[] {"courseName", "minCredits", "code", "description", "outcomes"}) {
+            if (!isPrimitive(course, field)) {
+                return false;
+            }
+        }
+        try {
+            course.get("minCredits").getAsInt();
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether a JSON object has the given field with a string, number
+     * or boolean value.
+     *
+     * @param object the JSON object.
+     * @param field the name of the field.
+     * @return true if the field has a primitive value, otherwise false.
+     */
+    private static boolean isPrimitive(JsonObject object, String field) {
+        JsonElement value = object.get(field);
+        return value != null && value.isJsonPrimitive();
+    }
+
+    /**
+     * Writes the records of the changes from the stored state to the user.
+     *
+     * @param state the stored state.
+     * @param user the user to write.
+     * @param out the writer of the records, one record per line.
+     * @throws IOException if the records can not be written.
+     */
+    private static void appendChanges(User state, User user, StringWriter out) throws IOException {
+        if (!Objects.equals(state.getDegreeModule(), user.getDegreeModule())) {
+            JsonWriter record = beginRecord(out, DEGREE);
+            record.name("value");
+            if (user.getDegreeModule() == null) {
+                record.nullValue();
+            } else {
+                record.value(user.getDegreeModule());
+            }
+            endRecord(record, out);
+        }
+        LinkedHashMap<String, CourseUnit> stored = coursesById(state);
+        LinkedHashMap<String, CourseUnit> current = coursesById(user);
+        for (CourseUnit course : stored.values()) {
+            if (!current.containsKey(course.getId())) {
+                JsonWriter record = beginRecord(out, REMOVE);
+                record.name("id").value(course.getId());
+                endRecord(record, out);
+            }
+        }
+        for (CourseUnit course : current.values()) {
+            CourseUnit storedCourse = stored.get(course.getId());
+            if (storedCourse == null) {
+                JsonWriter record = beginRecord(out, ADD);
+                record.name("course");
+                UserJsonWriter.writeFullCourse(course, record);
+                endRecord(record, out);
+            } else if (storedCourse.isCompleted() != course.isCompleted()) {
+                JsonWriter record = beginRecord(out, COMPLETED);
+                record.name("id").value(course.getId());
+                record.name("value").value(course.isCompleted());
+                endRecord(record, out);
+            }
+        }
+    }
+
+    /**
+     * Starts a new record of the given operation.
+     *
+     * @param out the writer of the records.
+     * @param operation the operation of the record.
+     * @return the JSON writer of the record.
+     * @throws IOException if the record can not be written.
+     */
+    private static JsonWriter beginRecord(StringWriter out, String operation) throws IOException {
+        JsonWriter record = new JsonWriter(out);
+        record.beginObject();
+        record.name("op").value(operation);
+        return record;
+    }
+
+    /**
+     * Ends the given record and its line.
+     *
+     * @param record the JSON writer of the record.
+     * @param out the writer of the records.
+     * @throws IOException if the record can not be written.
+     */
+    private static void endRecord(JsonWriter record, StringWriter out) throws IOException {
+        record.endObject();
+        record.flush();
+        out.write('\n');
+    }
+
+    /**
+     * Returns the courses of the given user by their ids, in their order.
+     *
+     * @param user the user.
+     * @return the courses by their ids.
+     */
+    private static LinkedHashMap<String, CourseUnit> coursesById(User user) {
+        LinkedHashMap<String, CourseUnit> courses = new LinkedHashMap<>();
+        for (CourseUnit course : user.getCourses()) {
+            courses.put(course.getId(), course);
+        }
+        return courses;
+    }
+
+    /**
+     * Returns the stamp of the given snapshot file and its journal.
+     *
+     * @param file the snapshot file.
+     * @return the stamp of the files.
+     */
+    private static FileStamp stampOf(Path file) {
+        return FileStamp.of(file, journalOf(file));
+    }
+
+    /**
+     * Returns the journal file of the given snapshot file.
+     *
+     * @param file the snapshot file.
+     * @return the journal file.
+     */
+    static Path journalOf(Path file) {
+        return file.resolveSibling(file.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Returns the lock of the given snapshot file.
+     *
+     * @param file the snapshot file.
+     * @return the lock object.
+     */
+    private static Object lockOf(Path file) {
+        return LOCKS.computeIfAbsent(file, f -> new Object());
+    }
+}
@@ -0,0 +1,190 @@
+package fi.sisu;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class for storing the data of a user as JSON text, the original format of
+ * the user files.
+ */
+public class JsonUserCodec implements UserCodec {
+
+    /**
+     * Name of the format.
+     */
+    public static final String NAME = "json";
+
+    private final UserJsonWriter writer;
+
+    /**
+     * Constructs a new codec.
+     *
+     * @param writer the writer used to encode the users.
+     */
+    public JsonUserCodec(UserJsonWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Returns the name of the format.
+     *
+     * @return "json".
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Checks whether the given data is a JSON object, allowing white space
+     * and a byte order mark before it.
+     *
+     * @param data the data.
+     * @return true if the first character of the data is '{', otherwise
+     * false.
+     */
+    @Override
+    public boolean canDecode(byte[] data) {
+        int i = startOf(data);
+        while (i < data.length && Character.isWhitespace(data[i])) {
+            i++;
+        }
+        return i < data.length && data[i] == '{';
+    }
+
+    /**
+     * Encodes the data of the given user as UTF-8 encoded JSON.
+     *
+     * @param user the user to encode.
+     * @return the JSON text.
+     * @throws IOException if the user can not be encoded.
+     */
+    @Override
+    public byte[] encode(User user) throws IOException {
+        return writer.toBytes(user);
+    }
+
+    /**
+     * Decodes a user from UTF-8 encoded JSON in a single pass. The fields of
+     * the user are read straight from the stream, and only the courses are
+     * read one at a time as JSON objects.
+     *
+     * @param data the JSON text.
+     * @return the decoded user.
+     * @throws IOException if the data is not a valid user.
+     */
+    @Override
+    public User decode(byte[] data) throws IOException {
+        return read(data, false);
+    }
+
+    /**
+     * Decodes the name, the student number and the degree programme of a
+     * user. The courses are skipped without creating them, and the reading
+     * stops at them if the other fields are already read.
+     *
+     * @param data the JSON text.
+     * @return the decoded user without courses.
+     * @throws IOException if the data is not a valid user.
+     */
+    @Override
+    public User decodeHeader(byte[] data) throws IOException {
+        return read(data, true);
+    }
+
+    /**
+     * Reads a user from UTF-8 encoded JSON.
+     *
+     * @param data the JSON text.
+     * @param headerOnly true if the courses are skipped.
+     * @return the user.
+     * @throws IOException if the data is not a valid user.
+     */
+    private static User read(byte[] data, boolean headerOnly) throws IOException {
+        int start = startOf(data);
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(data, start, data.length - start), StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        try {
+            String name = null;
+            String studentNumber = null;
+            String degreeModule = null;
+            List<CourseUnit> courses = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if ("name".equals(field)) {
+                    name = nextString(reader);
+                } else if ("studentNumber".equals(field)) {
+                    studentNumber = nextString(reader);
+                } else if ("degreeModule".equals(field)) {
+                    degreeModule = nextString(reader);
+                } else if ("catalogVersion".equals(field) && !headerOnly) {
+                    // The courses are read from a snapshot at least as new as the one the file was written with
+                    CourseCatalogSnapshot.getShared().requireVersion(reader.nextInt());
+                } else if (!"courses".equals(field) || reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                } else if (headerOnly) {
+                    // The courses are written after the other fields
+                    if (name != null && studentNumber != null) {
+                        break;
+                    }
+                    reader.skipValue();
+                } else {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        courses.add(UserReaderWriter.parseCourse(JsonParser.parseReader(reader).getAsJsonObject()));
+                    }
+                    reader.endArray();
+                }
+            }
+            if (name == null || studentNumber == null) {
+                throw new IOException("Invalid user JSON: name or student number missing");
+            }
+            User user = new User(name, studentNumber);
+            user.setDegreeModule(degreeModule);
+            user.setCourses(courses);
+            return user;
+        } catch (JsonParseException | IllegalStateException | NullPointerException | UnsupportedOperationException
+                | NumberFormatException e) {
+            throw new IOException("Invalid user JSON", e);
+        }
+    }
+
+    /**
+     * Reads a string value, which may be null.
+     *
+     * @param reader the reader positioned at the value.
+     * @return the value, or null if the value is null.
+     * @throws IOException if the value can not be read.
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Returns the position after the UTF-8 byte order mark, if the data
+     * starts with one.
+     *
+     * @param data the data.
+     * @return 3 if the data starts with a byte order mark, otherwise 0.
+     */
+    private static int startOf(byte[] data) {
+        if (data.length >= 3 && data[0] == (byte) 0xEF && data[1] == (byte) 0xBB && data[2] == (byte) 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+}
@@ -1,9 +1,12 @@
 package fi.sisu;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 
@@ -39,6 +42,16 @@ public class LoginSceneController {
      */
     @FXML
     private Label registrationErrorMessageLabel;
+    /**
+     * The button of the login form.
+     */
+    @FXML
+    private Button loginButton;
+    /**
+     * The button of the registration form.
+     */
+    @FXML
+    private Button registerButton;
 
     /**
      * The student number that is read from the FXML element.
@@ -111,12 +124,11 @@ public class LoginSceneController {
     private void handleLoginButtonClick(ActionEvent event) throws IOException {
         setRegistrationErrorMessage(null);
         studentNumber = studentNumberField.getText();
-        if (Sisu.getAuthentication().login(studentNumber)) {
-            Sisu.switchToMainScene(studentNumber);
-        } else {
-            String errorCause = Sisu.getAuthentication().getErrorCause();
-            setLoginErrorMessage(errorCause);
-        }
+        String loginStudentNumber = studentNumber;
+        Authentication authentication = Sisu.getAuthentication();
+        // The user file is read on the persistence threads
+        runWithButtonsDisabled(loginStudentNumber, () -> authentication.login(loginStudentNumber),
+                this::setLoginErrorMessage);
     }
 
     /**
@@ -133,13 +145,61 @@ public class LoginSceneController {
         studentNumber = studentNumberTextField.getText();
         studentName = nameTextField.getText();
 
-        if (Sisu.getAuthentication().isRegisterInfoValid(studentNumber, studentName)) {
-            Sisu.getAuthentication().login(studentNumber);
-            Sisu.switchToMainScene(studentNumber);
-        } else {
-            String errorCause = Sisu.getAuthentication().getErrorCause();
-            setRegistrationErrorMessage(errorCause);
-        }
+        String registerStudentNumber = studentNumber;
+        String registerName = studentName;
+        Authentication authentication = Sisu.getAuthentication();
+        // The user file is checked and written on the persistence threads
+        runWithButtonsDisabled(registerStudentNumber, () -> {
+            if (!authentication.isRegisterInfoValid(registerStudentNumber, registerName)) {
+                return false;
+            }
+            authentication.login(registerStudentNumber);
+            return true;
+        }, this::setRegistrationErrorMessage);
+    }
+
+    /**
+     * Runs the given login or registration on the persistence threads with
+     * the buttons disabled. Switches to the main scene if it succeeds, and
+     * sets the error message otherwise.
+     *
+     * @param studentNumber the student number of the user.
+     * @param task the login or registration, returning true if it succeeded.
+     * @param setErrorMessage the method setting the error message of the form.
+     */
+    private void runWithButtonsDisabled(String studentNumber, Callable<Boolean> task,
+            Consumer<String> setErrorMessage) {
+        setButtonsDisabled(true);
+        PersistenceService.getShared().submit(studentNumber, task,
+                succeeded -> {
+                    setButtonsDisabled(false);
+                    if (!succeeded) {
+                        setErrorMessage.accept(Sisu.getAuthentication().getErrorCause());
+                        return;
+                    }
+                    try {
+                        Sisu.switchToMainScene(studentNumber);
+                    } catch (IOException e) {
+                        System.err.println("Error opening the main scene: " + e.getMessage());
+                        e.printStackTrace();
+                    }
+                },
+                error -> {
+                    setButtonsDisabled(false);
+                    System.err.println("Error reading the user file: " + error.getMessage());
+                    error.printStackTrace();
+                    setErrorMessage.accept("Käyttäjätietojen käsittely epäonnistui!");
+                });
+    }
+
+    /**
+     * Disables or enables the login and registration buttons.
+     *
+     * @param disabled true to disable the buttons.
+     */
+    private void setButtonsDisabled(boolean disabled) {
+        loginButton.setDisable(disabled);
+        registerButton.setDisable(disabled);
     }
 
     /**
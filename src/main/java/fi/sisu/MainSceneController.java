@@ -2,9 +2,14 @@ package fi.sisu;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.transformation.FilteredList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -21,12 +26,42 @@ public class MainSceneController {
      */
     DegreeProgramme userDegreeProgramme;
 
+    /**
+     * The selected and completed credits of the modules of the currently
+     * selected degree programme.
+     */
+    private CreditAggregator creditAggregator;
+
+    /**
+     * The checker of the selected and completed courses against the rules of
+     * the currently selected degree programme.
+     */
+    private RequirementEvaluator requirementEvaluator;
+
+    /**
+     * The amount of search results checked for a match in the tree view.
+     */
+    private static final int SEARCH_RESULT_LIMIT = 50;
+
     /**
      * The combo box for selecting a degree programme.
      */
     @FXML
     private ComboBox<DegreeProgramme> degreeProgrammeComboBox;
 
+    /**
+     * The text field for filtering the degree programmes of the combo box by
+     * the start of their names or codes.
+     */
+    @FXML
+    private TextField degreeProgrammeFilterField;
+
+    /**
+     * The degree programmes of the combo box. Filtering changes only the
+     * predicate of the list, so the items are not rebuilt on every keystroke.
+     */
+    private FilteredList<DegreeProgramme> filteredDegreeProgrammes;
+
     /**
      * The tree view for displaying currently selected degree programme and its
      * content, such as study modules and courses.
@@ -34,6 +69,14 @@ public class MainSceneController {
     @FXML
     private TreeView<DegreeModule> treeView;
 
+    /**
+     * The tree items of the tree view by the ids of their modules, kept while
+     * the items are created, so that a search result is found without
+     * searching the tree. Items removed from the tree are left in the map and
+     * skipped when they are looked up.
+     */
+    private final HashMap<String, TreeItem<DegreeModule>> treeItemsById = new HashMap<>();
+
     /**
      * The label for displaying the name of the user currently logged in.
      */
@@ -59,6 +102,32 @@ public class MainSceneController {
     @FXML
     private ListView<CourseUnit> listView;
 
+    /**
+     * The text field for searching the study modules and courses of the tree
+     * view.
+     */
+    @FXML
+    private TextField searchField;
+
+    /**
+     * The label above the selected courses, also telling whether they fulfill
+     * the rules of the degree programme.
+     */
+    @FXML
+    private Label selectedCoursesLabel;
+
+    /**
+     * The button for saving the selected degree programme.
+     */
+    @FXML
+    private Button saveDegreeButton;
+
+    /**
+     * The button for saving the selected courses.
+     */
+    @FXML
+    private Button saveButton;
+
     /**
      * The button to show instructions to the user.
      */
@@ -76,6 +145,7 @@ public class MainSceneController {
     public void initialize() throws IOException {
         addListViewCellFactory();
         addTreeViewCellFactory();
+        addSelectedCoursesListener();
         updateStudentInfoLabels();
         updateAvailableDegreeProgrammes();
 
@@ -93,6 +163,10 @@ public class MainSceneController {
                         onTreeViewTabOpened();
                     }
                 });
+        // Select the best match of the search on every keystroke
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> selectSearchResult(newValue));
+        degreeProgrammeFilterField.textProperty()
+                .addListener((observable, oldValue, newValue) -> filterDegreeProgrammes(newValue));
 
         // The instructions to show to the user when the infoButton is clicked
         String infoText = "Voit tarkastella opintokokonaisuuksien ja kurssien lisätietoja viemällä hiiren kyseisen moduulin päälle. " +
@@ -128,8 +202,27 @@ public class MainSceneController {
     private void updateAvailableDegreeProgrammes() {
         var degreeProgrammesListResult = Sisu.getBackgroundHandler()
                 .getDegreeProgrammesAsList();
-        degreeProgrammeComboBox.getItems()
-                .setAll(degreeProgrammesListResult);
+        filteredDegreeProgrammes = new FilteredList<>(FXCollections.observableArrayList(degreeProgrammesListResult));
+        degreeProgrammeComboBox.setItems(filteredDegreeProgrammes);
+    }
+
+    /**
+     * Filters the degree programmes of the combo box to the ones having a word
+     * in their name or code starting with each word of the given text, and
+     * shows the matching programmes to the user.
+     *
+     * @param text The text typed by the user.
+     */
+    private void filterDegreeProgrammes(String text) {
+        if (text.isBlank()) {
+            filteredDegreeProgrammes.setPredicate(null);
+            return;
+        }
+        Set<String> matchingIds = Sisu.getBackgroundHandler().findDegreeProgrammeIds(text);
+        filteredDegreeProgrammes.setPredicate(programme -> matchingIds.contains(programme.getId()));
+        if (!filteredDegreeProgrammes.isEmpty() && !degreeProgrammeComboBox.isShowing()) {
+            degreeProgrammeComboBox.show();
+        }
     }
 
     /**
@@ -179,10 +272,11 @@ public class MainSceneController {
                     } else {
                         setText(item.toString());
                         setGraphic(checkBox);
-                        if (item.getTooltipText() == null || item.getTooltipText().equals("NULL")) {
+                        String tooltipText = item.getTooltipText();
+                        if (tooltipText == null || tooltipText.equals("NULL")) {
                             setTooltip(null);
                         } else {
-                            Tooltip tooltip = new Tooltip(item.getTooltipText());
+                            Tooltip tooltip = new Tooltip(tooltipText);
                             tooltip.setMaxWidth(600);
                             tooltip.setWrapText(true);
                             tooltip.setFont(Font.font(15));
@@ -199,6 +293,12 @@ public class MainSceneController {
                         updateCheckBoxState(this, item);
                         checkBox.setOnAction(event -> {
                             item.setCompleted(checkBox.isSelected());
+                            if (creditAggregator != null) {
+                                creditAggregator.setCompleted(item, item.isCompleted());
+                                requirementEvaluator.setCompleted(item, item.isCompleted());
+                                updateRequirementStatus();
+                                treeView.refresh();
+                            }
                         });
                     }
                 }
@@ -231,11 +331,12 @@ public class MainSceneController {
                         setText(null);
                         setTooltip(null);
                     } else {
-                        setText(item.toString());
-                        if (item.getTooltipText() == null || item.getTooltipText().equals("NULL")) {
+                        setText(getTreeItemText(item));
+                        String tooltipText = item.getTooltipText();
+                        if (tooltipText == null || tooltipText.equals("NULL")) {
                             setTooltip(null);
                         } else {
-                            Tooltip tooltip = new Tooltip(item.getTooltipText());
+                            Tooltip tooltip = new Tooltip(tooltipText);
                             tooltip.setMaxWidth(600);
                             tooltip.setWrapText(true);
                             tooltip.setFont(Font.font(15));
@@ -262,6 +363,146 @@ public class MainSceneController {
         });
     }
 
+    /**
+     * Returns the text of a tree view item. Degree programmes and study modules
+     * also show the credits of the selected and completed courses under them.
+     *
+     * @param item The degree programme, study module or course of the item.
+     * @return The text of the item.
+     */
+    private String getTreeItemText(DegreeModule item) {
+        if (item instanceof CourseUnit || creditAggregator == null) {
+            return item.toString();
+        }
+        return item.toString() + "  [valittu " + creditAggregator.getSelectedCredits(item)
+                + " op, suoritettu " + creditAggregator.getCompletedCredits(item) + " op]";
+    }
+
+    /**
+     * Adds a listener to the list of selected courses, which keeps the credit
+     * totals of the tree view up to date when courses are added or removed.
+     */
+    private void addSelectedCoursesListener() {
+        listView.getItems().addListener((ListChangeListener<CourseUnit>) change -> {
+            if (creditAggregator == null) {
+                return;
+            }
+            while (change.next()) {
+                for (CourseUnit removed : change.getRemoved()) {
+                    creditAggregator.setSelected(removed, false);
+                    creditAggregator.setCompleted(removed, false);
+                    requirementEvaluator.setSelected(removed, false);
+                    requirementEvaluator.setCompleted(removed, false);
+                }
+                for (CourseUnit added : change.getAddedSubList()) {
+                    creditAggregator.setSelected(added, true);
+                    creditAggregator.setCompleted(added, added.isCompleted());
+                    requirementEvaluator.setSelected(added, true);
+                    requirementEvaluator.setCompleted(added, added.isCompleted());
+                }
+            }
+            updateRequirementStatus();
+            treeView.refresh();
+        });
+    }
+
+    /**
+     * Creates the credit totals and the requirement checks for the currently
+     * selected degree programme and counts the courses already in the list
+     * view.
+     */
+    private void resetCreditAggregator() {
+        if (userDegreeProgramme == null) {
+            creditAggregator = null;
+            requirementEvaluator = null;
+            updateRequirementStatus();
+            return;
+        }
+        creditAggregator = new CreditAggregator(userDegreeProgramme.getIndex());
+        requirementEvaluator = new RequirementEvaluator(userDegreeProgramme);
+        for (CourseUnit courseUnit : listView.getItems()) {
+            creditAggregator.setSelected(courseUnit, true);
+            creditAggregator.setCompleted(courseUnit, courseUnit.isCompleted());
+            requirementEvaluator.setSelected(courseUnit, true);
+            requirementEvaluator.setCompleted(courseUnit, courseUnit.isCompleted());
+        }
+        updateRequirementStatus();
+    }
+
+    /**
+     * Updates the label of the selected courses to tell whether the selected
+     * and the completed courses fulfill the rules of the degree programme.
+     */
+    private void updateRequirementStatus() {
+        if (requirementEvaluator == null) {
+            selectedCoursesLabel.setText("Valitut opinnot:");
+        } else if (requirementEvaluator.isGraduationSatisfied()) {
+            selectedCoursesLabel.setText("Valitut opinnot: (suoritetut opinnot riittävät tutkintoon)");
+        } else if (requirementEvaluator.isSelectionSatisfied()) {
+            selectedCoursesLabel.setText("Valitut opinnot: (valinnat riittävät tutkintoon)");
+        } else {
+            selectedCoursesLabel.setText("Valitut opinnot: (valinnat eivät vielä riitä tutkintoon)");
+        }
+    }
+
+    /**
+     * Searches the study modules and courses matching the given query and
+     * selects the best match of the currently selected degree programme in the
+     * tree view. The items containing the match are expanded.
+     *
+     * @param query The search query.
+     */
+    private void selectSearchResult(String query) {
+        if (userDegreeProgramme == null || treeView.getRoot() == null || query.isBlank()) {
+            return;
+        }
+        ProgrammeIndex index = userDegreeProgramme.getIndex();
+        // Only the modules of the degree programme are ranked, so matches elsewhere do not fill the limit
+        for (DegreeModule result : Sisu.getBackgroundHandler().searchModules(query, SEARCH_RESULT_LIMIT,
+                module -> index.getPosition(module.getId()) != -1)) {
+            TreeItem<DegreeModule> item = treeItemsById.get(result.getId());
+            if (item == null || !isInTree(item)) {
+                continue;
+            }
+            for (TreeItem<DegreeModule> parent = item.getParent(); parent != null; parent = parent.getParent()) {
+                parent.setExpanded(true);
+            }
+            treeView.getSelectionModel().select(item);
+            treeView.scrollTo(treeView.getRow(item));
+            return;
+        }
+    }
+
+    /**
+     * Checks whether the given tree item is still in the tree view, that is,
+     * whether its topmost parent is the root of the tree view.
+     *
+     * @param item The tree item.
+     * @return true if the item is in the tree view, false if it or one of its
+     * parents has been removed.
+     */
+    private boolean isInTree(TreeItem<DegreeModule> item) {
+        TreeItem<DegreeModule> top = item;
+        while (top.getParent() != null) {
+            top = top.getParent();
+        }
+        return top == treeView.getRoot();
+    }
+
+    /**
+     * Stores the given tree item for looking it up by the id of its module.
+     * An item already stored for the module is kept if it is still in the
+     * tree view.
+     *
+     * @param item The new tree item.
+     */
+    private void registerTreeItem(TreeItem<DegreeModule> item) {
+        TreeItem<DegreeModule> existing = treeItemsById.get(item.getValue().getId());
+        if (existing == null || !isInTree(existing)) {
+            treeItemsById.put(item.getValue().getId(), item);
+        }
+    }
+
     /**
      * Updates the list view and tree view based on the currently logged in
      * user's degree programme.
@@ -270,7 +511,13 @@ public class MainSceneController {
         User user = Sisu.getAuthentication().getCurrentlyLoggedInUser();
         String degreeProgrammeId = user.getDegreeModule();
         if (userDegreeProgramme == null || !userDegreeProgramme.getId().equals(degreeProgrammeId)) {
-            userDegreeProgramme = Sisu.getBackgroundHandler().getDegreeProgrammeById(degreeProgrammeId);
+            DegreeProgramme degreeProgramme = Sisu.getBackgroundHandler().getDegreeProgrammeById(degreeProgrammeId);
+            if (degreeProgramme != null) {
+                // Search the study modules and courses of the degree programme
+                degreeProgramme = Sisu.getBackgroundHandler().getDataOfDegreeProgramme(degreeProgramme);
+            }
+            userDegreeProgramme = degreeProgramme;
+            resetCreditAggregator();
         }
         updateListViewForUsersCourses(user);
         updateTreeViewForDegreeProgramme(userDegreeProgramme);
@@ -293,23 +540,15 @@ public class MainSceneController {
      * is displayed.
      */
     private void onMainTabOpened() {
-        String studentNumber = Sisu.getAuthentication().getCurrentlyLoggedInStudentNumber();
-        User userFromFile;
-        String id;
-        try {
-            userFromFile = UserReaderWriter.getUserData(studentNumber);
-            id = userFromFile.getDegreeModule();
-        } catch (Exception e) {
-            System.err.println("Error reading degreeProgramme from file: " + e.getMessage());
+        User user = Sisu.getAuthentication().getCurrentlyLoggedInUser();
+        if (user == null) {
+            System.err.println("Error reading degreeProgramme from file");
             return;
         }
-        Optional<DegreeProgramme> selectedItem = degreeProgrammeComboBox.getItems()
-                .stream()
-                .filter(programme -> programme.getId()
-                .equals(id)).findFirst();
-
-        if (selectedItem.isPresent()) {
-            degreeProgrammeComboBox.setValue(selectedItem.get());
+        String id = user.getDegreeModule();
+        DegreeProgramme selectedItem = Sisu.getBackgroundHandler().getDegreeProgrammeById(id);
+        if (selectedItem != null) {
+            degreeProgrammeComboBox.setValue(selectedItem);
         }
     }
 
@@ -324,9 +563,9 @@ public class MainSceneController {
     private void updateTreeViewForDegreeProgramme(DegreeProgramme selectedProgramme) {
         if (selectedProgramme == null) {
             treeView.setRoot(null);
+            treeItemsById.clear();
             return;
         }
-        Sisu.getBackgroundHandler().getDataOfDegreeProgramme(selectedProgramme);
         List<StudyModule> studyModules = selectedProgramme.getStudyModulesAsList();
         TreeItem<DegreeModule> root = treeView.getRoot();
         if (root == null || !root.getValue().equals(selectedProgramme)) {
@@ -334,9 +573,13 @@ public class MainSceneController {
             // programme has changed
             root = new TreeItem<>(selectedProgramme);
             treeView.setRoot(root);
+            treeItemsById.clear();
+            registerTreeItem(root);
         }
+        // Look up the selected courses from a set instead of the list view items
+        HashSet<CourseUnit> selectedCourses = new HashSet<>(listView.getItems());
         for (StudyModule module : studyModules) {
-            updateTreeItemsRecursively(module, root);
+            updateTreeItemsRecursively(module, root, selectedCourses);
         }
         // After updating the state of the tree, remove any higher-level items
         // that don't have any children nested
@@ -380,8 +623,10 @@ public class MainSceneController {
      *
      * @param module The StudyModule to add to the tree.
      * @param parent The parent TreeItem of the StudyModule.
+     * @param selectedCourses The courses displayed in the list view.
      */
-    private void updateTreeItemsRecursively(StudyModule module, TreeItem<DegreeModule> parent) {
+    private void updateTreeItemsRecursively(StudyModule module, TreeItem<DegreeModule> parent,
+            HashSet<CourseUnit> selectedCourses) {
         // Check if a tree item exists for this module, if not, create it
         var existingTreeItem = parent.getChildren()
                 .stream()
@@ -392,6 +637,7 @@ public class MainSceneController {
         } else {
             currentModule = new TreeItem<>(module);
             parent.getChildren().add(currentModule);
+            registerTreeItem(currentModule);
         }
 
         List<CourseUnit> cus = module.getCourseUnitsAsList();
@@ -399,11 +645,12 @@ public class MainSceneController {
             var existingCourseUnit = currentModule.getChildren()
                     .stream()
                     .filter((child) -> child.getValue().equals(cu)).findFirst();
-            boolean isItemInSelectedCoursesList = listView.getItems().contains(cu);
+            boolean isItemInSelectedCoursesList = selectedCourses.contains(cu);
             // Skip adding item if it already exists in the tree
             if (!existingCourseUnit.isPresent() && !isItemInSelectedCoursesList) {
                 TreeItem<DegreeModule> course = new TreeItem<>(cu);
                 currentModule.getChildren().add(course);
+                registerTreeItem(course);
             } else if (existingCourseUnit.isPresent() && isItemInSelectedCoursesList) {
                 // If item is in the tree and in the selected courses list,
                 // remove it from the tree
@@ -412,7 +659,7 @@ public class MainSceneController {
         }
         List<StudyModule> childNodes = module.getChildStudyModulesAsList();
         for (StudyModule sm : childNodes) {
-            updateTreeItemsRecursively(sm, currentModule);
+            updateTreeItemsRecursively(sm, currentModule, selectedCourses);
         }
 
         // Keep tree items sorted
@@ -449,10 +696,23 @@ public class MainSceneController {
             return;
         }
 
-        String studentNumber = Sisu.getAuthentication().getCurrentlyLoggedInStudentNumber();
-        UserReaderWriter userReaderWriter = new UserReaderWriter(null);
-        User userFromFile = userReaderWriter.getUserData(studentNumber);
-        userReaderWriter.setDegreeModuleToAUser(selectedProgramme, userFromFile);
+        // The user file is written on the persistence threads, the button is
+        // disabled until the write has finished
+        Authentication authentication = Sisu.getAuthentication();
+        saveDegreeButton.setDisable(true);
+        PersistenceService.getShared().submit(authentication.getCurrentlyLoggedInStudentNumber(),
+                () -> authentication.saveDegreeProgramme(selectedProgramme),
+                saved -> {
+                    saveDegreeButton.setDisable(false);
+                    if (!saved) {
+                        System.err.println("Error saving the degree programme");
+                    }
+                },
+                error -> {
+                    saveDegreeButton.setDisable(false);
+                    System.err.println("Error saving the degree programme: " + error.getMessage());
+                    error.printStackTrace();
+                });
     }
 
     /**
@@ -467,11 +727,12 @@ public class MainSceneController {
         if (courseUnitsToAdd == null || courseUnitsToAdd.isEmpty()) {
             return;
         }
-        // Filter out items that are already in the listView and
-        // add only those that aren't
+        // Filter out items that are already in the listView or appear twice
+        // in the given list and add only those that aren't
+        HashSet<CourseUnit> addedCourseUnits = new HashSet<>(listView.getItems());
         List<CourseUnit> courseUnitsWithoutDuplicates = courseUnitsToAdd
                 .stream()
-                .filter((cu) -> !listView.getItems().contains(cu))
+                .filter(addedCourseUnits::add)
                 .collect(Collectors.toList());
 
         listView.getItems().addAll(courseUnitsWithoutDuplicates);
@@ -487,25 +748,17 @@ public class MainSceneController {
      * were added to the listView.
      */
     private void addSelectedTreeCourses() {
-        List<String> courseList = new ArrayList<>();
         var selectedItem = treeView.getSelectionModel().getSelectedItem().getValue();
         ArrayList<CourseUnit> selectedCourses = new ArrayList<>();
         if (selectedItem == null) {
             return;
         }
-        if (selectedItem instanceof DegreeProgramme) {
-            DegreeProgramme selectedDegreeProgramme = (DegreeProgramme) selectedItem;
-            List<StudyModule> studyModules = selectedDegreeProgramme.getStudyModulesAsList();
-            studyModules.forEach((studyModule) -> {
-                selectedCourses.addAll(studyModule.getCourseUnitsAndNestedChildrenCourseUnits());
-            });
-        }
-        if (selectedItem instanceof StudyModule) {
-            StudyModule selectedStudyModule = (StudyModule) selectedItem;
-            selectedCourses.addAll(selectedStudyModule.getCourseUnitsAndNestedChildrenCourseUnits());
-        }
         if (selectedItem instanceof CourseUnit) {
             selectedCourses.add((CourseUnit) selectedItem);
+        } else {
+            // All courses under a degree programme or a study module are a
+            // continuous slice of the programme index
+            selectedCourses.addAll(userDegreeProgramme.getIndex().getCourseUnitsUnder(selectedItem));
         }
         addCourseUnitsToSelectedList(selectedCourses);
     }
@@ -548,20 +801,25 @@ public class MainSceneController {
             return;
         }
 
-        String studentNumber = Sisu.getAuthentication().getCurrentlyLoggedInStudentNumber();
-        User userFromFile = UserReaderWriter.getUserData(studentNumber);
-        // Remove existing courses associated with the user
-        userFromFile.getCourses().clear();
-        // Add newly selected courses to the user
-        for (int i = 0; i < selectedCourses.size(); i++) {
-            CourseUnit course = new CourseUnit(selectedCourses.get(i).getName(),
-                    selectedCourses.get(i).getId(), selectedCourses.get(i).getGroupId(),
-                    selectedCourses.get(i).getMinCredits(), selectedCourses.get(i).getCode(),
-                    selectedCourses.get(i).getDescription(), selectedCourses.get(i).getOutcomes());
-            course.setCompleted(selectedCourses.get(i).isCompleted());
-            UserReaderWriter userReaderWriter = new UserReaderWriter(null);
-            userReaderWriter.addCourseToUser(course, userFromFile);
-        }
+        // Replace the courses of the user with the selected courses in a single
+        // write on the persistence threads. The list is copied, as it may be
+        // changed while the write is waiting.
+        List<CourseUnit> coursesToSave = new ArrayList<>(selectedCourses);
+        Authentication authentication = Sisu.getAuthentication();
+        saveButton.setDisable(true);
+        PersistenceService.getShared().submit(authentication.getCurrentlyLoggedInStudentNumber(),
+                () -> authentication.saveCourses(coursesToSave),
+                report -> {
+                    saveButton.setDisable(false);
+                    if (report == null) {
+                        System.err.println("Error saving the selected courses");
+                    }
+                },
+                error -> {
+                    saveButton.setDisable(false);
+                    System.err.println("Error saving the selected courses: " + error.getMessage());
+                    error.printStackTrace();
+                });
     }
 
     /**
@@ -0,0 +1,26 @@
+package fi.sisu;
+
+/**
+ * Class for a rule requiring the study module with the given group id.
+ */
+public class ModuleRule extends Rule {
+
+    private final String moduleGroupId;
+
+    /**
+     *
+     * @param moduleGroupId the group id of the required study module.
+     */
+    public ModuleRule(String moduleGroupId) {
+        this.moduleGroupId = moduleGroupId;
+    }
+
+    /**
+     * Returns the group id of the required study module.
+     *
+     * @return the group id of the study module.
+     */
+    public String getModuleGroupId() {
+        return moduleGroupId;
+    }
+}
@@ -0,0 +1,516 @@
+package fi.sisu;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Class for storing the data of many users in a single file. The file is
+ * divided into pages of 1 KiB, and each user is a record of one or more
+ * consecutive pages, keyed by the student number. The records are found with a
+ * hash index, which is built from the record headers when the file is opened,
+ * so a lookup does not touch the file system and a read parses only the
+ * record of the user.
+ * <p>
+ * An updated user is written to free pages first, and the old record is freed
+ * only after the new one is on the disk, so a crash never loses the previous
+ * data of a user. The records also have a sequence number, which decides the
+ * newest record if a crash left two records of the same user.
+ * <p>
+ * The index and the free pages are kept in memory, so only one process may
+ * use the file at a time. The file is locked when it is opened, and opening a
+ * file used by another process or another store of this process fails.
+ */
+public class PagedUserStore implements Iterable<User>, Closeable {
+
+    /**
+     * Name of the system property setting the file of the shared store.
+     */
+    public static final String FILE_PROPERTY = "sisu.userDbFile";
+    private static final String DEFAULT_FILE = "users.db";
+
+    static final int PAGE_SIZE = 1024;
+    private static final int MAGIC = 0x53495355;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    // A record being written, treated as free if the writing did not finish
+    private static final byte PENDING = 2;
+    // State, pages, sequence number, payload length and key length
+    private static final int RECORD_HEADER_SIZE = 1 + 4 + 8 + 4 + 2;
+    private static final int PAYLOAD_LENGTH_OFFSET = 13;
+    private static final int KEY_LENGTH_OFFSET = 17;
+
+    private static final JsonUserCodec RECORD_CODEC = new JsonUserCodec(new UserJsonWriter(true));
+    private static PagedUserStore shared;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final HashMap<String, Slot> index = new HashMap<>();
+    // Free runs of pages by their first page
+    private final TreeMap<Integer, Integer> freeRuns = new TreeMap<>();
+    private int pageCount;
+    private long sequence;
+
+    /**
+     * Class for the location of a record in the file.
+     */
+    private static class Slot {
+
+        private final int page;
+        private final int pages;
+        private final long sequence;
+
+        /**
+         * Constructs a new location.
+         *
+         * @param page the first page of the record.
+         * @param pages the amount of pages of the record.
+         * @param sequence the sequence number of the record.
+         */
+        Slot(int page, int pages, long sequence) {
+            this.page = page;
+            this.pages = pages;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Opens the store in the given file and builds its index.
+     *
+     * @param file the file of the store.
+     * @throws IOException if the file can not be read.
+     */
+    private PagedUserStore(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            lock();
+            load();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Locks the file for this store until the store is closed.
+     *
+     * @throws IOException if the file is used by another process or another
+     * store, or can not be locked.
+     */
+    private void lock() throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IOException("The user store is already in use: " + file.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Opens the store in the given file, creating the file if it does not
+     * exist.
+     *
+     * @param file the file of the store.
+     * @return the opened store.
+     * @throws IOException if the file can not be read, is not a store or is
+     * used by another process.
+     */
+    public static PagedUserStore open(Path file) throws IOException {
+        return new PagedUserStore(file);
+    }
+
+    /**
+     * Returns the store shared by the application, stored in the file set
+     * with the FILE_PROPERTY system property.
+     *
+     * @return the shared store.
+     * @throws IOException if the file can not be opened.
+     */
+    public static synchronized PagedUserStore getShared() throws IOException {
+        if (shared == null) {
+            shared = open(Path.of(System.getProperty(FILE_PROPERTY, DEFAULT_FILE)));
+        }
+        return shared;
+    }
+
+    /**
+     * Checks whether a user is stored.
+     *
+     * @param studentNumber the student number of the user.
+     * @return true if the user is stored, otherwise false.
+     */
+    public synchronized boolean contains(String studentNumber) {
+        return index.containsKey(studentNumber);
+    }
+
+    /**
+     * Returns the student numbers of the stored users in the order of their
+     * records in the file.
+     *
+     * @return the student numbers.
+     */
+    public synchronized List<String> studentNumbers() {
+        List<Map.Entry<String, Slot>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Comparator.comparingInt(entry -> entry.getValue().page));
+        List<String> keys = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Slot> entry : entries) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the amount of stored users.
+     *
+     * @return the amount of users.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Reads a stored user.
+     *
+     * @param studentNumber the student number of the user.
+     * @return the user, or null if the user is not stored.
+     * @throws IOException if the record of the user can not be read.
+     */
+    public synchronized User get(String studentNumber) throws IOException {
+        Slot slot = index.get(studentNumber);
+        return slot == null ? null : RECORD_CODEC.decode(readPayload(slot));
+    }
+
+    /**
+     * Reads the name, the student number and the degree programme of a stored
+     * user, without its courses.
+     *
+     * @param studentNumber the student number of the user.
+     * @return the user without courses, or null if the user is not stored.
+     * @throws IOException if the record of the user can not be read.
+     */
+    public synchronized User getHeader(String studentNumber) throws IOException {
+        Slot slot = index.get(studentNumber);
+        return slot == null ? null : RECORD_CODEC.decodeHeader(readPayload(slot));
+    }
+
+    /**
+     * Stores the given user, replacing the previous data of the student
+     * number.
+     *
+     * @param studentNumber the student number the user is stored with.
+     * @param user the user to store.
+     * @throws IOException if the user can not be written.
+     */
+    public synchronized void put(String studentNumber, User user) throws IOException {
+        byte[] key = studentNumber.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = RECORD_CODEC.encode(user);
+        int length = RECORD_HEADER_SIZE + key.length + payload.length;
+        int pages = (length + PAGE_SIZE - 1) / PAGE_SIZE;
+        int page = allocate(pages);
+        long recordSequence = ++sequence;
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.put(PENDING).putInt(pages).putLong(recordSequence).putInt(payload.length)
+                .putShort((short) key.length).put(key).put(payload);
+        record.flip();
+        writeFully(record, offsetOf(page));
+        channel.force(false);
+        writeState(page, USED);
+        channel.force(false);
+
+        Slot previous = index.put(studentNumber, new Slot(page, pages, recordSequence));
+        if (previous != null) {
+            release(previous.page, previous.pages);
+        }
+    }
+
+    /**
+     * Removes a stored user.
+     *
+     * @param studentNumber the student number of the user.
+     * @return true if the user was removed, false if it was not stored.
+     * @throws IOException if the record can not be freed.
+     */
+    public synchronized boolean remove(String studentNumber) throws IOException {
+        Slot slot = index.remove(studentNumber);
+        if (slot == null) {
+            return false;
+        }
+        release(slot.page, slot.pages);
+        channel.force(false);
+        return true;
+    }
+
+    /**
+     * Returns an iterator over the stored users in the order of the file. The
+     * users are read one by one while iterating, and the users removed during
+     * the iteration are skipped.
+     *
+     * @return the iterator of the users.
+     */
+    @Override
+    public Iterator<User> iterator() {
+        List<String> keys = studentNumbers();
+        return new Iterator<User>() {
+            private int position;
+            private User next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && position < keys.size()) {
+                    try {
+                        next = get(keys.get(position++));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public User next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                User user = next;
+                next = null;
+                return user;
+            }
+        };
+    }
+
+    /**
+     * Closes the file of the store.
+     *
+     * @throws IOException if the file can not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the header of the file and the headers of all records, and builds
+     * the index and the list of free pages. A record cut short by a crash at
+     * the end of the file is removed.
+     *
+     * @throws IOException if the file can not be read or is not a store.
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(PAGE_SIZE);
+            header.flip();
+            writeFully(header, 0);
+            channel.force(false);
+            pageCount = 1;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(12);
+        if (channel.read(header, 0) < 12 || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a user store: " + file);
+        }
+        if (header.getInt(4) != FORMAT_VERSION || header.getInt(8) != PAGE_SIZE) {
+            throw new IOException("Unsupported user store format: " + file);
+        }
+
+        pageCount = (int) ((size + PAGE_SIZE - 1) / PAGE_SIZE);
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        int page = 1;
+        while (page < pageCount) {
+            recordHeader.clear();
+            int read = channel.read(recordHeader, offsetOf(page));
+            int pages = read < 5 ? 0 : recordHeader.getInt(1);
+            if (pages <= 0 || page + pages > pageCount
+                    || (recordHeader.get(0) == USED && read < RECORD_HEADER_SIZE)) {
+                // The end of the file is from an interrupted write
+                channel.truncate(offsetOf(page));
+                pageCount = page;
+                break;
+            }
+            if (recordHeader.get(0) == USED) {
+                long recordSequence = recordHeader.getLong(5);
+                ByteBuffer key = readFully(offsetOf(page) + RECORD_HEADER_SIZE,
+                        recordHeader.getShort(KEY_LENGTH_OFFSET));
+                String studentNumber = new String(key.array(), StandardCharsets.UTF_8);
+                sequence = Math.max(sequence, recordSequence);
+                Slot slot = new Slot(page, pages, recordSequence);
+                Slot other = index.get(studentNumber);
+                if (other == null || other.sequence < recordSequence) {
+                    index.put(studentNumber, slot);
+                    slot = other;
+                }
+                if (slot != null) {
+                    // An older record of a user, left by a crash during an update
+                    writeState(slot.page, FREE);
+                    freeRuns.put(slot.page, slot.pages);
+                }
+            } else {
+                freeRuns.put(page, pages);
+            }
+            page += pages;
+        }
+    }
+
+    /**
+     * Reads the encoded user of the given record.
+     *
+     * @param slot the location of the record.
+     * @return the encoded user.
+     * @throws IOException if the record can not be read.
+     */
+    private byte[] readPayload(Slot slot) throws IOException {
+        long offset = offsetOf(slot.page);
+        ByteBuffer header = readFully(offset, RECORD_HEADER_SIZE);
+        int payloadLength = header.getInt(PAYLOAD_LENGTH_OFFSET);
+        int keyLength = header.getShort(KEY_LENGTH_OFFSET);
+        return readFully(offset + RECORD_HEADER_SIZE + keyLength, payloadLength).array();
+    }
+
+    /**
+     * Returns the first page of a free run of the given length, taken from the
+     * free pages or from the end of the file.
+     *
+     * @param pages the amount of pages needed.
+     * @return the first page of the run.
+     * @throws IOException if the rest of a split run can not be marked free.
+     */
+    private int allocate(int pages) throws IOException {
+        for (Map.Entry<Integer, Integer> run : freeRuns.entrySet()) {
+            if (run.getValue() >= pages) {
+                int start = run.getKey();
+                int runPages = run.getValue();
+                freeRuns.remove(start);
+                if (runPages > pages) {
+                    writeFreeHeader(start + pages, runPages - pages);
+                    freeRuns.put(start + pages, runPages - pages);
+                }
+                return start;
+            }
+        }
+        int start = pageCount;
+        pageCount += pages;
+        return start;
+    }
+
+    /**
+     * Frees the pages of a record, joining them to the free runs next to them.
+     * Free pages at the end of the file are cut off.
+     *
+     * @param page the first page of the record.
+     * @param pages the amount of pages of the record.
+     * @throws IOException if the pages can not be marked free.
+     */
+    private void release(int page, int pages) throws IOException {
+        int start = page;
+        int count = pages;
+        Map.Entry<Integer, Integer> before = freeRuns.lowerEntry(page);
+        if (before != null && before.getKey() + before.getValue() == page) {
+            freeRuns.remove(before.getKey());
+            start = before.getKey();
+            count += before.getValue();
+        }
+        Integer after = freeRuns.remove(page + pages);
+        if (after != null) {
+            count += after;
+        }
+        if (start + count == pageCount) {
+            channel.truncate(offsetOf(start));
+            pageCount = start;
+            return;
+        }
+        writeFreeHeader(start, count);
+        freeRuns.put(start, count);
+    }
+
+    /**
+     * Writes the header of a free run of pages.
+     *
+     * @param page the first page of the run.
+     * @param pages the amount of pages of the run.
+     * @throws IOException if the header can not be written.
+     */
+    private void writeFreeHeader(int page, int pages) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.put(FREE).putInt(pages);
+        header.flip();
+        writeFully(header, offsetOf(page));
+    }
+
+    /**
+     * Writes the state of a record.
+     *
+     * @param page the first page of the record.
+     * @param state the new state.
+     * @throws IOException if the state can not be written.
+     */
+    private void writeState(int page, byte state) throws IOException {
+        writeFully(ByteBuffer.wrap(new byte[]{state}), offsetOf(page));
+    }
+
+    /**
+     * Writes the whole buffer to the given position of the file.
+     *
+     * @param buffer the data to write.
+     * @param position the position in the file.
+     * @throws IOException if the data can not be written.
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Reads the given amount of bytes from the given position of the file.
+     *
+     * @param position the position in the file.
+     * @param length the amount of bytes.
+     * @return the read bytes.
+     * @throws IOException if the bytes can not be read.
+     */
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + file);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the position of the given page in the file.
+     *
+     * @param page the page.
+     * @return the position of the page.
+     */
+    private static long offsetOf(int page) {
+        return (long) page * PAGE_SIZE;
+    }
+}
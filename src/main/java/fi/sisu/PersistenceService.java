@@ -0,0 +1,191 @@
+package fi.sisu;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+/**
+ * Class for running the reads and writes of the user files outside of the
+ * JavaFX application thread, so that a slow disk does not freeze the window.
+ * The tasks are run on a pool of its own, and each task returns a future. The
+ * tasks of the same user are run one after another in the order they were
+ * submitted, while the tasks of different users may run at the same time.
+ * The results can also be given to callbacks, which are run on the JavaFX
+ * application thread.
+ */
+public class PersistenceService implements AutoCloseable {
+
+    /**
+     * Name of the system property for the amount of threads of the shared
+     * service.
+     */
+    public static final String THREADS_PROPERTY = "sisu.persistenceThreads";
+    private static final int DEFAULT_THREADS = 2;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+    private static PersistenceService shared;
+
+    private final ExecutorService executor;
+    private final Executor callbackExecutor;
+    // The last task of each user, the next task of the user waits for it
+    private final HashMap<String, CompletableFuture<?>> lastTasks = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * Constructs a new service.
+     *
+     * @param threads the amount of threads running the tasks.
+     * @param callbackExecutor the executor running the callbacks.
+     */
+    public PersistenceService(int threads, Executor callbackExecutor) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "persistence-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Returns the service shared by the application. Its callbacks are run on
+     * the JavaFX application thread, and the amount of its threads is set with
+     * the THREADS_PROPERTY system property.
+     *
+     * @return the shared service.
+     */
+    public static synchronized PersistenceService getShared() {
+        if (shared == null) {
+            shared = new PersistenceService(Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS), Platform::runLater);
+        }
+        return shared;
+    }
+
+    /**
+     * Closes the shared service, if it has been created.
+     */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /**
+     * Submits a task of the given user. The task is run after all earlier
+     * tasks of the same user have finished, also if they failed.
+     *
+     * @param <T> the type of the result.
+     * @param studentNumber the student number of the user.
+     * @param task the task.
+     * @return the future of the result of the task.
+     */
+    public synchronized <T> CompletableFuture<T> submit(String studentNumber, Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new RejectedExecutionException("Persistence service is closed"));
+            return result;
+        }
+        Runnable run = () -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        };
+        CompletableFuture<?> previous = lastTasks.put(studentNumber, result);
+        if (previous == null) {
+            execute(run, result);
+        } else {
+            previous.whenComplete((value, error) -> execute(run, result));
+        }
+        result.whenComplete((value, error) -> forget(studentNumber, result));
+        return result;
+    }
+
+    /**
+     * Submits a task of the given user, and gives its result or failure to
+     * the given callbacks on the thread of the callbacks.
+     *
+     * @param <T> the type of the result.
+     * @param studentNumber the student number of the user.
+     * @param task the task.
+     * @param onSuccess the callback for the result.
+     * @param onFailure the callback for the exception thrown by the task.
+     * @return the future of the result of the task.
+     */
+    public <T> CompletableFuture<T> submit(String studentNumber, Callable<T> task,
+            Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        CompletableFuture<T> result = submit(studentNumber, task);
+        result.whenCompleteAsync((value, error) -> {
+            if (error == null) {
+                onSuccess.accept(value);
+            } else {
+                onFailure.accept(error);
+            }
+        }, callbackExecutor);
+        return result;
+    }
+
+    /**
+     * Waits for the submitted tasks to finish and stops the threads. Tasks
+     * submitted after this fail with a RejectedExecutionException.
+     */
+    @Override
+    public void close() {
+        ArrayList<CompletableFuture<?>> pending;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending = new ArrayList<>(lastTasks.values());
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                    .get(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // The failures are reported by the futures of the tasks
+        } catch (TimeoutException e) {
+            System.err.println("Persistence tasks did not finish in " + CLOSE_TIMEOUT_SECONDS + " seconds");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Runs the given task on the threads of the service.
+     *
+     * @param run the task.
+     * @param result the future failed if the task can not be run.
+     */
+    private void execute(Runnable run, CompletableFuture<?> result) {
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Removes the finished task of the given user, if no later task of the
+     * user has been submitted.
+     *
+     * @param studentNumber the student number of the user.
+     * @param task the finished task.
+     */
+    private synchronized void forget(String studentNumber, CompletableFuture<?> task) {
+        lastTasks.remove(studentNumber, task);
+    }
+}
@@ -0,0 +1,128 @@
+package fi.sisu;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class for a prefix tree mapping words to values. Every word of the key texts
+ * is stored folded to lower case without diacritics, and a query finds the
+ * values having a word starting with each word of the query. Finding the
+ * matches takes time relative to the length of the query and the amount of
+ * matches, not to the amount of stored values.
+ *
+ * @param <T> the type of the values.
+ */
+public class PrefixTrie<T> {
+
+    /**
+     * Class for a single node of the tree. The path from the root to the node
+     * spells a prefix of the stored words.
+     *
+     * @param <T> the type of the values.
+     */
+    private static class Node<T> {
+        private final HashMap<Character, Node<T>> children = new HashMap<>();
+        // Values having a word that ends at this node
+        private final List<T> values = new ArrayList<>(1);
+    }
+
+    private final Node<T> root = new Node<>();
+    private int size;
+
+    /**
+     * Stores the given value under every word of the given text.
+     *
+     * @param text the text, for example the name or the code of a module.
+     * @param value the value to store.
+     */
+    public synchronized void add(String text, T value) {
+        if (text == null || text.equals(DegreeModule.NULL_TEXT)) {
+            return;
+        }
+        for (String word : SearchIndex.tokenize(text, false)) {
+            addWord(word, value);
+        }
+    }
+
+    /**
+     * Stores the given value under a single word, which is not split further.
+     * Used for example for the whole codes of the modules.
+     *
+     * @param word the word.
+     * @param value the value to store.
+     */
+    public synchronized void addWord(String word, T value) {
+        if (word.isEmpty()) {
+            return;
+        }
+        Node<T> node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.children.computeIfAbsent(word.charAt(i), c -> new Node<>());
+        }
+        if (!node.values.contains(value)) {
+            node.values.add(value);
+            size++;
+        }
+    }
+
+    /**
+     * Returns the amount of stored words and values.
+     *
+     * @return the amount of stored pairs of a word and a value.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Finds the values having a word starting with each word of the given
+     * query.
+     *
+     * @param query the query, for example the start of a name or a code.
+     * @return set of the matching values, empty if nothing matches or the
+     * query has no words.
+     */
+    public synchronized Set<T> find(String query) {
+        List<String> words = SearchIndex.tokenize(query, false);
+        if (words.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<T> matches = findPrefix(words.get(0));
+        for (int i = 1; i < words.size() && !matches.isEmpty(); i++) {
+            matches.retainAll(findPrefix(words.get(i)));
+        }
+        return matches;
+    }
+
+    /**
+     * Collects the values of all words starting with the given prefix.
+     *
+     * @param prefix the folded prefix.
+     * @return set of the values under the prefix.
+     */
+    private Set<T> findPrefix(String prefix) {
+        Set<T> values = new HashSet<>();
+        Node<T> node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        if (node == null) {
+            return values;
+        }
+        ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node<T> current = stack.pop();
+            values.addAll(current.values);
+            for (Node<T> child : current.children.values()) {
+                stack.push(child);
+            }
+        }
+        return values;
+    }
+}
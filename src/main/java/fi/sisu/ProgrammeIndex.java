@@ -0,0 +1,247 @@
+package fi.sisu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Class for a flattened index of a degree programme. The degree programme, its
+ * study modules and courses are stored in pre-order, so that the subtree of
+ * every module is a continuous range of positions. With the ranges, all courses
+ * under a module can be returned as a slice and ancestor checks take constant
+ * time.
+ */
+public class ProgrammeIndex {
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final DegreeProgramme degreeProgramme;
+    // Modules in pre-order, the degree programme itself is at position 0
+    private final List<DegreeModule> nodes = new ArrayList<>();
+    // Position of the parent of each position, -1 for the degree programme
+    private int[] parents;
+    // Position after the last descendant of each position
+    private int[] subtreeEnds;
+    // Amount of courses before each position, with the total amount at the end
+    private int[] courseCounts;
+    // Courses in pre-order
+    private final List<CourseUnit> courseUnits = new ArrayList<>();
+    // Positions of each module by its id. The same course can be in many study modules.
+    private final HashMap<String, int[]> positionsById = new HashMap<>();
+
+    /**
+     * Builds the index of the given degree programme.
+     *
+     * @param degreeProgramme the degree programme to index.
+     */
+    public ProgrammeIndex(DegreeProgramme degreeProgramme) {
+        this.degreeProgramme = degreeProgramme;
+
+        // Count the modules first so that the arrays can be allocated once
+        int size = 1;
+        for (StudyModule studyModule : degreeProgramme.getStudyModulesAsList()) {
+            size += countNodes(studyModule);
+        }
+        parents = new int[size];
+        subtreeEnds = new int[size];
+        courseCounts = new int[size + 1];
+
+        addNode(degreeProgramme, -1);
+        for (StudyModule studyModule : degreeProgramme.getStudyModulesAsList()) {
+            addStudyModule(studyModule, 0);
+        }
+        subtreeEnds[0] = size;
+        courseCounts[size] = courseUnits.size();
+    }
+
+    /**
+     * Counts the positions needed for the given study module and its content.
+     *
+     * @param studyModule the study module to count.
+     * @return the amount of positions.
+     */
+    private static int countNodes(StudyModule studyModule) {
+        int count = 1 + studyModule.getCourseUnitsAsList().size();
+        for (StudyModule child : studyModule.getChildStudyModulesAsList()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+
+    /**
+     * Adds the given study module and its content to the index in pre-order.
+     *
+     * @param studyModule the study module to add.
+     * @param parent the position of the parent of the study module.
+     */
+    private void addStudyModule(StudyModule studyModule, int parent) {
+        int position = addNode(studyModule, parent);
+        for (CourseUnit courseUnit : studyModule.getCourseUnitsAsList()) {
+            int coursePosition = addNode(courseUnit, position);
+            subtreeEnds[coursePosition] = coursePosition + 1;
+            courseUnits.add(courseUnit);
+        }
+        for (StudyModule child : studyModule.getChildStudyModulesAsList()) {
+            addStudyModule(child, position);
+        }
+        subtreeEnds[position] = nodes.size();
+    }
+
+    /**
+     * Adds a single module to the next position of the index.
+     *
+     * @param module the module to add.
+     * @param parent the position of the parent of the module.
+     * @return the position of the added module.
+     */
+    private int addNode(DegreeModule module, int parent) {
+        int position = nodes.size();
+        nodes.add(module);
+        parents[position] = parent;
+        courseCounts[position] = courseUnits.size();
+
+        int[] positions = positionsById.getOrDefault(module.getId(), NO_POSITIONS);
+        int[] newPositions = Arrays.copyOf(positions, positions.length + 1);
+        newPositions[positions.length] = position;
+        positionsById.put(module.getId(), newPositions);
+        return position;
+    }
+
+    /**
+     * Returns the indexed degree programme.
+     *
+     * @return the degree programme.
+     */
+    public DegreeProgramme getDegreeProgramme() {
+        return degreeProgramme;
+    }
+
+    /**
+     * Returns the amount of positions in the index.
+     *
+     * @return the amount of positions.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the module at the given position.
+     *
+     * @param position the position of the module.
+     * @return the module at the position.
+     */
+    public DegreeModule getNode(int position) {
+        return nodes.get(position);
+    }
+
+    /**
+     * Returns the first position of the module with the given id.
+     *
+     * @param id the id of the module.
+     * @return the first position of the module, or -1 if the module is not in
+     * the degree programme.
+     */
+    public int getPosition(String id) {
+        int[] positions = positionsById.get(id);
+        return positions == null ? -1 : positions[0];
+    }
+
+    /**
+     * Returns all positions of the module with the given id. A course can be
+     * in several study modules.
+     *
+     * @param id the id of the module.
+     * @return the positions of the module, empty if the module is not in the
+     * degree programme.
+     */
+    public int[] getPositions(String id) {
+        return positionsById.getOrDefault(id, NO_POSITIONS).clone();
+    }
+
+    /**
+     * Returns the position of the parent of the given position.
+     *
+     * @param position the position of the module.
+     * @return the position of the parent, or -1 for the degree programme.
+     */
+    public int getParent(int position) {
+        return parents[position];
+    }
+
+    /**
+     * Returns the position after the last descendant of the given position.
+     * The subtree of the module is the range from its position to this
+     * position.
+     *
+     * @param position the position of the module.
+     * @return the exclusive end of the subtree.
+     */
+    public int getSubtreeEnd(int position) {
+        return subtreeEnds[position];
+    }
+
+    /**
+     * Checks whether the module at the first position is an ancestor of the
+     * module at the second position.
+     *
+     * @param ancestor the position of the possible ancestor.
+     * @param descendant the position of the possible descendant.
+     * @return true if the first module contains the second one, otherwise
+     * false.
+     */
+    public boolean isAncestor(int ancestor, int descendant) {
+        return ancestor < descendant && descendant < subtreeEnds[ancestor];
+    }
+
+    /**
+     * Checks whether the first module contains the second module anywhere
+     * under it.
+     *
+     * @param ancestor the possible ancestor.
+     * @param descendant the possible descendant.
+     * @return true if the first module contains the second one, otherwise
+     * false.
+     */
+    public boolean isAncestor(DegreeModule ancestor, DegreeModule descendant) {
+        int[] ancestorPositions = positionsById.getOrDefault(ancestor.getId(), NO_POSITIONS);
+        int[] descendantPositions = positionsById.getOrDefault(descendant.getId(), NO_POSITIONS);
+        for (int ancestorPosition : ancestorPositions) {
+            for (int descendantPosition : descendantPositions) {
+                if (isAncestor(ancestorPosition, descendantPosition)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns all courses of the subtree starting from the given position.
+     *
+     * @param position the position of the module.
+     * @return unmodifiable list of the courses in pre-order.
+     */
+    public List<CourseUnit> getCourseUnitsUnder(int position) {
+        return Collections.unmodifiableList(courseUnits.subList(courseCounts[position],
+                courseCounts[subtreeEnds[position]]));
+    }
+
+    /**
+     * Returns all courses under the given module, or the course itself if the
+     * module is a course.
+     *
+     * @param module the degree programme, study module or course.
+     * @return unmodifiable list of the courses in pre-order, empty if the
+     * module is not in the degree programme.
+     */
+    public List<CourseUnit> getCourseUnitsUnder(DegreeModule module) {
+        int position = getPosition(module.getId());
+        if (position == -1) {
+            return Collections.emptyList();
+        }
+        return getCourseUnitsUnder(position);
+    }
+}
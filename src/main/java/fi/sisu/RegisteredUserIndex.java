@@ -0,0 +1,279 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class for checking in memory whether a student is registered, without
+ * opening the user files. The student numbers of the flat layout of the user
+ * files are added to a Bloom filter, which answers either "not registered",
+ * which is always right, or "maybe registered", which is wrong for about one
+ * student number in a hundred and must be confirmed from the user file. As
+ * the registered users are the ones that log in, the confirmation is the
+ * reading of the user file that the login does anyway.
+ * <p>
+ * The filter is built from the directory of the user files, and the users
+ * registered by this application are added to it. Before a student number is
+ * told unregistered, the stamp of the directory is checked, and if others have
+ * written files to the directory since the filter was built, the file of the
+ * student is checked too, so users registered by others are not missed. The
+ * writes of this application change the stamp of the directory as well, so
+ * the stamp is taken again after them, unless a change by others has already
+ * been seen. A file written by others just before a write of this application
+ * can therefore be missed until the filter is built again. The sharded layout
+ * and the paged store keep all student numbers in memory themselves, so they
+ * are checked directly.
+ * <p>
+ * The directory is read without holding the lock of the index, so the checks
+ * made meanwhile are answered from the previous filter.
+ */
+public class RegisteredUserIndex {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+    private static RegisteredUserIndex shared;
+
+    private final UserFileLayout layout;
+    private long[] bits;
+    private int bitCount;
+    private int hashCount;
+    // The amount of student numbers the filter is sized for, and the amount added
+    private int capacity;
+    private int count;
+    // Student numbers added since the filter was built, whose files may not be written yet
+    private final Set<String> added = new HashSet<>();
+    // Stamp of the directory when the filter was built or this application last
+    // wrote to it, null if building failed
+    private FileStamp directoryStamp;
+    // Whether the directory has been changed by others since the filter was built
+    private boolean changedByOthers;
+
+    /**
+     * Constructs an index of the given flat layout and builds its filter.
+     *
+     * @param layout the layout of the user files.
+     */
+    public RegisteredUserIndex(UserFileLayout layout) {
+        this.layout = layout;
+        build();
+    }
+
+    /**
+     * Returns the index of the layout of the application, building it when
+     * it is used the first time.
+     *
+     * @return the shared index.
+     */
+    public static synchronized RegisteredUserIndex getShared() {
+        if (shared == null) {
+            shared = new RegisteredUserIndex(UserFileLayout.getShared());
+        }
+        return shared;
+    }
+
+    /**
+     * Replaces the shared index. Used by the tests to keep the files out of
+     * the working directory.
+     *
+     * @param index the new shared index, or null to build it again.
+     */
+    static synchronized void setShared(RegisteredUserIndex index) {
+        shared = index;
+    }
+
+    /**
+     * Adds a registered user to the shared index, if the index has been built
+     * and the user file is in its layout.
+     *
+     * @param fileName the name of the written user file.
+     */
+    static void addIfBuilt(String fileName) {
+        RegisteredUserIndex index;
+        synchronized (RegisteredUserIndex.class) {
+            index = shared;
+        }
+        if (index == null) {
+            return;
+        }
+        String name = Path.of(fileName).getFileName().toString();
+        if (!name.endsWith(".json")) {
+            return;
+        }
+        String studentNumber = name.substring(0, name.length() - ".json".length());
+        if (index.layout.fileOf(studentNumber).equals(Path.of(fileName))) {
+            index.addWritten(studentNumber);
+        }
+    }
+
+    /**
+     * Checks whether a student may be registered. A false answer is certain,
+     * a true answer must be confirmed from the user file.
+     *
+     * @param studentNumber the student number of the user.
+     * @return false if the student is not registered, true if it may be.
+     */
+    public boolean mightBeRegistered(String studentNumber) {
+        FileStamp stamp = FileStamp.of(layout.getDirectory().toAbsolutePath());
+        synchronized (this) {
+            if (directoryStamp == null || mightContain(studentNumber)) {
+                return true;
+            }
+            if (stamp.equals(directoryStamp)) {
+                return false;
+            }
+            changedByOthers = true;
+        }
+        // Files have been written by others since the filter was built, so
+        // only the file of this student is checked
+        if (layout.isRegistered(studentNumber)) {
+            add(studentNumber);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a student whose file this application has just written, and takes
+     * the stamp of the directory again, so that the write is not taken for a
+     * change by others.
+     *
+     * @param studentNumber the student number of the user.
+     */
+    void addWritten(String studentNumber) {
+        add(studentNumber);
+        FileStamp stamp = FileStamp.of(layout.getDirectory().toAbsolutePath());
+        synchronized (this) {
+            if (directoryStamp != null && !changedByOthers) {
+                directoryStamp = stamp;
+            }
+        }
+    }
+
+    /**
+     * Adds a registered student to the filter. The filter is built again
+     * larger if it has more student numbers than it is sized for.
+     *
+     * @param studentNumber the student number of the user.
+     */
+    public void add(String studentNumber) {
+        synchronized (this) {
+            // Also the false positives are kept, as they are not positive after the filter is built again
+            if (!added.add(studentNumber) || mightContain(studentNumber)) {
+                return;
+            }
+            if (count < capacity) {
+                put(studentNumber);
+                return;
+            }
+        }
+        // The added student number is put to the new filter with the others
+        build();
+    }
+
+    /**
+     * Builds the filter from the user files of the directory and the student
+     * numbers added since the previous build. If the directory can not be
+     * read, every student is told maybe registered.
+     */
+    private void build() {
+        FileStamp stamp = FileStamp.of(layout.getDirectory().toAbsolutePath());
+        List<String> studentNumbers;
+        try {
+            studentNumbers = layout.studentNumbers();
+        } catch (IOException e) {
+            System.err.println("Error listing registered users: " + layout.getDirectory());
+            e.printStackTrace();
+            synchronized (this) {
+                directoryStamp = null;
+            }
+            return;
+        }
+        install(studentNumbers, stamp);
+    }
+
+    /**
+     * Replaces the filter with a filter of the given student numbers and the
+     * student numbers added since the previous build.
+     *
+     * @param studentNumbers the student numbers of the user files.
+     * @param stamp the stamp of the directory before it was listed.
+     */
+    private synchronized void install(List<String> studentNumbers, FileStamp stamp) {
+        capacity = Math.max(MIN_CAPACITY, (studentNumbers.size() + added.size()) * 2);
+        // The optimal size and amount of hashes for the false positive rate
+        bitCount = (int) Math.ceil(-capacity * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        bits = new long[(bitCount + 63) / 64];
+        count = 0;
+        for (String studentNumber : studentNumbers) {
+            put(studentNumber);
+        }
+        // The added users whose files are not written yet are kept
+        added.removeAll(new HashSet<>(studentNumbers));
+        for (String studentNumber : added) {
+            put(studentNumber);
+        }
+        directoryStamp = stamp;
+        changedByOthers = false;
+    }
+
+    /**
+     * Sets the bits of a student number.
+     *
+     * @param studentNumber the student number.
+     */
+    private void put(String studentNumber) {
+        long hash = hash(studentNumber);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        count++;
+    }
+
+    /**
+     * Checks whether all bits of a student number are set.
+     *
+     * @param studentNumber the student number.
+     * @return true if the student number may have been added, otherwise
+     * false.
+     */
+    private boolean mightContain(String studentNumber) {
+        if (bits == null) {
+            return false;
+        }
+        long hash = hash(studentNumber);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a 64-bit hash of a student number, FNV-1a mixed with the
+     * finalizer of SplitMix64 so that both halves are well distributed.
+     *
+     * @param studentNumber the student number.
+     * @return the hash.
+     */
+    private static long hash(String studentNumber) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < studentNumber.length(); i++) {
+            hash ^= studentNumber.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+}
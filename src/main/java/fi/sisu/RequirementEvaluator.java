@@ -0,0 +1,311 @@
+package fi.sisu;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Class for checking the selected and completed courses of a user against the
+ * rules of a degree programme. The results of the rules are memoised, and when
+ * a course is selected or completed, only the results of the rules containing
+ * the course are evaluated again.
+ */
+public class RequirementEvaluator {
+
+    /**
+     * Class for the result of a single rule.
+     */
+    public static class Result {
+        private final boolean satisfied;
+        private final int credits;
+
+        /**
+         *
+         * @param satisfied true if the rule is fulfilled.
+         * @param credits the credits counted under the rule.
+         */
+        public Result(boolean satisfied, int credits) {
+            this.satisfied = satisfied;
+            this.credits = credits;
+        }
+
+        /**
+         * Returns whether the rule is fulfilled.
+         *
+         * @return true if the rule is fulfilled, otherwise false.
+         */
+        public boolean isSatisfied() {
+            return satisfied;
+        }
+
+        /**
+         * Returns the credits of the courses counted under the rule.
+         *
+         * @return the credits.
+         */
+        public int getCredits() {
+            return credits;
+        }
+    }
+
+    private static final Result NOT_SATISFIED = new Result(false, 0);
+
+    private final DegreeProgramme degreeProgramme;
+    // The rules each rule is directly under. The rule of a study module is under
+    // every module rule pointing to the study module.
+    private final HashMap<Rule, List<Rule>> parents = new HashMap<>();
+    // The root rule of each module by the id of the module
+    private final HashMap<String, Rule> rootRules = new HashMap<>();
+    // Leaf rules resolved to the rules of the study modules and to the courses
+    private final HashMap<ModuleRule, Rule> moduleRoots = new HashMap<>();
+    private final HashMap<CourseUnitRule, CourseUnit> courseUnits = new HashMap<>();
+    private final HashMap<String, List<CourseUnitRule>> courseUnitRules = new HashMap<>();
+
+    private final HashSet<String> selectedIds = new HashSet<>();
+    private final HashSet<String> completedIds = new HashSet<>();
+    // Memoised results of the rules, cleared up the tree when courses change
+    private final HashMap<Rule, Result> selectedResults = new HashMap<>();
+    private final HashMap<Rule, Result> completedResults = new HashMap<>();
+
+    /**
+     * Constructs a new evaluator with no selected or completed courses.
+     *
+     * @param degreeProgramme the degree programme with its study modules,
+     * courses and rules.
+     */
+    public RequirementEvaluator(DegreeProgramme degreeProgramme) {
+        this.degreeProgramme = degreeProgramme;
+        link(degreeProgramme, degreeProgramme.getRule(), degreeProgramme.getStudyModulesAsList(),
+                new ArrayList<>());
+    }
+
+    /**
+     * Sets whether the given course is selected by the user.
+     *
+     * @param courseUnit the course.
+     * @param selected true if the course is selected, otherwise false.
+     */
+    public void setSelected(CourseUnit courseUnit, boolean selected) {
+        update(selectedIds, selectedResults, courseUnit, selected);
+    }
+
+    /**
+     * Sets whether the given course is completed by the user.
+     *
+     * @param courseUnit the course.
+     * @param completed true if the course is completed, otherwise false.
+     */
+    public void setCompleted(CourseUnit courseUnit, boolean completed) {
+        update(completedIds, completedResults, courseUnit, completed);
+    }
+
+    /**
+     * Evaluates the rule of the given degree programme or study module.
+     *
+     * @param module the degree programme or the study module.
+     * @param completedOnly true if only the completed courses are counted,
+     * false if all selected courses are counted.
+     * @return the result of the rule of the module, not satisfied if the
+     * module is not in the degree programme.
+     */
+    public Result evaluate(DegreeModule module, boolean completedOnly) {
+        Rule rule = rootRules.get(module.getId());
+        if (rule == null) {
+            return NOT_SATISFIED;
+        }
+        return evaluate(rule, completedOnly);
+    }
+
+    /**
+     * Checks whether the selected courses fulfill the rules of the degree
+     * programme.
+     *
+     * @return true if the selected courses are enough for the degree,
+     * otherwise false.
+     */
+    public boolean isSelectionSatisfied() {
+        return evaluate(degreeProgramme, false).isSatisfied();
+    }
+
+    /**
+     * Checks whether the completed courses fulfill the rules of the degree
+     * programme, that is, whether the user can graduate.
+     *
+     * @return true if the completed courses are enough for the degree,
+     * otherwise false.
+     */
+    public boolean isGraduationSatisfied() {
+        return evaluate(degreeProgramme, true).isSatisfied();
+    }
+
+    /**
+     * Stores the root rule of the given module and resolves the leaf rules
+     * under it to the given study modules and courses. A module without a
+     * known rule requires its minimum credits from any of its content.
+     *
+     * @param module the degree programme or the study module.
+     * @param rule the rule of the module, or null.
+     * @param childModules the study modules directly under the module.
+     * @param moduleCourseUnits the courses directly under the module.
+     * @return the root rule of the module.
+     */
+    private Rule link(DegreeModule module, Rule rule, List<StudyModule> childModules,
+            List<CourseUnit> moduleCourseUnits) {
+        HashMap<String, StudyModule> modulesByGroupId = new HashMap<>();
+        for (StudyModule childModule : childModules) {
+            modulesByGroupId.put(childModule.getGroupId(), childModule);
+        }
+        HashMap<String, CourseUnit> courseUnitsByGroupId = new HashMap<>();
+        for (CourseUnit courseUnit : moduleCourseUnits) {
+            courseUnitsByGroupId.put(courseUnit.getGroupId(), courseUnit);
+        }
+
+        if (rule == null) {
+            List<Rule> anyContent = new ArrayList<>();
+            modulesByGroupId.keySet().forEach(groupId -> anyContent.add(new ModuleRule(groupId)));
+            courseUnitsByGroupId.keySet().forEach(groupId -> anyContent.add(new CourseUnitRule(groupId)));
+            rule = new CreditsRule(module.getMinCredits(), CompositeRule.NO_MAX,
+                    new CompositeRule(0, CompositeRule.NO_MAX, false, anyContent));
+        }
+        rootRules.put(module.getId(), rule);
+        linkRule(rule, modulesByGroupId, courseUnitsByGroupId);
+        return rule;
+    }
+
+    /**
+     * Links the given rule and the rules under it to their parents, study
+     * modules and courses.
+     *
+     * @param rule the rule to link.
+     * @param modulesByGroupId the study modules of the module by group id.
+     * @param courseUnitsByGroupId the courses of the module by group id.
+     */
+    private void linkRule(Rule rule, HashMap<String, StudyModule> modulesByGroupId,
+            HashMap<String, CourseUnit> courseUnitsByGroupId) {
+        if (rule instanceof ModuleRule) {
+            StudyModule studyModule = modulesByGroupId.get(((ModuleRule) rule).getModuleGroupId());
+            if (studyModule != null) {
+                // A study module under several modules is linked once and shared by all of its module rules
+                Rule moduleRoot = rootRules.get(studyModule.getId());
+                if (moduleRoot == null) {
+                    moduleRoot = link(studyModule, studyModule.getRule(), studyModule.getChildStudyModulesAsList(),
+                            studyModule.getCourseUnitsAsList());
+                }
+                addParent(moduleRoot, rule);
+                moduleRoots.put((ModuleRule) rule, moduleRoot);
+            }
+        } else if (rule instanceof CourseUnitRule) {
+            CourseUnit courseUnit = courseUnitsByGroupId.get(((CourseUnitRule) rule).getCourseUnitGroupId());
+            if (courseUnit != null) {
+                courseUnits.put((CourseUnitRule) rule, courseUnit);
+                courseUnitRules.computeIfAbsent(courseUnit.getId(), id -> new ArrayList<>()).add((CourseUnitRule) rule);
+            }
+        }
+        for (Rule child : rule.getRules()) {
+            addParent(child, rule);
+            linkRule(child, modulesByGroupId, courseUnitsByGroupId);
+        }
+    }
+
+    /**
+     * Stores the given parent of the given rule.
+     *
+     * @param rule the rule.
+     * @param parent the rule directly above the rule.
+     */
+    private void addParent(Rule rule, Rule parent) {
+        parents.computeIfAbsent(rule, key -> new ArrayList<>()).add(parent);
+    }
+
+    /**
+     * Updates the state of the given course and clears the results of the
+     * rules containing it, if its state changes.
+     *
+     * @param ids the ids of the courses counted.
+     * @param results the memoised results to clear.
+     * @param courseUnit the course.
+     * @param counted true if the course should be counted, otherwise false.
+     */
+    private void update(HashSet<String> ids, HashMap<Rule, Result> results, CourseUnit courseUnit, boolean counted) {
+        boolean changed = counted ? ids.add(courseUnit.getId()) : ids.remove(courseUnit.getId());
+        if (!changed) {
+            return;
+        }
+        // A rule without a result has no ancestors with a result either
+        ArrayDeque<Rule> cleared = new ArrayDeque<>(courseUnitRules.getOrDefault(courseUnit.getId(), List.of()));
+        while (!cleared.isEmpty()) {
+            Rule current = cleared.pop();
+            if (results.remove(current) != null) {
+                cleared.addAll(parents.getOrDefault(current, List.of()));
+            }
+        }
+    }
+
+    /**
+     * Evaluates the given rule, using the memoised result if there is one.
+     *
+     * @param rule the rule to evaluate.
+     * @param completedOnly true if only the completed courses are counted.
+     * @return the result of the rule.
+     */
+    private Result evaluate(Rule rule, boolean completedOnly) {
+        HashMap<Rule, Result> results = completedOnly ? completedResults : selectedResults;
+        Result result = results.get(rule);
+        if (result == null) {
+            result = compute(rule, completedOnly);
+            results.put(rule, result);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the result of the given rule from the results of the rules
+     * under it.
+     *
+     * @param rule the rule to compute.
+     * @param completedOnly true if only the completed courses are counted.
+     * @return the result of the rule.
+     */
+    private Result compute(Rule rule, boolean completedOnly) {
+        if (rule instanceof CourseUnitRule) {
+            CourseUnit courseUnit = courseUnits.get(rule);
+            HashSet<String> ids = completedOnly ? completedIds : selectedIds;
+            if (courseUnit == null || !ids.contains(courseUnit.getId())) {
+                return NOT_SATISFIED;
+            }
+            return new Result(true, courseUnit.getMinCredits());
+        }
+        if (rule instanceof ModuleRule) {
+            Rule moduleRoot = moduleRoots.get(rule);
+            return moduleRoot == null ? NOT_SATISFIED : evaluate(moduleRoot, completedOnly);
+        }
+        if (rule instanceof CreditsRule) {
+            CreditsRule creditsRule = (CreditsRule) rule;
+            Result child = evaluate(creditsRule.getRule(), completedOnly);
+            return new Result(child.isSatisfied() && child.getCredits() >= creditsRule.getMinCredits(),
+                    child.getCredits());
+        }
+        if (rule instanceof CompositeRule) {
+            CompositeRule compositeRule = (CompositeRule) rule;
+            int satisfiedRules = 0;
+            int credits = 0;
+            for (Rule child : compositeRule.getRules()) {
+                Result childResult = evaluate(child, completedOnly);
+                if (childResult.isSatisfied()) {
+                    satisfiedRules++;
+                }
+                credits += childResult.getCredits();
+            }
+            boolean satisfied;
+            if (compositeRule.isAllMandatory()) {
+                satisfied = satisfiedRules == compositeRule.getRules().size();
+            } else {
+                satisfied = satisfiedRules >= compositeRule.getMin() && satisfiedRules <= compositeRule.getMax();
+            }
+            return new Result(satisfied, credits);
+        }
+        return NOT_SATISFIED;
+    }
+}
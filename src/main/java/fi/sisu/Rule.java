@@ -0,0 +1,22 @@
+package fi.sisu;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Abstract class for a rule of a degree programme or a study module. The rules
+ * tell which study modules and courses must be completed for the module to be
+ * completed. The rules form a tree, whose leaves point to the modules and
+ * courses by their group ids.
+ */
+public abstract class Rule {
+
+    /**
+     * Returns the rules directly under this rule.
+     *
+     * @return unmodifiable list of the rules under this rule, empty by default.
+     */
+    public List<Rule> getRules() {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,267 @@
+package fi.sisu;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Class for an in-memory inverted index over the names, codes, descriptions
+ * and learning outcomes of the loaded Degree programmes, Study modules and
+ * Courses. The texts are folded to lower case without diacritics, so that for
+ * example "aidinkieli" finds "Äidinkieli". Query terms also match the indexed
+ * words starting with them, which covers most inflected Finnish word forms.
+ */
+public class SearchIndex {
+
+    // Weights of the fields, so that matches in the names and codes rank first
+    private static final int NAME_WEIGHT = 8;
+    private static final int CODE_WEIGHT = 8;
+    private static final int TEXT_WEIGHT = 1;
+    // Exact matches of a query term rank above matches of longer words starting with it
+    private static final int EXACT_MATCH_FACTOR = 2;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Locale FINNISH = new Locale("fi", "FI");
+    // Common Finnish and English words, which are not indexed from the descriptions and outcomes
+    private static final Set<String> STOP_WORDS = Set.of("ja", "tai", "seka", "on", "ovat", "ei", "etta", "jotka",
+            "joka", "myos", "kuvaus", "oppimistavoitteet", "opiskelija", "osaa", "the", "and", "of", "to", "in", "a");
+
+    // Indexed modules, the position in the list is the document number
+    private final List<DegreeModule> documents = new ArrayList<>();
+    private final HashMap<String, Integer> documentNumbers = new HashMap<>();
+    // Sorted map of the terms, so that the terms starting with a query term can be found
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+
+    /**
+     * Class for the documents containing a single term and the weight of the
+     * term in each of them.
+     */
+    private static class Postings {
+        private int[] documents = new int[2];
+        private int[] weights = new int[2];
+        private int size;
+
+        /**
+         * Adds a weight for the given document.
+         *
+         * @param document the document number.
+         * @param weight the weight to add.
+         */
+        private void add(int document, int weight) {
+            if (size > 0 && documents[size - 1] == document) {
+                weights[size - 1] += weight;
+                return;
+            }
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            documents[size] = document;
+            weights[size] = weight;
+            size++;
+        }
+    }
+
+    /**
+     * Adds the given module to the index. A module that is already indexed is
+     * replaced, and its new texts are indexed in addition to the old ones.
+     *
+     * @param module the Degree programme, Study module or Course to index.
+     */
+    public synchronized void add(DegreeModule module) {
+        Integer document = documentNumbers.get(module.getId());
+        if (document == null) {
+            document = documents.size();
+            documents.add(module);
+            documentNumbers.put(module.getId(), document);
+        } else {
+            DegreeModule indexed = documents.get(document);
+            documents.set(document, module);
+            // Only texts that changed need to be indexed again
+            if (indexed.getDescription().equals(module.getDescription())
+                    && indexed.getOutcomes().equals(module.getOutcomes())) {
+                return;
+            }
+            addText(document, module.getDescription(), TEXT_WEIGHT, true);
+            addText(document, module.getOutcomes(), TEXT_WEIGHT, true);
+            return;
+        }
+        addText(document, module.getName(), NAME_WEIGHT, false);
+        if (!module.getCode().equals(DegreeModule.NULL_TEXT)) {
+            addText(document, module.getCode(), CODE_WEIGHT, false);
+            // The whole code is also indexed as one term, e.g. "comp.cs.100" as "compcs100"
+            addTerm(document, foldCode(module.getCode()), CODE_WEIGHT);
+        }
+        addText(document, module.getDescription(), TEXT_WEIGHT, true);
+        addText(document, module.getOutcomes(), TEXT_WEIGHT, true);
+    }
+
+    /**
+     * Returns the amount of indexed modules.
+     *
+     * @return the amount of indexed modules.
+     */
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    /**
+     * Searches the modules matching all terms of the given query, ranked by
+     * their relevance.
+     *
+     * @param query the search query.
+     * @param limit the maximum amount of results.
+     * @return list of the best matching modules, best match first.
+     */
+    public List<DegreeModule> search(String query, int limit) {
+        return search(query, limit, module -> true);
+    }
+
+    /**
+     * Searches the modules matching all terms of the given query and the
+     * given filter, ranked by their relevance. The filter is applied before
+     * the limit, so the results are not crowded out by better matches that
+     * the filter rejects.
+     *
+     * @param query the search query.
+     * @param limit the maximum amount of results.
+     * @param filter the filter the results must pass.
+     * @return list of the best matching modules, best match first.
+     */
+    public synchronized List<DegreeModule> search(String query, int limit, Predicate<DegreeModule> filter) {
+        List<String> queryTerms = tokenize(query, false);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Score the documents matching the first term and keep only the
+        // documents that also match the following terms
+        HashMap<Integer, Double> scores = scoreTerm(queryTerms.get(0));
+        for (int i = 1; i < queryTerms.size() && !scores.isEmpty(); i++) {
+            HashMap<Integer, Double> termScores = scoreTerm(queryTerms.get(i));
+            scores.keySet().retainAll(termScores.keySet());
+            scores.replaceAll((document, score) -> score + termScores.get(document));
+        }
+
+        List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort((a, b) -> {
+            int byScore = Double.compare(b.getValue(), a.getValue());
+            if (byScore != 0) {
+                return byScore;
+            }
+            return documents.get(a.getKey()).compareTo(documents.get(b.getKey()));
+        });
+        List<DegreeModule> results = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && results.size() < limit; i++) {
+            DegreeModule module = documents.get(ranked.get(i).getKey());
+            if (filter.test(module)) {
+                results.add(module);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Scores the documents containing the given term or a word starting with
+     * it.
+     *
+     * @param queryTerm a folded query term.
+     * @return the scores of the matching documents by the document number.
+     */
+    private HashMap<Integer, Double> scoreTerm(String queryTerm) {
+        HashMap<Integer, Double> scores = new HashMap<>();
+        SortedMap<String, Postings> matches = terms.subMap(queryTerm, queryTerm + Character.MAX_VALUE);
+        for (Map.Entry<String, Postings> match : matches.entrySet()) {
+            Postings postings = match.getValue();
+            // Rare terms are weighted more than common ones
+            double idf = Math.log(1.0 + (double) documents.size() / postings.size);
+            if (match.getKey().equals(queryTerm)) {
+                idf *= EXACT_MATCH_FACTOR;
+            }
+            for (int i = 0; i < postings.size; i++) {
+                scores.merge(postings.documents[i], postings.weights[i] * idf, Double::sum);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Indexes all words of the given text for the given document.
+     *
+     * @param document the document number.
+     * @param text the text to index.
+     * @param weight the weight of the field.
+     * @param skipStopWords true if common words should not be indexed.
+     */
+    private void addText(int document, String text, int weight, boolean skipStopWords) {
+        if (text == null || text.equals(DegreeModule.NULL_TEXT)) {
+            return;
+        }
+        for (String term : tokenize(text, skipStopWords)) {
+            addTerm(document, term, weight);
+        }
+    }
+
+    /**
+     * Indexes a single term for the given document.
+     *
+     * @param document the document number.
+     * @param term the folded term.
+     * @param weight the weight of the term.
+     */
+    private void addTerm(int document, String term, int weight) {
+        if (term.isEmpty()) {
+            return;
+        }
+        terms.computeIfAbsent(term, t -> new Postings()).add(document, weight);
+    }
+
+    /**
+     * Splits the given text to folded words.
+     *
+     * @param text the text to split.
+     * @param skipStopWords true if common words should be left out.
+     * @return list of the folded words.
+     */
+    static List<String> tokenize(String text, boolean skipStopWords) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(fold(text))) {
+            if (!token.isEmpty() && !(skipStopWords && STOP_WORDS.contains(token))) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Folds the given code to a single word without the separators.
+     *
+     * @param code the code to fold.
+     * @return the folded code.
+     */
+    static String foldCode(String code) {
+        return NON_WORD.matcher(fold(code)).replaceAll("");
+    }
+
+    /**
+     * Folds the given text to lower case and removes the diacritics.
+     *
+     * @param text the text to fold.
+     * @return the folded text.
+     */
+    static String fold(String text) {
+        String lowerCase = text.toLowerCase(FINNISH);
+        return DIACRITICS.matcher(Normalizer.normalize(lowerCase, Normalizer.Form.NFD)).replaceAll("");
+    }
+}
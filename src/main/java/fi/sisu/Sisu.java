@@ -49,10 +49,26 @@ public class Sisu extends Application {
         this.stage = stage;
         this.instance = this;
         switchToLoginScene();
+        // The registered users are listed while the degree programmes are loaded
+        PersistenceService.getShared().submit("", () -> {
+            UserReaderWriter.buildRegisteredUserIndex();
+            return null;
+        });
         backgroundHandler = new BackgroundHandler();
         authentication = new Authentication();
     }
 
+    /**
+     * Finishes the running saves, writes the delayed user data to the files
+     * and stops watching the files when the application is closed.
+     */
+    @Override
+    public void stop() {
+        PersistenceService.closeShared();
+        UserReaderWriter.flushPendingWrites();
+        FileChangeWatcher.closeShared();
+    }
+
     /**
      * A getter for BackgroundHandler instance.
      *
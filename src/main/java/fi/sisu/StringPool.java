@@ -0,0 +1,83 @@
+package fi.sisu;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class for deduplicating strings of the loaded catalog. Thousands of Degree
+ * programmes, Study modules and Courses share identical names, codes and
+ * texts, so each distinct string is kept in memory only once.
+ */
+public class StringPool {
+
+    // Rough size of a String object with its backing array header, used for the memory report
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * Returns the pooled instance of the given string. If an equal string has
+     * not been pooled before, the given string itself is pooled and returned.
+     *
+     * @param string the string to deduplicate.
+     * @return the pooled instance equal to the given string, or null if the
+     * given string is null.
+     */
+    public String intern(String string) {
+        if (string == null) {
+            return null;
+        }
+        lookups.incrementAndGet();
+        String pooled = strings.putIfAbsent(string, string);
+        if (pooled == null) {
+            return string;
+        }
+        if (pooled != string) {
+            duplicates.incrementAndGet();
+            savedBytes.addAndGet(STRING_OVERHEAD_BYTES + 2L * string.length());
+        }
+        return pooled;
+    }
+
+    /**
+     * Returns the amount of distinct strings in the pool.
+     *
+     * @return amount of distinct strings.
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Returns how many duplicate string instances the pool has replaced.
+     *
+     * @return amount of replaced duplicate strings.
+     */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * Returns an estimate of the heap memory freed by replacing duplicates
+     * with pooled instances.
+     *
+     * @return estimated amount of freed bytes.
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    /**
+     * Returns a short report of the pool usage, which can be used to compare
+     * the retained heap with and without deduplication.
+     *
+     * @return a String describing the pool usage.
+     */
+    public String getReport() {
+        return "StringPool: " + lookups.get() + " lookups, " + size() + " distinct strings, "
+                + getDuplicateCount() + " duplicates removed (~" + getSavedBytes() / 1024 + " KiB saved)";
+    }
+}
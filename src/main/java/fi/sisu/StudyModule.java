@@ -1,6 +1,7 @@
 package fi.sisu;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -12,6 +13,13 @@ public class StudyModule extends DegreeModule {
     private HashMap<String, CourseUnit> courseUnits = new HashMap<>();
     private HashMap<String, StudyModule> childStudyModules = new HashMap<>();
 
+    // Sorted views of the maps above. They are sorted once when first needed
+    // and cleared whenever a course or a child study module is added.
+    private List<CourseUnit> sortedCourseUnits;
+    private List<StudyModule> sortedChildStudyModules;
+    // Rule telling which of the content is required, null if it is not known
+    private Rule rule;
+
     /**
      *
      * @param name name of the study module.
@@ -26,6 +34,24 @@ public class StudyModule extends DegreeModule {
         super(name, id, groupId, minCredits, code, description, outcomes);
     }
 
+    /**
+     * Constructor used when building the catalog.
+     *
+     * @param name name of the study module.
+     * @param id id of the study module.
+     * @param groupId groupId of the study module.
+     * @param minCredits credits to pass the study module.
+     * @param code code of the study module.
+     * @param description description of the study module without its label.
+     * @param outcomes learning outcomes of the study module without their label.
+     * @param labelFlags flags telling which texts are shown with their labels.
+     * @param stringPool pool used for sharing the strings.
+     */
+    StudyModule(String name, String id, String groupId, int minCredits, String code, String description,
+            String outcomes, int labelFlags, StringPool stringPool) {
+        super(name, id, groupId, minCredits, code, description, outcomes, labelFlags, stringPool);
+    }
+
     /**
      * Adds a course to the courseUnits map.
      *
@@ -33,17 +59,21 @@ public class StudyModule extends DegreeModule {
      */
     public void addCourseUnit(CourseUnit courseUnit) {
         courseUnits.put(courseUnit.getId(), courseUnit);
+        sortedCourseUnits = null;
     }
 
     /**
-     * Returns all courses as a list, sorted by the names.
+     * Returns all courses as an unmodifiable list, sorted by the names.
      *
      * @return list of all courses.
      */
     public List<CourseUnit> getCourseUnitsAsList() {
-        ArrayList<CourseUnit> list = new ArrayList<>(courseUnits.values());
-        list.sort(DegreeModule::compareTo);
-        return list;
+        if (sortedCourseUnits == null) {
+            ArrayList<CourseUnit> list = new ArrayList<>(courseUnits.values());
+            list.sort(DegreeModule::compareTo);
+            sortedCourseUnits = Collections.unmodifiableList(list);
+        }
+        return sortedCourseUnits;
     }
 
     /**
@@ -53,17 +83,22 @@ public class StudyModule extends DegreeModule {
      */
     public void addChildStudyModule(StudyModule childModule) {
         childStudyModules.put(childModule.getId(), childModule);
+        sortedChildStudyModules = null;
     }
 
     /**
-     * Returns all child study modules as a list, sorted by the names.
+     * Returns all child study modules as an unmodifiable list, sorted by the
+     * names.
      *
      * @return list of all child study modules.
      */
     public List<StudyModule> getChildStudyModulesAsList() {
-        ArrayList<StudyModule> list = new ArrayList<>(childStudyModules.values());
-        list.sort(DegreeModule::compareTo);
-        return list;
+        if (sortedChildStudyModules == null) {
+            ArrayList<StudyModule> list = new ArrayList<>(childStudyModules.values());
+            list.sort(DegreeModule::compareTo);
+            sortedChildStudyModules = Collections.unmodifiableList(list);
+        }
+        return sortedChildStudyModules;
     }
 
     /**
@@ -79,15 +114,45 @@ public class StudyModule extends DegreeModule {
     /**
      * Returns all courses of a study module including the courses of the modules children study modules.
      *
-     * @return a list of all courses under this study module.
+     * @return a list of all courses under this study module, sorted by the names.
      */
     public List<CourseUnit> getCourseUnitsAndNestedChildrenCourseUnits() {
         List<CourseUnit> allCourseUnits = new ArrayList<>();
+        addCourseUnitsRecursively(allCourseUnits);
+        allCourseUnits.sort(DegreeModule::compareTo);
+        return allCourseUnits;
+    }
+
+    /**
+     * Adds the courses of this study module and its children study modules to
+     * the given list.
+     *
+     * @param allCourseUnits the list to add the courses to.
+     */
+    private void addCourseUnitsRecursively(List<CourseUnit> allCourseUnits) {
         allCourseUnits.addAll(courseUnits.values());
         childStudyModules.values().forEach((child) -> {
-            allCourseUnits.addAll(child.getCourseUnitsAndNestedChildrenCourseUnits());
+            child.addCourseUnitsRecursively(allCourseUnits);
         });
-        allCourseUnits.sort(DegreeModule::compareTo);
-        return allCourseUnits;
+    }
+
+    /**
+     * Sets the rule telling which study modules and courses of the study module
+     * are required.
+     *
+     * @param rule the rule of the study module.
+     */
+    public void setRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Returns the rule telling which study modules and courses of the study module
+     * are required.
+     *
+     * @return the rule, or null if the rule is not known.
+     */
+    public Rule getRule() {
+        return rule;
     }
 }
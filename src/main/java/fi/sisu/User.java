@@ -26,6 +26,24 @@ public class User {
         this.studentNumber = studentNumber;
     }
 
+    /**
+     * Constructs a copy of the given user. The courses are copied too, so
+     * changing the completion of a course of the copy does not change the
+     * original.
+     *
+     * @param user The user to copy.
+     */
+    User(User user) {
+        this.name = user.name;
+        this.studentNumber = user.studentNumber;
+        this.degreeModule = user.degreeModule;
+        for (CourseUnit course : user.courses) {
+            CourseUnit courseCopy = new CourseUnit(course);
+            courseCopy.setCompleted(course.isCompleted());
+            this.courses.add(courseCopy);
+        }
+    }
+
     /**
      * Constructs a new empty User object.
      */
@@ -67,7 +85,7 @@ public class User {
      * @param studentNumber The new student number of the user.
      */
     public void setStudentNumber(String studentNumber) {
-        this.name = studentNumber;
+        this.studentNumber = studentNumber;
 
     }
 
@@ -0,0 +1,539 @@
+package fi.sisu;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Class for importing and exporting the data of many users at once, for
+ * example to register a whole cohort of students. The users are read from and
+ * written to CSV or JSON Lines files, selected by the extension of the file.
+ * <p>
+ * A CSV row has the columns studentNumber, name, degreeProgramme and courses,
+ * where the courses are separated with semicolons and each course is its id
+ * followed by ":1" if it is completed or ":0" if not. The courses are looked up
+ * from the loaded degree programmes and the course catalog snapshot. A JSON
+ * Lines file has the data of one user per line in the format of the user
+ * files.
+ * <p>
+ * The rows are read by a single thread and validated and written by a pool of
+ * threads, and the amount of rows waiting for the pool is limited, so that
+ * large files do not fill the memory. The users are written with
+ * UserReaderWriter, so the system properties of the user files apply.
+ */
+public class UserBulkTransfer {
+
+    /**
+     * The header row of the CSV files.
+     */
+    public static final String CSV_HEADER = "studentNumber,name,degreeProgramme,courses";
+    private static final int PROGRESS_INTERVAL = 1000;
+    private static final int MAX_ERRORS = 100;
+
+    private final UserFileLayout layout;
+    private final int concurrency;
+    private Consumer<Result> progressListener;
+
+    /**
+     * Constructs a new transfer.
+     *
+     * @param layout the layout of the user files.
+     * @param concurrency the amount of users validated and written at the same
+     * time.
+     */
+    public UserBulkTransfer(UserFileLayout layout, int concurrency) {
+        this.layout = layout;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Sets the listener called with the progress after every thousand rows.
+     *
+     * @param progressListener the listener, or null for none.
+     */
+    public void setProgressListener(Consumer<Result> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Imports the users of the given file. Invalid rows and users that are
+     * already registered are skipped, and the rest are written.
+     *
+     * @param source the CSV or JSON Lines file.
+     * @return the result of the import.
+     * @throws IOException if the file can not be read.
+     */
+    public Result importUsers(Path source) throws IOException {
+        boolean csv = isCsv(source);
+        Result result = new Result();
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        Semaphore permits = new Semaphore(concurrency * 2);
+        ExecutorService executor = newExecutor("bulk-import");
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (csv && lineNumber == 1 && line.startsWith("studentNumber,"))) {
+                    continue;
+                }
+                String row = line;
+                int rowNumber = lineNumber;
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        importRow(row, rowNumber, csv, seen, result);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            // Wait for the remaining rows
+            permits.acquire(concurrency * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return result.finish();
+    }
+
+    /**
+     * Exports all stored users to the given file. The users are read in
+     * parallel but written in the order of their student numbers, and only a
+     * limited amount of them is kept in the memory at a time.
+     *
+     * @param target the CSV or JSON Lines file.
+     * @return the result of the export.
+     * @throws IOException if the users can not be listed or the file can not
+     * be written.
+     */
+    public Result exportUsers(Path target) throws IOException {
+        boolean csv = isCsv(target);
+        UserJsonWriter jsonWriter = new UserJsonWriter(true);
+        Result result = new Result();
+        ExecutorService executor = newExecutor("bulk-export");
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            if (csv) {
+                writer.write(CSV_HEADER);
+                writer.newLine();
+            }
+            ArrayDeque<CompletableFuture<User>> reads = new ArrayDeque<>();
+            for (String studentNumber : UserReaderWriter.listStudentNumbers(layout)) {
+                String fileName = fileNameOf(studentNumber);
+                reads.add(CompletableFuture.supplyAsync(
+                        () -> new UserReaderWriter(new User()).getUser(fileName), executor));
+                if (reads.size() >= concurrency * 2) {
+                    exportUser(reads.poll(), writer, csv, jsonWriter, result);
+                }
+            }
+            while (!reads.isEmpty()) {
+                exportUser(reads.poll(), writer, csv, jsonWriter, result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return result.finish();
+    }
+
+    /**
+     * Validates and writes a single imported user.
+     *
+     * @param row the row of the file.
+     * @param rowNumber the line number of the row.
+     * @param csv true if the row is CSV, false if JSON.
+     * @param seen the student numbers of the rows imported so far.
+     * @param result the result to update.
+     */
+    private void importRow(String row, int rowNumber, boolean csv, Set<String> seen, Result result) {
+        try {
+            User user = csv ? parseCsvUser(row) : UserCodecs.decode(row.getBytes(StandardCharsets.UTF_8));
+            String studentNumber = user.getStudentNumber();
+            if (studentNumber.isBlank() || user.getName().isBlank()) {
+                throw new IOException("Student number or name missing");
+            }
+            if (!studentNumber.equals(studentNumber.trim()) || studentNumber.contains("/")
+                    || studentNumber.contains("\\")) {
+                throw new IOException("Invalid student number: " + studentNumber);
+            }
+            if (!seen.add(studentNumber)) {
+                throw new IOException("Student number appears twice: " + studentNumber);
+            }
+            String fileName = fileNameOf(studentNumber);
+            layout.createDirectories(studentNumber);
+            if (layout.isSharded() ? layout.isRegistered(studentNumber) : UserReaderWriter.userExists(fileName)) {
+                result.skipped.incrementAndGet();
+            } else if (new UserReaderWriter(user).writeToFile(fileName)) {
+                layout.register(studentNumber);
+                result.succeeded.incrementAndGet();
+            } else {
+                throw new IOException("Writing failed: " + fileName);
+            }
+        } catch (Exception e) {
+            result.addError("Line " + rowNumber + ": " + e.getMessage());
+        }
+        result.reportProgress(progressListener);
+    }
+
+    /**
+     * Writes a single exported user, after its reading has finished.
+     *
+     * @param read the reading of the user.
+     * @param writer the writer of the file.
+     * @param csv true to write CSV, false to write JSON.
+     * @param jsonWriter the writer of the JSON data.
+     * @param result the result to update.
+     * @throws IOException if the user can not be written.
+     */
+    private void exportUser(CompletableFuture<User> read, Writer writer, boolean csv, UserJsonWriter jsonWriter,
+            Result result) throws IOException {
+        User user;
+        try {
+            user = read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            user = null;
+        }
+        if (user == null) {
+            result.addError("User can not be read");
+        } else {
+            if (csv) {
+                writer.write(formatCsvUser(user));
+            } else {
+                // Written to a buffer first, as the writer of the user flushes its output
+                StringWriter line = new StringWriter();
+                jsonWriter.write(user, line);
+                writer.write(line.toString());
+            }
+            writer.write('\n');
+            result.succeeded.incrementAndGet();
+        }
+        result.reportProgress(progressListener);
+    }
+
+    /**
+     * Creates a user from a CSV row.
+     *
+     * @param row the row.
+     * @return the user.
+     * @throws IOException if the row is invalid or a course is not found.
+     */
+    static User parseCsvUser(String row) throws IOException {
+        List<String> fields = parseCsvRow(row);
+        if (fields.size() != 4) {
+            throw new IOException("Expected 4 columns but found " + fields.size());
+        }
+        User user = new User(fields.get(1), fields.get(0));
+        if (!fields.get(2).isEmpty()) {
+            user.setDegreeModule(fields.get(2));
+        }
+        List<CourseUnit> courses = new ArrayList<>();
+        if (!fields.get(3).isEmpty()) {
+            for (String entry : fields.get(3).split(";")) {
+                int separator = entry.lastIndexOf(':');
+                String id = separator < 0 ? entry : entry.substring(0, separator);
+                String completed = separator < 0 ? "0" : entry.substring(separator + 1);
+                if (!completed.equals("0") && !completed.equals("1")) {
+                    throw new IOException("Invalid completion of course " + id + ": " + completed);
+                }
+                CourseUnit course = findCourse(id);
+                if (course == null) {
+                    throw new IOException("Course not found: " + id);
+                }
+                course.setCompleted(completed.equals("1"));
+                courses.add(course);
+            }
+        }
+        user.setCourses(courses);
+        return user;
+    }
+
+    /**
+     * Formats a user as a CSV row.
+     *
+     * @param user the user.
+     * @return the row without a line break.
+     */
+    static String formatCsvUser(User user) {
+        StringBuilder courses = new StringBuilder();
+        for (CourseUnit course : user.getCourses()) {
+            if (courses.length() > 0) {
+                courses.append(';');
+            }
+            courses.append(course.getId()).append(course.isCompleted() ? ":1" : ":0");
+        }
+        String degreeModule = user.getDegreeModule() == null ? "" : user.getDegreeModule();
+        return String.join(",", quoteCsv(user.getStudentNumber()), quoteCsv(user.getName()),
+                quoteCsv(degreeModule), quoteCsv(courses.toString()));
+    }
+
+    /**
+     * Splits a CSV row into its fields. Fields may be quoted with double
+     * quotes, and a double quote inside a quoted field is written twice.
+     *
+     * @param row the row.
+     * @return the fields.
+     * @throws IOException if a quoted field is not closed.
+     */
+    static List<String> parseCsvRow(String row) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IOException("Unclosed quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Quotes a CSV field if it contains a comma, a quote or a line break.
+     *
+     * @param field the field.
+     * @return the field ready to be written.
+     */
+    private static String quoteCsv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Returns a copy of a course from the loaded degree programmes, or from
+     * the course catalog snapshot if they are not loaded.
+     *
+     * @param id the id of the course.
+     * @return the copy of the course, or null if it is not found.
+     */
+    private static CourseUnit findCourse(String id) {
+        BackgroundHandler backgroundHandler = Sisu.getBackgroundHandler();
+        CourseUnit course = backgroundHandler == null ? null : backgroundHandler.getCourseUnitById(id);
+        if (course == null) {
+            course = CourseCatalogSnapshot.getShared().get(id);
+        }
+        return course == null ? null : new CourseUnit(course);
+    }
+
+    /**
+     * Returns the name of the file of a user.
+     *
+     * @param studentNumber the student number of the user.
+     * @return the name of the file in the layout of the user files.
+     */
+    private String fileNameOf(String studentNumber) {
+        return layout.fileOf(studentNumber).toString();
+    }
+
+    /**
+     * Checks whether the given file is a CSV file.
+     *
+     * @param file the file.
+     * @return true if the name of the file ends with ".csv", otherwise false
+     * for JSON Lines.
+     */
+    private static boolean isCsv(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".csv");
+    }
+
+    /**
+     * Creates the pool of threads of a transfer.
+     *
+     * @param name the name of the threads.
+     * @return the pool.
+     */
+    private ExecutorService newExecutor(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Imports or exports users from the command line. Usage:
+     * {@code import <file>} or {@code export <file>}, optionally followed by
+     * the amount of threads. The user files are in the layout set with the
+     * system properties.
+     *
+     * @param args the command line arguments.
+     * @throws IOException if the file can not be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: UserBulkTransfer import|export <file.csv|file.jsonl> [threads]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        UserBulkTransfer transfer = new UserBulkTransfer(UserFileLayout.getShared(), threads);
+        transfer.setProgressListener(progress -> System.out.println(progress));
+        Path file = Path.of(args[1]);
+        Result result = args[0].equals("import") ? transfer.importUsers(file) : transfer.exportUsers(file);
+        UserReaderWriter.flushPendingWrites();
+        System.out.println(result);
+        for (String error : result.getErrors()) {
+            System.err.println(error);
+        }
+    }
+
+    /**
+     * Class for the progress and the result of an import or an export.
+     */
+    public static class Result {
+
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger processed = new AtomicInteger();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile long elapsedNanos = -1;
+
+        /**
+         * Returns the amount of users imported or exported.
+         *
+         * @return the amount of users.
+         */
+        public int getSucceeded() {
+            return succeeded.get();
+        }
+
+        /**
+         * Returns the amount of imported users that were already registered.
+         *
+         * @return the amount of users.
+         */
+        public int getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * Returns the amount of rows or users that failed.
+         *
+         * @return the amount of failures.
+         */
+        public int getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Returns the messages of the first failures.
+         *
+         * @return the messages, at most 100.
+         */
+        public List<String> getErrors() {
+            synchronized (errors) {
+                return new ArrayList<>(errors);
+            }
+        }
+
+        /**
+         * Returns the time the transfer has taken.
+         *
+         * @return the time in seconds.
+         */
+        public double getSeconds() {
+            long nanos = elapsedNanos >= 0 ? elapsedNanos : System.nanoTime() - startNanos;
+            return nanos / 1e9;
+        }
+
+        /**
+         * Returns the amount of rows or users handled per second.
+         *
+         * @return the throughput.
+         */
+        public double getRowsPerSecond() {
+            double seconds = getSeconds();
+            return seconds > 0 ? processed.get() / seconds : 0;
+        }
+
+        /**
+         * Returns the progress as text.
+         *
+         * @return the counts, the time and the throughput.
+         */
+        @Override
+        public String toString() {
+            return String.format("%d done, %d skipped, %d failed in %.1f s (%.0f rows/s)",
+                    getSucceeded(), getSkipped(), getFailed(), getSeconds(), getRowsPerSecond());
+        }
+
+        /**
+         * Records a failure.
+         *
+         * @param error the message of the failure.
+         */
+        private void addError(String error) {
+            failed.incrementAndGet();
+            synchronized (errors) {
+                if (errors.size() < MAX_ERRORS) {
+                    errors.add(error);
+                }
+            }
+        }
+
+        /**
+         * Counts a handled row and calls the listener after every thousand
+         * rows.
+         *
+         * @param listener the listener, or null for none.
+         */
+        private void reportProgress(Consumer<Result> listener) {
+            if (processed.incrementAndGet() % PROGRESS_INTERVAL == 0 && listener != null) {
+                listener.accept(this);
+            }
+        }
+
+        /**
+         * Stops the clock of the transfer.
+         *
+         * @return this result.
+         */
+        private Result finish() {
+            elapsedNanos = System.nanoTime() - startNanos;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package fi.sisu;
+
+import java.io.IOException;
+
+/**
+ * Interface for the formats the data of a user can be stored in. Each format
+ * recognizes its own data from the first bytes, so a file can be read without
+ * knowing the format it was written in.
+ */
+public interface UserCodec {
+
+    /**
+     * Returns the name of the format, used to select it with a system
+     * property.
+     *
+     * @return the name of the format.
+     */
+    public String getName();
+
+    /**
+     * Checks whether the given data is in this format.
+     *
+     * @param data the data, of which only the first bytes are looked at.
+     * @return true if the data is in this format, otherwise false.
+     */
+    public boolean canDecode(byte[] data);
+
+    /**
+     * Encodes the data of the given user.
+     *
+     * @param user the user to encode.
+     * @return the encoded data.
+     * @throws IOException if the user can not be encoded.
+     */
+    public byte[] encode(User user) throws IOException;
+
+    /**
+     * Decodes a user from the given data.
+     *
+     * @param data the encoded data.
+     * @return the decoded user.
+     * @throws IOException if the data is broken.
+     */
+    public User decode(byte[] data) throws IOException;
+
+    /**
+     * Decodes only the name, the student number and the degree programme of
+     * a user, without its courses. The formats able to stop before the
+     * courses override this.
+     *
+     * @param data the encoded data.
+     * @return the decoded user without courses.
+     * @throws IOException if the data is broken.
+     */
+    public default User decodeHeader(byte[] data) throws IOException {
+        User user = decode(data);
+        User header = new User(user.getName(), user.getStudentNumber());
+        header.setDegreeModule(user.getDegreeModule());
+        return header;
+    }
+}
@@ -0,0 +1,106 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Class for the registered formats of the user files. A file is decoded with
+ * the format recognizing its first bytes, so files written in different
+ * formats can be read side by side, and the legacy JSON files are read
+ * without changes. Both built-in formats are also available compressed with
+ * gzip, as "json+gzip" and "binary+gzip". New formats can be added with
+ * register.
+ */
+public final class UserCodecs {
+
+    /**
+     * Name of the system property selecting the format new user files are
+     * written in, "json" by default.
+     */
+    public static final String CODEC_PROPERTY = "sisu.userCodec";
+
+    private static final UserCodec BINARY = new BinaryUserCodec();
+    private static final UserCodec JSON = new JsonUserCodec(UserJsonWriter.fromSystemProperties());
+    private static final List<UserCodec> CODECS = new CopyOnWriteArrayList<>(List.of(
+            new GzipUserCodec(BINARY), new GzipUserCodec(JSON), BINARY, JSON));
+
+    private UserCodecs() {
+    }
+
+    /**
+     * Registers a new format. Formats registered later are tried first when
+     * the format of data is detected.
+     *
+     * @param codec the format to register.
+     */
+    public static void register(UserCodec codec) {
+        CODECS.add(0, codec);
+    }
+
+    /**
+     * Returns the format with the given name.
+     *
+     * @param name the name of the format.
+     * @return the format, or null if no format has the name.
+     */
+    public static UserCodec forName(String name) {
+        for (UserCodec codec : CODECS) {
+            if (codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the format new user files are written in, selected with the
+     * CODEC_PROPERTY system property. An unknown name selects JSON.
+     *
+     * @return the format.
+     */
+    public static UserCodec fromSystemProperties() {
+        String name = System.getProperty(CODEC_PROPERTY, JsonUserCodec.NAME);
+        UserCodec codec = forName(name);
+        if (codec == null) {
+            System.err.println("Unknown user file format: " + name);
+            codec = forName(JsonUserCodec.NAME);
+        }
+        return codec;
+    }
+
+    /**
+     * Decodes a user with the format recognizing the given data.
+     *
+     * @param data the encoded data.
+     * @return the decoded user.
+     * @throws IOException if no format recognizes the data, or the data is
+     * broken.
+     */
+    public static User decode(byte[] data) throws IOException {
+        for (UserCodec codec : CODECS) {
+            if (codec.canDecode(data)) {
+                return codec.decode(data);
+            }
+        }
+        throw new IOException("Unknown user file format");
+    }
+
+    /**
+     * Decodes the name, the student number and the degree programme of a
+     * user with the format recognizing the given data.
+     *
+     * @param data the encoded data.
+     * @return the decoded user without courses.
+     * @throws IOException if no format recognizes the data, or the data is
+     * broken.
+     */
+    public static User decodeHeader(byte[] data) throws IOException {
+        for (UserCodec codec : CODECS) {
+            if (codec.canDecode(data)) {
+                return codec.decodeHeader(data);
+            }
+        }
+        throw new IOException("Unknown user file format");
+    }
+}
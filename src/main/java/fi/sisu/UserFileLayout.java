@@ -0,0 +1,467 @@
+package fi.sisu;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Class for the places of the user files. In the flat layout, which is the
+ * default, the files are in a single directory. In the sharded layout, the
+ * files are spread to two levels of directories named by the hash of the
+ * student number, such as users/3f/a2/12345.json, so that no directory grows
+ * large. The sharded layout also keeps an index file listing the registered
+ * student numbers, so that checking whether a student is registered does not
+ * touch the directories at all.
+ * <p>
+ * The index file has one student number per line, and new students are
+ * appended to it after their files are written. If the index file is
+ * missing, it is rebuilt from the directories. An index rebuilt by another
+ * process replaces the file, which is noticed from the identity of the file,
+ * and then the index is read again from the start.
+ */
+public class UserFileLayout {
+
+    /**
+     * Name of the system property selecting the layout: "flat" (the default)
+     * or "sharded".
+     */
+    public static final String LAYOUT_PROPERTY = "sisu.userLayout";
+    /**
+     * Name of the system property setting the root directory of the sharded
+     * layout.
+     */
+    public static final String DIRECTORY_PROPERTY = "sisu.userDir";
+    /**
+     * Name of the index file in the root directory of the sharded layout.
+     */
+    public static final String INDEX_FILE = "index.txt";
+
+    private static final String DEFAULT_DIRECTORY = "users";
+    private static final String EXTENSION = ".json";
+    private static UserFileLayout shared;
+
+    private final Path directory;
+    private final boolean sharded;
+    // The registered student numbers of the sharded layout, null until the index is read
+    private HashSet<String> index;
+    // Length of the index file read so far, and the stamp of the file then
+    private long indexOffset;
+    private FileStamp indexStamp;
+    // Identity of the index file read so far, which changes when the file is replaced
+    private Object indexIdentity;
+
+    /**
+     * Constructs a new layout.
+     *
+     * @param directory the directory of the files.
+     * @param sharded true for the sharded layout, false for the flat layout.
+     */
+    private UserFileLayout(Path directory, boolean sharded) {
+        this.directory = directory;
+        this.sharded = sharded;
+    }
+
+    /**
+     * Returns a flat layout in the given directory.
+     *
+     * @param directory the directory of the files.
+     * @return the layout.
+     */
+    public static UserFileLayout flat(Path directory) {
+        return new UserFileLayout(directory, false);
+    }
+
+    /**
+     * Returns a sharded layout in the given root directory.
+     *
+     * @param directory the root directory of the shards and the index.
+     * @return the layout.
+     */
+    public static UserFileLayout sharded(Path directory) {
+        return new UserFileLayout(directory, true);
+    }
+
+    /**
+     * Returns the layout of the application, selected with the
+     * LAYOUT_PROPERTY system property. The flat layout is the working
+     * directory.
+     *
+     * @return the shared layout.
+     */
+    public static synchronized UserFileLayout getShared() {
+        if (shared == null) {
+            shared = "sharded".equals(System.getProperty(LAYOUT_PROPERTY))
+                    ? sharded(Path.of(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY)))
+                    : flat(Path.of(""));
+        }
+        return shared;
+    }
+
+    /**
+     * Replaces the shared layout. Used by the tests to keep the files out of
+     * the working directory.
+     *
+     * @param layout the new shared layout, or null to use the system
+     * properties again.
+     */
+    static synchronized void setShared(UserFileLayout layout) {
+        shared = layout;
+    }
+
+    /**
+     * Returns the directory of the files.
+     *
+     * @return the directory of the flat layout, or the root directory of the
+     * sharded layout.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Checks whether this is the sharded layout.
+     *
+     * @return true if the layout is sharded, false if it is flat.
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * Returns the file of a user. The directories of the file are not
+     * created.
+     *
+     * @param studentNumber the student number of the user.
+     * @return the path of the file.
+     */
+    public Path fileOf(String studentNumber) {
+        String name = studentNumber + EXTENSION;
+        if (!sharded) {
+            return directory.resolve(name);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(studentNumber.getBytes(StandardCharsets.UTF_8));
+        long hash = crc.getValue();
+        return directory.resolve(String.format("%02x", (hash >>> 8) & 0xFF))
+                .resolve(String.format("%02x", hash & 0xFF))
+                .resolve(name);
+    }
+
+    /**
+     * Checks whether a user is registered. In the sharded layout the index in
+     * memory is checked, and only if the user is not found there, the stamp
+     * of the index file is checked for users registered by other processes.
+     *
+     * @param studentNumber the student number of the user.
+     * @return true if the user is registered, otherwise false.
+     */
+    public synchronized boolean isRegistered(String studentNumber) {
+        if (!sharded) {
+            return Files.exists(fileOf(studentNumber));
+        }
+        if (loadIndex().contains(studentNumber)) {
+            return true;
+        }
+        refreshIndex();
+        return index.contains(studentNumber);
+    }
+
+    /**
+     * Adds a written user to the index of the sharded layout. Called only
+     * after the file of the user is written, so that the index never has a
+     * user without a file. Does nothing in the flat layout or if the user is
+     * already in the index.
+     *
+     * @param studentNumber the student number of the user.
+     * @throws IOException if the index can not be written.
+     */
+    public synchronized void register(String studentNumber) throws IOException {
+        if (!sharded || loadIndex().contains(studentNumber)) {
+            return;
+        }
+        appendToIndex(List.of(studentNumber));
+        index.add(studentNumber);
+    }
+
+    /**
+     * Creates the directories of the file of a user.
+     *
+     * @param studentNumber the student number of the user.
+     * @throws IOException if the directories can not be created.
+     */
+    public void createDirectories(String studentNumber) throws IOException {
+        Path parent = fileOf(studentNumber).toAbsolutePath().getParent();
+        if (!Files.isDirectory(parent)) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    /**
+     * Returns the student numbers of the users in this layout.
+     *
+     * @return the student numbers in ascending order.
+     * @throws IOException if the directory can not be read.
+     */
+    public synchronized List<String> studentNumbers() throws IOException {
+        List<String> studentNumbers;
+        if (sharded) {
+            refreshIndex();
+            studentNumbers = new ArrayList<>(index);
+        } else {
+            Path catalogFile = CourseCatalogSnapshot.getShared().getFile().toAbsolutePath();
+            studentNumbers = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.toAbsolutePath(), "*" + EXTENSION)) {
+                for (Path file : files) {
+                    if (!file.equals(catalogFile) && Files.isRegularFile(file)) {
+                        studentNumbers.add(studentNumberOf(file));
+                    }
+                }
+            }
+        }
+        Collections.sort(studentNumbers);
+        return studentNumbers;
+    }
+
+    /**
+     * Moves the user files of a flat directory to this sharded layout and
+     * adds them to the index. The journals of the files are moved with them,
+     * and each user is added to the index as soon as it is moved. If moving
+     * fails, the index is rebuilt from the directories, so that it has every
+     * moved user. A file whose user is already in this layout is left in
+     * place.
+     *
+     * @param flatDirectory the directory of the flat layout.
+     * @return the amount of moved users.
+     * @throws IOException if a file can not be moved or the index can not be
+     * written.
+     */
+    public synchronized int migrate(Path flatDirectory) throws IOException {
+        if (!sharded) {
+            throw new IllegalStateException("Only a sharded layout can be migrated to");
+        }
+        int moved = 0;
+        try {
+            for (String studentNumber : flat(flatDirectory).studentNumbers()) {
+                if (loadIndex().contains(studentNumber)) {
+                    System.err.println("User already migrated, left in place: " + studentNumber);
+                    continue;
+                }
+                Path source = flatDirectory.resolve(studentNumber + EXTENSION);
+                Path target = fileOf(studentNumber);
+                createDirectories(studentNumber);
+                Path journal = JournalUserStore.journalOf(source);
+                if (Files.exists(journal)) {
+                    Files.move(journal, JournalUserStore.journalOf(target), StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                appendToIndex(List.of(studentNumber));
+                index.add(studentNumber);
+                moved++;
+            }
+        } catch (IOException e) {
+            // A user may have been moved without being added to the index
+            rebuildIndex();
+            throw e;
+        }
+        return moved;
+    }
+
+    /**
+     * Writes the index of the sharded layout again from the files in the
+     * directories.
+     *
+     * @return the amount of users in the index.
+     * @throws IOException if the directories can not be read or the index can
+     * not be written.
+     */
+    public synchronized int rebuildIndex() throws IOException {
+        HashSet<String> found = new HashSet<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.walk(directory, 3)) {
+                files.filter(file -> directory.relativize(file).getNameCount() == 3)
+                        .filter(file -> file.getFileName().toString().endsWith(EXTENSION))
+                        .filter(Files::isRegularFile)
+                        .forEach(file -> found.add(studentNumberOf(file)));
+            }
+        }
+        List<String> sorted = new ArrayList<>(found);
+        Collections.sort(sorted);
+        AtomicFileWriter.write(directory.resolve(INDEX_FILE), out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (String studentNumber : sorted) {
+                writer.write(studentNumber);
+                writer.write('\n');
+            }
+            writer.flush();
+        });
+        index = found;
+        indexOffset = Files.size(directory.resolve(INDEX_FILE));
+        indexStamp = FileStamp.of(directory.resolve(INDEX_FILE));
+        indexIdentity = identityOf(directory.resolve(INDEX_FILE));
+        return found.size();
+    }
+
+    /**
+     * Reads the index of the sharded layout, if it is not read yet. A missing
+     * index is rebuilt from the directories.
+     *
+     * @return the registered student numbers.
+     */
+    private HashSet<String> loadIndex() {
+        if (index != null) {
+            return index;
+        }
+        index = new HashSet<>();
+        indexOffset = 0;
+        indexIdentity = null;
+        try {
+            if (Files.exists(directory.resolve(INDEX_FILE))) {
+                readNewIndexLines();
+            } else {
+                Files.createDirectories(directory);
+                rebuildIndex();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading user index: " + directory);
+            e.printStackTrace();
+        }
+        return index;
+    }
+
+    /**
+     * Reads the lines appended to the index file by other processes since
+     * the index was last read, if the file has changed.
+     */
+    private void refreshIndex() {
+        loadIndex();
+        if (FileStamp.of(directory.resolve(INDEX_FILE)).equals(indexStamp)) {
+            return;
+        }
+        try {
+            readNewIndexLines();
+        } catch (IOException e) {
+            System.err.println("Error reading user index: " + directory);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the complete lines of the index file after the part already
+     * read. If the file has been replaced, it has been rebuilt and is read
+     * from the start, whatever its length is.
+     *
+     * @throws IOException if the index can not be read.
+     */
+    private void readNewIndexLines() throws IOException {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        FileStamp stamp = FileStamp.of(indexFile);
+        // Read before opening, so a file replaced in between is read again from the start the next time
+        Object identity = identityOf(indexFile);
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (!identity.equals(indexIdentity) || channel.size() < indexOffset) {
+                index.clear();
+                indexOffset = 0;
+                indexIdentity = identity;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, channel.size() - indexOffset));
+            while (buffer.hasRemaining() && channel.read(buffer, indexOffset + buffer.position()) > 0) {
+                // Read until the end of the file
+            }
+            byte[] bytes = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < buffer.position(); i++) {
+                if (bytes[i] == '\n') {
+                    if (i > lineStart) {
+                        index.add(new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            // A line still being appended is read the next time
+            indexOffset += lineStart;
+        }
+        indexStamp = stamp;
+    }
+
+    /**
+     * Returns the identity of a file, which changes when the file is replaced
+     * with another file but not when it is appended to. The file key, such as
+     * the inode, is used where the file system has one, and the creation time
+     * elsewhere.
+     *
+     * @param file the file.
+     * @return the identity of the file.
+     * @throws IOException if the attributes of the file can not be read.
+     */
+    private static Object identityOf(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    }
+
+    /**
+     * Appends student numbers to the index file.
+     *
+     * @param studentNumbers the student numbers.
+     * @throws IOException if the index can not be written.
+     */
+    private void appendToIndex(List<String> studentNumbers) throws IOException {
+        if (studentNumbers.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String studentNumber : studentNumbers) {
+            lines.append(studentNumber).append('\n');
+        }
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve(INDEX_FILE), lines, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Returns the student number of a user file.
+     *
+     * @param file the file.
+     * @return the name of the file without the extension.
+     */
+    private static String studentNumberOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    /**
+     * Migrates the user files of the working directory to the sharded layout
+     * set with the system properties, or rebuilds its index. Usage:
+     * {@code migrate [directory]} or {@code rebuild-index}.
+     *
+     * @param args the command line arguments.
+     * @throws IOException if the files can not be moved or the index can not
+     * be written.
+     */
+    public static void main(String[] args) throws IOException {
+        UserFileLayout layout = sharded(Path.of(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY)));
+        if (args.length >= 1 && args[0].equals("migrate")) {
+            Path flatDirectory = Path.of(args.length > 1 ? args[1] : "");
+            System.out.println("Moved " + layout.migrate(flatDirectory) + " users to " + layout.directory);
+        } else if (args.length >= 1 && args[0].equals("rebuild-index")) {
+            System.out.println("Indexed " + layout.rebuildIndex() + " users in " + layout.directory);
+        } else {
+            System.err.println("Usage: UserFileLayout migrate [directory] | rebuild-index");
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package fi.sisu;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Class for writing the data of a user in JSON format. The data is streamed
+ * straight to the output with the getters of the user and its courses, so no
+ * reflection or intermediate JSON tree is needed. Files are replaced
+ * atomically, so a crash does not leave them half written. The output is
+ * pretty printed by default, and can be written compact to save space.
+ * <p>
+ * In the reference format only the id, groupId and completion of each course
+ * are written together with the version of the course catalog snapshot, and
+ * the rest of the course data is added to the shared snapshot instead. When
+ * the file is read, an older snapshot is read again before the courses.
+ */
+public class UserJsonWriter {
+
+    /**
+     * Name of the system property, which makes the user files compact when set
+     * to true.
+     */
+    public static final String COMPACT_PROPERTY = "sisu.compactJson";
+
+    /**
+     * Name of the system property, which makes the courses be written as
+     * references to the course catalog snapshot when set to "reference".
+     */
+    public static final String FORMAT_PROPERTY = "sisu.userFormat";
+
+    private static final String INDENT = "  ";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean compact;
+    private final CourseCatalogSnapshot catalog;
+
+    /**
+     * Constructs a new writer, which writes the full data of the courses.
+     *
+     * @param compact true if the output should be written without line breaks
+     * and indentation, false if it should be pretty printed.
+     */
+    public UserJsonWriter(boolean compact) {
+        this(compact, null);
+    }
+
+    /**
+     * Constructs a new writer.
+     *
+     * @param compact true if the output should be written without line breaks
+     * and indentation, false if it should be pretty printed.
+     * @param catalog the snapshot the courses are written to and referenced
+     * from, or null if the full data of the courses is written to the user.
+     */
+    public UserJsonWriter(boolean compact, CourseCatalogSnapshot catalog) {
+        this.compact = compact;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Constructs a writer using the format set with the COMPACT_PROPERTY and
+     * FORMAT_PROPERTY system properties, pretty printed with the full data of
+     * the courses by default.
+     *
+     * @return the writer.
+     */
+    public static UserJsonWriter fromSystemProperties() {
+        CourseCatalogSnapshot catalog = "reference".equals(System.getProperty(FORMAT_PROPERTY))
+                ? CourseCatalogSnapshot.getShared() : null;
+        return new UserJsonWriter(Boolean.getBoolean(COMPACT_PROPERTY), catalog);
+    }
+
+    /**
+     * Writes the data of the given user to the given file, replacing its
+     * content atomically.
+     *
+     * @param user the user to write.
+     * @param file the file to write to.
+     * @throws IOException if the file can not be written.
+     */
+    public void writeToFile(User user, Path file) throws IOException {
+        AtomicFileWriter.write(file, out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            write(user, writer);
+        });
+    }
+
+    /**
+     * Returns the data of the given user as UTF-8 encoded bytes.
+     *
+     * @param user the user to write.
+     * @return the data of the user.
+     * @throws IOException if the data can not be written.
+     */
+    public byte[] toBytes(User user) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(user, new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the data of the given user to the given writer. The writer is
+     * flushed but not closed. In the reference format, the courses missing
+     * from the snapshot are added to it first.
+     *
+     * @param user the user to write.
+     * @param writer the writer to write to.
+     * @throws IOException if the data can not be written.
+     */
+    public void write(User user, Writer writer) throws IOException {
+        int catalogVersion = catalog == null ? 0 : catalog.addAll(user.getCourses());
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        if (!compact) {
+            jsonWriter.setIndent(INDENT);
+        }
+        jsonWriter.beginObject();
+        jsonWriter.name("name").value(user.getName());
+        jsonWriter.name("studentNumber").value(user.getStudentNumber());
+        // A user without a degree programme has no degreeModule field
+        if (user.getDegreeModule() != null) {
+            jsonWriter.name("degreeModule").value(user.getDegreeModule());
+        }
+        if (catalog != null) {
+            jsonWriter.name("catalogVersion").value(catalogVersion);
+        }
+        jsonWriter.name("courses").beginArray();
+        for (CourseUnit course : user.getCourses()) {
+            if (catalog == null) {
+                writeFullCourse(course, jsonWriter);
+            } else {
+                writeCourseReference(course, jsonWriter);
+            }
+        }
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writes a single course of the user as a reference to the catalog.
+     *
+     * @param course the course to write.
+     * @param jsonWriter the writer to write to.
+     * @throws IOException if the course can not be written.
+     */
+    private static void writeCourseReference(CourseUnit course, JsonWriter jsonWriter) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("id").value(course.getId());
+        jsonWriter.name("groupId").value(course.getGroupId());
+        jsonWriter.name("completed").value(course.isCompleted());
+        jsonWriter.endObject();
+    }
+
+    /**
+     * Writes all the data of a single course.
+     *
+     * @param course the course to write.
+     * @param jsonWriter the writer to write to.
+     * @throws IOException if the course can not be written.
+     */
+    static void writeFullCourse(CourseUnit course, JsonWriter jsonWriter) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("courseName").value(course.getName());
+        jsonWriter.name("id").value(course.getId());
+        jsonWriter.name("groupId").value(course.getGroupId());
+        jsonWriter.name("minCredits").value(course.getMinCredits());
+        jsonWriter.name("code").value(course.getCode());
+        jsonWriter.name("description").value(course.getDescription());
+        jsonWriter.name("outcomes").value(course.getOutcomes());
+        jsonWriter.name("completed").value(course.isCompleted());
+        jsonWriter.endObject();
+    }
+}
@@ -1,25 +1,42 @@
 package fi.sisu;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Reader;
-import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A class for reading, writing, and manipulating user data stored in JSON format.
+ * A class for reading, writing, and manipulating user data. The user files are written in JSON format by
+ * default, and the format of a read file is detected from its first bytes with UserCodecs.
  */
 public class UserReaderWriter implements iReadAndWriteToFile {
 
+    // Format of the written user files, JSON unless another format is set with a system property
+    private static final UserCodec USER_CODEC = UserCodecs.fromSystemProperties();
+    // Writes the user files atomically. Writes waited for are written immediately, and delayed writes of the
+    // same file are combined, flushed before the file is read and replaced by direct writes
+    private static final WriteBehindScheduler WRITE_BEHIND = WriteBehindScheduler.fromSystemProperties();
+    /**
+     * Name of the system property selecting how the user files are stored: "json" (the default) rewrites the
+     * whole file on every save, "journal" appends only the changes with JournalUserStore, and "paged" keeps
+     * all users in the single file of PagedUserStore, using the student number of the file name as the key.
+     */
+    public static final String STORE_PROPERTY = "sisu.userStore";
+    private static final boolean JOURNAL_STORE = "journal".equals(System.getProperty(STORE_PROPERTY));
+    private static final boolean PAGED_STORE = "paged".equals(System.getProperty(STORE_PROPERTY));
+    // Stamp of each user file after the latest write made by this application
+    private static final ConcurrentHashMap<Path, FileStamp> OWN_WRITES = new ConcurrentHashMap<>();
+
+    static {
+        WRITE_BEHIND.setWriteListener(file -> recordOwnWrite(file.toString()));
+    }
+
     private final User user;
 
     /**
@@ -38,95 +55,48 @@ public class UserReaderWriter implements iReadAndWriteToFile {
      */
     @Override
     public boolean readFromFile(String fileName) throws Exception {
-        Gson gson = new Gson();
-        try (Reader reader = new FileReader(fileName)) {
-            JsonObject jsonObject = gson.fromJson(reader, JsonObject.class);
-            this.user.setName(jsonObject.get("name").getAsString());
-            this.user.setStudentNumber(jsonObject.get("studentNumber").getAsString());
-
-            JsonElement degreeModuleElement = jsonObject.get("degreeModule");
-            if (degreeModuleElement == null || degreeModuleElement instanceof JsonNull) {
-            } else {
-                this.user.setDegreeModule(jsonObject.get("degreeModule").getAsString());
-            }
-
-            // Read the courses
-            JsonArray coursesArray = jsonObject.getAsJsonArray("courses");
-            if (coursesArray != null) {
-                for (JsonElement courseElement : coursesArray) {
-                    JsonObject courseObject = courseElement.getAsJsonObject();
-                    String courseName = courseObject.get("courseName").getAsString();
-                    String courseId = courseObject.get("id").getAsString();
-                    String groupId = courseObject.get("groupId").getAsString();
-                    int minCredits = courseObject.get("minCredits").getAsInt();
-                    String code = courseObject.get("code").getAsString();
-                    String description = courseObject.get("description").getAsString();
-                    String outcomes = courseObject.get("outcomes").getAsString();
-                    boolean completed = courseObject.get("completed").getAsBoolean();
-
-                    CourseUnit course = new CourseUnit(courseName, courseId, groupId, minCredits, code, description, outcomes);
-                    course.setCompleted(completed);
-                    this.user.addCourse(course);
-                }
-
-            }
-            return true;
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found: " + fileName);
-            return false;
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + fileName);
-            e.printStackTrace();
+        flushPendingWrite(fileName);
+        if (JOURNAL_STORE) {
+            return new JournalUserStore(this.user).readFromFile(fileName);
+        }
+        User stored = PAGED_STORE ? readPagedUser(fileName) : readUserFile(fileName);
+        if (stored == null) {
             return false;
         }
+        this.user.setName(stored.getName());
+        this.user.setStudentNumber(stored.getStudentNumber());
+        this.user.setDegreeModule(stored.getDegreeModule());
+        for (CourseUnit course : stored.getCourses()) {
+            this.user.addCourse(course);
+        }
+        return true;
     }
 
     /**
-     * Writes user data to a file in JSON format.
+     * Writes user data to a file in the format selected with the UserCodecs.CODEC_PROPERTY system property.
      * @param fileName the name of the file to write to
      * @return true if the file was written successfully, false otherwise
      * @throws Exception if there was an error writing to the file
      */
     @Override
     public boolean writeToFile(String fileName) throws Exception {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        JsonObject jsonObject = new JsonObject();
-
-        // Make the 'name' field accessible
-        Field nameField = User.class.getDeclaredField("name");
-        nameField.setAccessible(true);
-        jsonObject.addProperty("name", (String) nameField.get(this.user));
-
-        // Make the 'studentNumber' field accessible
-        Field studentNumberField = User.class.getDeclaredField("studentNumber");
-        studentNumberField.setAccessible(true);
-        jsonObject.addProperty("studentNumber", (String) studentNumberField.get(this.user));
-
-        Field degreeModuleField = User.class.getDeclaredField("degreeModule");
-        degreeModuleField.setAccessible(true);
-        // Check if the value of 'degreeModule' is null
-        jsonObject.addProperty("degreeModule", (String) degreeModuleField.get(this.user));
-
-        //List<CourseUnit> coursesList = new ArrayList<>();
-        List<CourseUnit> userCourses = this.user.getCourses();
-        JsonArray coursesArray = new JsonArray();
-        for (CourseUnit course : userCourses) {
-            JsonObject courseObject = new JsonObject();
-            courseObject.addProperty("courseName", course.getName());
-            courseObject.addProperty("id", course.getId());
-            courseObject.addProperty("groupId", course.getGroupId());
-            courseObject.addProperty("minCredits", course.getMinCredits());
-            courseObject.addProperty("code", course.getCode());
-            courseObject.addProperty("description", course.getDescription());
-            courseObject.addProperty("outcomes", course.getOutcomes());
-            courseObject.addProperty("completed", course.isCompleted());
-            coursesArray.add(courseObject);
-        }
-        jsonObject.add("courses", coursesArray);
-
-        String json = gson.toJson(jsonObject);
-        try (FileWriter writer = new FileWriter(fileName)) {
-            writer.write(json);
+        try {
+            // Newer data is written now, so a delayed write of older data must not replace it
+            WRITE_BEHIND.cancel(Path.of(fileName));
+            if (!PAGED_STORE) {
+                prepareLayout(fileName);
+            }
+            if (JOURNAL_STORE) {
+                JournalUserStore.write(this.user, Path.of(fileName));
+            } else if (PAGED_STORE) {
+                PagedUserStore.getShared().put(studentNumberOf(fileName), this.user);
+            } else {
+                AtomicFileWriter.write(Path.of(fileName), USER_CODEC.encode(this.user));
+            }
+            recordOwnWrite(fileName);
+            if (!PAGED_STORE) {
+                registerWritten(fileName);
+            }
         } catch (IOException e) {
             System.err.println("Error writing to file: " + fileName);
             e.printStackTrace();
@@ -142,59 +112,241 @@ public class UserReaderWriter implements iReadAndWriteToFile {
      * @return a user object containing data read from the file
      */
     public User getUser(String fileName) {
-        Gson gson = new Gson();
-        try (Reader reader = new FileReader(fileName)) {
-            JsonObject jsonObject = gson.fromJson(reader, JsonObject.class);
-            String name = jsonObject.get("name").getAsString();
-            String studentNumber = jsonObject.get("studentNumber").getAsString();
-            User user = new User(name, studentNumber);
-
-            if (jsonObject.has("degreeModule") && !jsonObject.get("degreeModule").isJsonNull()) {
-                String degreeModule = jsonObject.get("degreeModule").getAsString();
-                user.setDegreeModule(degreeModule);
+        flushPendingWrite(fileName);
+        if (JOURNAL_STORE) {
+            return JournalUserStore.readUser(Path.of(fileName));
+        }
+        if (PAGED_STORE) {
+            return readPagedUser(fileName);
+        }
+        return readUserFile(fileName);
+    }
+
+    /**
+     * Checks whether a user file exists, without reading it.
+     * @param fileName the name of the user file
+     * @return true if the user is stored, otherwise false
+     */
+    public static boolean userExists(String fileName) {
+        if (PAGED_STORE) {
+            try {
+                return PagedUserStore.getShared().contains(studentNumberOf(fileName));
+            } catch (IOException e) {
+                System.err.println("Error reading user: " + fileName);
+                e.printStackTrace();
+                return false;
             }
+        }
+        return Files.exists(Path.of(fileName));
+    }
+
+    /**
+     * Returns the student numbers of the stored users. With the paged store the student numbers are taken from
+     * its index, otherwise from the given layout of the user files.
+     * @param layout the layout of the user files
+     * @return the student numbers
+     * @throws IOException if the directory or the store can not be read
+     */
+    public static List<String> listStudentNumbers(UserFileLayout layout) throws IOException {
+        if (PAGED_STORE) {
+            return PagedUserStore.getShared().studentNumbers();
+        }
+        return layout.studentNumbers();
+    }
+
+    /**
+     * Returns the name of the file of a user in the layout selected with the UserFileLayout.LAYOUT_PROPERTY
+     * system property.
+     * @param studentNumber the student number of the user
+     * @return the name of the user file
+     */
+    public static String fileNameOf(String studentNumber) {
+        return UserFileLayout.getShared().fileOf(studentNumber).toString();
+    }
+
+    /**
+     * Returns the files holding the data of a user, for watching them for changes made by others.
+     * @param studentNumber the student number of the user
+     * @return the user file and its journal, or nothing with the paged store, whose index is kept in memory
+     */
+    public static List<Path> filesOf(String studentNumber) {
+        if (PAGED_STORE) {
+            return List.of();
+        }
+        Path file = Path.of(fileNameOf(studentNumber));
+        return JOURNAL_STORE ? List.of(file, JournalUserStore.journalOf(file)) : List.of(file);
+    }
 
-            if (jsonObject.has("courses") && !jsonObject.get("courses").isJsonNull()) {
-                List<CourseUnit> coursesList = new ArrayList<>();
-                JsonArray coursesArray = jsonObject.getAsJsonArray("courses");
-                for (JsonElement courseElement : coursesArray) {
-                    JsonObject courseObject = courseElement.getAsJsonObject();
-                    String courseName = courseObject.get("courseName").getAsString();
-                    String courseId = courseObject.get("id").getAsString();
-                    String groupId = courseObject.get("groupId").getAsString();
-                    int minCredits = courseObject.get("minCredits").getAsInt();
-                    String code = courseObject.get("code").getAsString();
-                    String description = courseObject.get("description").getAsString();
-                    String outcomes = courseObject.get("outcomes").getAsString();
-                    boolean completed = courseObject.get("completed").getAsBoolean();
-                    
-
-                    CourseUnit c = new CourseUnit(courseName, courseId, groupId, minCredits, code, description, outcomes);
-                    c.setCompleted(completed);
-                    coursesList.add(c);
-                }
-                user.setCourses(coursesList);
+    /**
+     * Checks whether a user is registered. With the sharded layout only its index in memory is checked, and
+     * with the flat layout the file is looked up only if the RegisteredUserIndex does not rule the user out.
+     * @param studentNumber the student number of the user
+     * @return true if the user is stored, otherwise false
+     */
+    public static boolean isRegistered(String studentNumber) {
+        if (PAGED_STORE || UserFileLayout.getShared().isSharded()) {
+            return mightBeRegistered(studentNumber);
+        }
+        return mightBeRegistered(studentNumber) && UserFileLayout.getShared().isRegistered(studentNumber);
+    }
+
+    /**
+     * Checks in memory whether a user may be registered, for checks followed by reading the user file anyway.
+     * With the flat layout, a true answer may be wrong and is confirmed by the reading of the file.
+     * @param studentNumber the student number of the user
+     * @return false if the user is not stored, true if it may be
+     */
+    public static boolean mightBeRegistered(String studentNumber) {
+        if (PAGED_STORE) {
+            return userExists(studentNumber + ".json");
+        }
+        UserFileLayout layout = UserFileLayout.getShared();
+        if (layout.isSharded()) {
+            return layout.isRegistered(studentNumber);
+        }
+        return RegisteredUserIndex.getShared().mightBeRegistered(studentNumber);
+    }
+
+    /**
+     * Builds the index of the registered users, if the user files are stored in a way that needs it. Called when
+     * the application starts, so that the first login does not wait for it.
+     */
+    public static void buildRegisteredUserIndex() {
+        if (!PAGED_STORE && !UserFileLayout.getShared().isSharded()) {
+            RegisteredUserIndex.getShared();
+        }
+    }
+
+    /**
+     * Returns the name, the student number and the degree programme of a user, without reading its courses.
+     * @param fileName the name of the user file
+     * @return a user object without courses, or null if the file does not exist or can not be read
+     */
+    public static User readUserHeader(String fileName) {
+        flushPendingWrite(fileName);
+        if (JOURNAL_STORE) {
+            // The degree programme may have changed in the journal
+            User stored = JournalUserStore.readUser(Path.of(fileName));
+            if (stored == null) {
+                return null;
             }
-            return user;
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found: " + fileName);
+            User header = new User(stored.getName(), stored.getStudentNumber());
+            header.setDegreeModule(stored.getDegreeModule());
+            return header;
+        }
+        try {
+            if (PAGED_STORE) {
+                return PagedUserStore.getShared().getHeader(studentNumberOf(fileName));
+            }
+            return UserCodecs.decodeHeader(Files.readAllBytes(Path.of(fileName)));
+        } catch (NoSuchFileException e) {
             return null;
         } catch (IOException e) {
             System.err.println("Error reading file: " + fileName);
             e.printStackTrace();
+            return null;
+        }
+    }
 
+    /**
+     * Returns a user object read from the shared PagedUserStore.
+     * @param fileName the name of the user file, whose name without the extension is the student number
+     * @return the user, or null if it is not stored or can not be read
+     */
+    private static User readPagedUser(String fileName) {
+        try {
+            return PagedUserStore.getShared().get(studentNumberOf(fileName));
+        } catch (IOException e) {
+            System.err.println("Error reading user: " + fileName);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the student number of the given user file.
+     * @param fileName the name of the user file
+     * @return the name of the file without its directory and the .json extension
+     */
+    private static String studentNumberOf(String fileName) {
+        String name = Path.of(fileName).getFileName().toString();
+        return name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+    }
+
+    /**
+     * Returns a user object containing data read from a user file in any registered format, without the
+     * changes of a journal.
+     * @param fileName the name of the file to read from
+     * @return a user object containing data read from the file, or null if it can not be read
+     */
+    static User readUserFile(String fileName) {
+        try {
+            return UserCodecs.decode(Files.readAllBytes(Path.of(fileName)));
+        } catch (NoSuchFileException e) {
+            System.err.println("File not found: " + fileName);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + fileName);
+            e.printStackTrace();
         }
         return null;
     }
 
-    /**    
+    /**
+     * Creates a course of a user from its JSON object. A course written in the reference format has only its
+     * id, groupId and completion, and the rest of its data is taken from the loaded degree programmes or the
+     * course catalog snapshot. Files in the old format are read as they are, and are written in the reference
+     * format the next time the user is saved, if the format is enabled.
+     * @param courseObject the JSON object of the course
+     * @return the course with its completion set
+     */
+    static CourseUnit parseCourse(JsonObject courseObject) {
+        String courseId = courseObject.get("id").getAsString();
+        String groupId = courseObject.get("groupId").getAsString();
+        boolean completed = courseObject.get("completed").getAsBoolean();
+
+        CourseUnit course;
+        if (courseObject.has("courseName")) {
+            String courseName = courseObject.get("courseName").getAsString();
+            int minCredits = courseObject.get("minCredits").getAsInt();
+            String code = courseObject.get("code").getAsString();
+            String description = courseObject.get("description").getAsString();
+            String outcomes = courseObject.get("outcomes").getAsString();
+            course = new CourseUnit(courseName, courseId, groupId, minCredits, code, description, outcomes);
+        } else {
+            course = resolveCourse(courseId, groupId);
+        }
+        course.setCompleted(completed);
+        return course;
+    }
+
+    /**
+     * Returns a copy of a referenced course from the loaded degree programmes, or from the course catalog
+     * snapshot if it is not loaded.
+     * @param courseId the id of the course
+     * @param groupId the groupId of the course
+     * @return the copy of the course, or a placeholder with only the ids if it is not found
+     */
+    private static CourseUnit resolveCourse(String courseId, String groupId) {
+        BackgroundHandler backgroundHandler = Sisu.getBackgroundHandler();
+        CourseUnit catalogCourse = backgroundHandler == null ? null : backgroundHandler.getCourseUnitById(courseId);
+        if (catalogCourse == null) {
+            catalogCourse = CourseCatalogSnapshot.getShared().get(courseId);
+        }
+        if (catalogCourse == null) {
+            System.err.println("Course not found in the catalog: " + courseId);
+            return CourseUnit.placeholder(courseId, groupId);
+        }
+        return new CourseUnit(catalogCourse);
+    }
+
+    /**
      * Retrieves user data from a JSON file based on the provided student number.
      * @param studentNumber the student number of the user to retrieve data for
      * @return a User object containing the retrieved data
      */
     public static User getUserData(String studentNumber) {
         UserReaderWriter userReaderWriter = new UserReaderWriter(new User());
-        User user = userReaderWriter.getUser(studentNumber + ".json");
+        User user = userReaderWriter.getUser(fileNameOf(studentNumber));
         return user;
     }
 
@@ -206,17 +358,17 @@ public class UserReaderWriter implements iReadAndWriteToFile {
      * @return true if the degree module was successfully set and the user information was written to the file; false otherwise
      */
     public boolean setDegreeModuleToAUser(DegreeProgramme selectedProgramme, User user) {
+        String previousModule = user.getDegreeModule();
         user.setDegreeModule(selectedProgramme.getId());
         // Write new user information to  a file:
-        iReadAndWriteToFile registerWriter = new UserReaderWriter(user);
-
         try {
-            registerWriter.writeToFile(user.getStudentNumber() + ".json");
+            writeUser(user);
             System.out.println("Writing degreemodule was succesfully!");
 
         } catch (Exception e) {
             System.err.println("Error writing to file: " + e.getMessage());
             System.out.println();
+            user.setDegreeModule(previousModule);
             return false;
         }
         return true;
@@ -229,19 +381,176 @@ public class UserReaderWriter implements iReadAndWriteToFile {
      * @return true if the course was successfully added and the user information was written to the file; false otherwise
      */
     public boolean addCourseToUser(CourseUnit course, User user) {
+        List<CourseUnit> previousCourses = new ArrayList<>(user.getCourses());
         user.addCourse(course);
         // Write updated user information to a file:
-        iReadAndWriteToFile registerWriter = new UserReaderWriter(user);
-
         try {
-            registerWriter.writeToFile(user.getStudentNumber() + ".json");
+            writeUser(user);
             System.out.println("Adding course was successful!");
 
         } catch (Exception e) {
             System.err.println("Error writing to file: " + e.getMessage());
+            user.setCourses(previousCourses);
             return false;
         }
         return true;
     }
 
+    /**
+     * Replaces the courses of a User object with the given selection and writes the updated user information
+     * to a JSON file with a single write. The file is not written if nothing changed, and the courses of the
+     * user are restored if the data can not be written. This returns after the data is written.
+     * @param selectedCourses the selected courses in the order they are saved
+     * @param user the User object to update
+     * @return the report of the added, removed and completion toggled courses, or null if writing failed
+     */
+    public CourseChangeReport saveCourses(List<CourseUnit> selectedCourses, User user) {
+        List<CourseUnit> previousCourses = user.getCourses();
+        HashMap<String, CourseUnit> previousById = new HashMap<>();
+        for (CourseUnit course : previousCourses) {
+            previousById.put(course.getId(), course);
+        }
+
+        CourseChangeReport report = new CourseChangeReport();
+        List<CourseUnit> newCourses = new ArrayList<>(selectedCourses.size());
+        HashSet<String> newIds = new HashSet<>();
+        for (CourseUnit course : selectedCourses) {
+            if (!newIds.add(course.getId())) {
+                continue;
+            }
+            newCourses.add(course);
+            CourseUnit previous = previousById.get(course.getId());
+            if (previous == null) {
+                report.addAdded(course);
+            } else if (previous.isCompleted() != course.isCompleted()) {
+                report.addCompletionChanged(course);
+            }
+        }
+        for (CourseUnit course : previousCourses) {
+            if (!newIds.contains(course.getId())) {
+                report.addRemoved(course);
+            }
+        }
+        if (!report.hasChanges()) {
+            return report;
+        }
+
+        user.setCourses(newCourses);
+        try {
+            writeUser(user);
+            return report;
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+        user.setCourses(previousCourses);
+        return null;
+    }
+
+    /**
+     * Writes the data of the given user to its file. The callers wait for the result, so the data is written
+     * immediately, replacing a delayed write of the same file. With the journal store only the changes are
+     * appended, and with the paged store only the record of the user is written.
+     * @param user the user to write
+     * @throws IOException if the data can not be serialized or written
+     */
+    private static void writeUser(User user) throws IOException {
+        if (PAGED_STORE) {
+            PagedUserStore.getShared().put(user.getStudentNumber(), user);
+            return;
+        }
+        String fileName = fileNameOf(user.getStudentNumber());
+        prepareLayout(fileName);
+        if (JOURNAL_STORE) {
+            JournalUserStore.write(user, Path.of(fileName));
+            recordOwnWrite(fileName);
+        } else {
+            WRITE_BEHIND.writeNow(Path.of(fileName), USER_CODEC.encode(user));
+        }
+        registerWritten(fileName);
+    }
+
+    /**
+     * Creates the directories of a user file of the sharded layout. Does nothing for the flat layout and for
+     * files outside of the layout.
+     * @param fileName the name of the user file to be written
+     * @throws IOException if the directories can not be created
+     */
+    private static void prepareLayout(String fileName) throws IOException {
+        UserFileLayout layout = UserFileLayout.getShared();
+        if (!layout.isSharded()) {
+            return;
+        }
+        String studentNumber = studentNumberOf(fileName);
+        if (layout.fileOf(studentNumber).equals(Path.of(fileName))) {
+            layout.createDirectories(studentNumber);
+        }
+    }
+
+    /**
+     * Adds the user of a written file to the index of the sharded layout, or to the RegisteredUserIndex of the
+     * flat layout. Called only after the file is written, so that a failed write does not leave a registered
+     * user without a file. Does nothing for files outside of the layout.
+     * @param fileName the name of the written user file
+     * @throws IOException if the index of the sharded layout can not be written
+     */
+    private static void registerWritten(String fileName) throws IOException {
+        UserFileLayout layout = UserFileLayout.getShared();
+        if (!layout.isSharded()) {
+            RegisteredUserIndex.addIfBuilt(fileName);
+            return;
+        }
+        String studentNumber = studentNumberOf(fileName);
+        if (layout.fileOf(studentNumber).equals(Path.of(fileName))) {
+            layout.register(studentNumber);
+        }
+    }
+
+    /**
+     * Returns the stamp of a user file, read from the attributes of the file and its journal without reading
+     * the files.
+     * @param fileName the name of the user file
+     * @return the stamp of the file
+     */
+    public static FileStamp stampOf(String fileName) {
+        Path file = Path.of(fileName).toAbsolutePath();
+        return JOURNAL_STORE ? FileStamp.of(file, JournalUserStore.journalOf(file)) : FileStamp.of(file);
+    }
+
+    /**
+     * Checks whether the given stamp of a user file is the stamp of the latest write made by this application.
+     * @param fileName the name of the user file
+     * @param stamp the stamp of the file
+     * @return true if the file has not been changed by others since it was written, otherwise false
+     */
+    public static boolean isOwnWrite(String fileName, FileStamp stamp) {
+        return stamp.equals(OWN_WRITES.get(Path.of(fileName).toAbsolutePath()));
+    }
+
+    /**
+     * Records the stamp of a user file after this application wrote it.
+     * @param fileName the name of the written file
+     */
+    private static void recordOwnWrite(String fileName) {
+        OWN_WRITES.put(Path.of(fileName).toAbsolutePath(), stampOf(fileName));
+    }
+
+    /**
+     * Writes the delayed data of the given file before it is read.
+     * @param fileName the name of the file to be read
+     */
+    private static void flushPendingWrite(String fileName) {
+        try {
+            WRITE_BEHIND.flush(Path.of(fileName));
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + fileName);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes all delayed user data to the files. Called when the application is closed.
+     */
+    public static void flushPendingWrites() {
+        WRITE_BEHIND.close();
+    }
 }
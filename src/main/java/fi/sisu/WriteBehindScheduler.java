@@ -0,0 +1,321 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Class for delaying the writes of files, so that a burst of updates to the
+ * same file is written only once. The content of a scheduled write is replaced
+ * by the later writes to the same file until the write window has passed, and
+ * then the latest content is written atomically. A write that fails is kept
+ * waiting and tried again, and the failure is reported through the future of
+ * the scheduled write. Callers waiting for the result write immediately with
+ * writeNow instead, which replaces a waiting write of the same file. Pending
+ * writes are written when the scheduler is closed and when the application
+ * exits. The files are written outside of the lock of the scheduler, so only
+ * the writes of the same file wait for each other.
+ */
+public class WriteBehindScheduler {
+
+    /**
+     * Name of the system property for the length of the write window in
+     * milliseconds. With 0 the files are written immediately.
+     */
+    public static final String WINDOW_PROPERTY = "sisu.writeBehindMillis";
+    private static final long DEFAULT_WINDOW_MILLIS = 300;
+    // Delay before a failed write is tried again
+    private static final long RETRY_MILLIS = 5000;
+
+    private final long windowMillis;
+    // Latest content of each file waiting to be written
+    private final HashMap<Path, PendingWrite> pending = new HashMap<>();
+    private final ScheduledExecutorService executor;
+    private boolean closed;
+    private volatile Consumer<Path> writeListener;
+
+    /**
+     * The latest content of a file waiting to be written, and the futures of
+     * the writes combined to it. Its fields are guarded by the lock of the
+     * scheduler, and its own lock is held while the file is written.
+     */
+    private static final class PendingWrite {
+
+        private byte[] data;
+        private List<CompletableFuture<Void>> waiting = new ArrayList<>();
+        // Whether a write of the file is scheduled on the executor
+        private boolean scheduled;
+    }
+
+    /**
+     * Constructs a new scheduler.
+     *
+     * @param windowMillis the time in milliseconds the writes are delayed, 0
+     * to write the files immediately.
+     */
+    public WriteBehindScheduler(long windowMillis) {
+        this.windowMillis = windowMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Write the pending files also if the application exits without closing the scheduler
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushAll, "write-behind-exit"));
+    }
+
+    /**
+     * Constructs a scheduler using the write window set with the
+     * WINDOW_PROPERTY system property.
+     *
+     * @return the scheduler.
+     */
+    public static WriteBehindScheduler fromSystemProperties() {
+        return new WriteBehindScheduler(Long.getLong(WINDOW_PROPERTY, DEFAULT_WINDOW_MILLIS));
+    }
+
+    /**
+     * Sets the listener called with each file after it is written.
+     *
+     * @param writeListener the listener, or null for none.
+     */
+    public void setWriteListener(Consumer<Path> writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    /**
+     * Schedules the given content to be written to the given file. If a write
+     * of the file is already waiting, its content is replaced. A failed write
+     * is kept waiting and tried again, until it succeeds or newer content
+     * replaces it.
+     *
+     * @param file the file to write.
+     * @param data the new content of the file.
+     * @return the future completed when the content, or newer content of the
+     * file, is written, and completed with the error if that write fails.
+     * @throws IOException if the file is written immediately and the write
+     * fails.
+     */
+    public CompletableFuture<Void> schedule(Path file, byte[] data) throws IOException {
+        Path key = file.toAbsolutePath();
+        synchronized (this) {
+            if (windowMillis > 0 && !closed) {
+                PendingWrite write = pending.computeIfAbsent(key, k -> new PendingWrite());
+                write.data = data;
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                write.waiting.add(future);
+                if (!write.scheduled) {
+                    scheduleFlush(key, write, windowMillis);
+                }
+                return future;
+            }
+        }
+        writeNow(key, data);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Writes the given content to the given file now, for callers waiting for
+     * the write. A waiting write of the file is replaced by the content, so
+     * older content is never written after it. A failed write is not tried
+     * again, as the caller is told about the failure.
+     *
+     * @param file the file to write.
+     * @param data the new content of the file.
+     * @throws IOException if the file can not be written.
+     */
+    public void writeNow(Path file, byte[] data) throws IOException {
+        Path key = file.toAbsolutePath();
+        synchronized (this) {
+            pending.computeIfAbsent(key, k -> new PendingWrite()).data = data;
+        }
+        flush(key, false);
+    }
+
+    /**
+     * Drops the waiting write of the given file, for example when newer
+     * content is written to it directly. Waits for a write of the file that
+     * has already started, so that it does not replace the newer content. The
+     * futures of the dropped write are completed, as the newer content
+     * replaces it.
+     *
+     * @param file the file.
+     */
+    public void cancel(Path file) {
+        PendingWrite write;
+        List<CompletableFuture<Void>> dropped;
+        synchronized (this) {
+            write = pending.remove(file.toAbsolutePath());
+            if (write == null) {
+                return;
+            }
+            dropped = write.waiting;
+            write.waiting = new ArrayList<>();
+        }
+        // Waits for a write of the file that has already started
+        synchronized (write) {
+            dropped.forEach(future -> future.complete(null));
+        }
+    }
+
+    /**
+     * Writes the waiting content of the given file now. Called before the file
+     * is read, so that the latest content is read. The file is written without
+     * holding the lock of the scheduler, so the writes of different files do
+     * not wait for each other, while the writes of the same file are written
+     * one at a time.
+     *
+     * @param file the file.
+     * @throws IOException if the file can not be written. The content is kept
+     * waiting and tried again later.
+     */
+    public void flush(Path file) throws IOException {
+        flush(file.toAbsolutePath(), true);
+    }
+
+    /**
+     * Writes the waiting content of the given file now.
+     *
+     * @param key the absolute path of the file.
+     * @param retry true if a failed write is kept waiting and tried again,
+     * false if it is dropped.
+     * @throws IOException if the file can not be written.
+     */
+    private void flush(Path key, boolean retry) throws IOException {
+        PendingWrite write;
+        synchronized (this) {
+            write = pending.get(key);
+        }
+        if (write == null) {
+            return;
+        }
+        synchronized (write) {
+            byte[] data;
+            List<CompletableFuture<Void>> writing;
+            synchronized (this) {
+                // Written or cancelled while waiting for the previous write
+                if (pending.get(key) != write) {
+                    return;
+                }
+                data = write.data;
+                writing = write.waiting;
+                write.waiting = new ArrayList<>();
+            }
+            try {
+                write(key, data);
+            } catch (IOException e) {
+                writing.forEach(future -> future.completeExceptionally(e));
+                synchronized (this) {
+                    if (pending.get(key) != write) {
+                        throw e;
+                    }
+                    if (!retry && write.data == data) {
+                        pending.remove(key);
+                    } else if (!write.scheduled && !closed) {
+                        scheduleFlush(key, write, Math.max(windowMillis, RETRY_MILLIS));
+                    }
+                }
+                throw e;
+            }
+            synchronized (this) {
+                // The entry is removed only after the content is on the disk,
+                // and kept if newer content was scheduled meanwhile
+                if (pending.get(key) == write && write.data == data) {
+                    pending.remove(key);
+                }
+            }
+            writing.forEach(future -> future.complete(null));
+        }
+    }
+
+    /**
+     * Checks whether the given file has content waiting to be written.
+     *
+     * @param file the file.
+     * @return true if the file has a waiting write, otherwise false.
+     */
+    public synchronized boolean isPending(Path file) {
+        return pending.containsKey(file.toAbsolutePath());
+    }
+
+    /**
+     * Writes the given content to the given file and tells the listener.
+     *
+     * @param file the file.
+     * @param data the new content of the file.
+     * @throws IOException if the file can not be written.
+     */
+    private void write(Path file, byte[] data) throws IOException {
+        AtomicFileWriter.write(file, data);
+        Consumer<Path> listener = writeListener;
+        if (listener != null) {
+            listener.accept(file);
+        }
+    }
+
+    /**
+     * Schedules the waiting content of a file to be written after the given
+     * delay.
+     *
+     * @param file the file.
+     * @param write the waiting write of the file.
+     * @param delayMillis the delay in milliseconds.
+     */
+    private void scheduleFlush(Path file, PendingWrite write, long delayMillis) {
+        write.scheduled = true;
+        executor.schedule(() -> {
+            synchronized (this) {
+                write.scheduled = false;
+            }
+            flushLogged(file);
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the waiting content of all files now.
+     */
+    public void flushAll() {
+        List<Path> files;
+        synchronized (this) {
+            files = new ArrayList<>(pending.keySet());
+        }
+        for (Path file : files) {
+            flushLogged(file);
+        }
+    }
+
+    /**
+     * Writes the waiting files and stops the scheduler. Later writes are
+     * written immediately. The files that can not be written are not tried
+     * again.
+     */
+    public void close() {
+        flushAll();
+        synchronized (this) {
+            closed = true;
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Writes the waiting content of the given file, printing the error if the
+     * write fails.
+     *
+     * @param file the file.
+     */
+    private void flushLogged(Path file) {
+        try {
+            flush(file);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + file);
+            e.printStackTrace();
+        }
+    }
+}
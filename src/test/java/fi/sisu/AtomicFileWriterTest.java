@@ -0,0 +1,64 @@
+package fi.sisu;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * A JUnit test class for the AtomicFileWriter class.
+ */
+public class AtomicFileWriterTest {
+
+    /**
+     * Test that the file is replaced and no temporary files are left.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        Path folder = Files.createTempDirectory("atomic");
+        Path file = folder.resolve("1234.json");
+        AtomicFileWriter.write(file, "old".getBytes(StandardCharsets.UTF_8));
+        AtomicFileWriter.write(file, "new".getBytes(StandardCharsets.UTF_8));
+        assertEquals("new", Files.readString(file));
+        assertEquals(1, folder.toFile().list().length);
+    }
+
+    /**
+     * Test that a failed write keeps the old content of the file.
+     */
+    @Test
+    public void testFailedWriteKeepsOldContent() throws IOException {
+        Path folder = Files.createTempDirectory("atomic");
+        Path file = folder.resolve("1234.json");
+        AtomicFileWriter.write(file, "old".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> AtomicFileWriter.write(file, out -> {
+            out.write("half".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("crash");
+        }));
+        assertEquals("old", Files.readString(file));
+        File[] files = folder.toFile().listFiles();
+        assertEquals(1, files.length);
+    }
+
+    /**
+     * Test that the replaced file keeps its permissions.
+     */
+    @Test
+    public void testPermissionsAreKept() throws IOException {
+        Path folder = Files.createTempDirectory("atomic");
+        assumeTrue(folder.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path file = folder.resolve("1234.json");
+        AtomicFileWriter.write(file, "old".getBytes(StandardCharsets.UTF_8));
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(file, permissions);
+        AtomicFileWriter.write(file, "new".getBytes(StandardCharsets.UTF_8));
+        assertEquals(permissions, Files.getPosixFilePermissions(file));
+    }
+}
@@ -1,6 +1,8 @@
 package fi.sisu;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Random;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -88,4 +90,37 @@ public class AuthenticationTest {
         assertEquals("Opiskelijanumero on jo rekisteröity!", auth.getErrorCause());
     }
 
+    /**
+     * Test that the logged in user is served from memory, the saves are
+     * written through to the file, and the file is read again only after a
+     * change of it is reported.
+     */
+    @Test
+    public void testSessionUser() throws Exception {
+        String studentNumber = "12347";
+        assertTrue(new UserReaderWriter(new User("Jane Doe", studentNumber)).writeToFile(studentNumber + ".json"));
+        assertTrue(auth.login(studentNumber));
+
+        User user = auth.getCurrentlyLoggedInUser();
+        assertEquals("Jane Doe", user.getName());
+        CourseUnit math = new CourseUnit("Math", "MATH101", "Group A", 5, "MATH", "Calculus", "Calculus topics");
+        assertTrue(auth.saveCourses(List.of(math)).hasChanges());
+        // Changing the saved course does not change the session until it is saved again
+        math.setCompleted(true);
+        assertFalse(auth.getCurrentlyLoggedInUser().getCourses().get(0).isCompleted());
+        assertEquals(List.of(math), auth.saveCourses(List.of(math)).getCompletionChanged());
+
+        User fromFile = UserReaderWriter.getUserData(studentNumber);
+        assertTrue(fromFile.getCourses().get(0).isCompleted());
+        // Own saves do not make the session read the file again
+        auth.invalidateCurrentlyLoggedInUser();
+        assertEquals(1, auth.getCurrentlyLoggedInUser().getCourses().size());
+
+        // A change made by someone else is read after it is reported
+        User changed = new User("Jane Changed", studentNumber);
+        new UserJsonWriter(true).writeToFile(changed, Path.of(studentNumber + ".json"));
+        assertEquals("Jane Doe", auth.getCurrentlyLoggedInUser().getName());
+        auth.invalidateCurrentlyLoggedInUser();
+        assertEquals("Jane Changed", auth.getCurrentlyLoggedInUser().getName());
+    }
 }
@@ -30,6 +30,23 @@ class BackgroundHandlerTest {
         assertEquals("Tietojenkäsittelytieteiden kandidaattiohjelma", backgroundHandler.getDegreeProgrammeById("otm-1d25ee85-df98-4c03-b4ff-6cad7b09618b").getName());
     }
 
+    @Test
+    void testGetModulesContainingCourse() {
+        BackgroundHandler backgroundHandler = new BackgroundHandler();
+
+        DegreeProgramme dP = backgroundHandler.getDegreeProgrammeById("otm-91901c8b-e109-4cf8-b9c7-eaac16417268");
+        dP = backgroundHandler.getDataOfDegreeProgramme(dP);
+        CourseUnit cu = dP.getIndex().getCourseUnitsUnder(dP).get(0);
+
+        assertTrue(backgroundHandler.getDegreeProgrammesContaining(cu.getGroupId()).contains(dP));
+        List<StudyModule> sms = backgroundHandler.getStudyModulesContaining(cu.getGroupId());
+        assertFalse(sms.isEmpty());
+        for (StudyModule sm : sms) {
+            assertEquals(cu, sm.getCourseUnitById(cu.getId()));
+        }
+        assertTrue(backgroundHandler.getStudyModulesContaining("unknown").isEmpty());
+    }
+
     @Test
     void generalTestPrintOfAllDegreeProgrammes() {
         BackgroundHandler backgroundHandler = new BackgroundHandler();
@@ -64,7 +81,7 @@ class BackgroundHandlerTest {
 
         // Get one degree to look closer at:
         DegreeProgramme dP = backgroundHandler.getDegreeProgrammeById("otm-91901c8b-e109-4cf8-b9c7-eaac16417268");
-        backgroundHandler.getDataOfDegreeProgramme(dP);
+        dP = backgroundHandler.getDataOfDegreeProgramme(dP);
         List<StudyModule> sms = dP.getStudyModulesAsList();
 
         List<Arguments> argumentsList = new ArrayList<>();
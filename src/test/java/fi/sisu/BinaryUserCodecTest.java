@@ -0,0 +1,99 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the BinaryUserCodec class.
+ */
+public class BinaryUserCodecTest {
+
+    /**
+     * Creates a user with the given amount of courses, every third of them
+     * completed.
+     *
+     * @param courses the amount of courses.
+     * @return the user.
+     */
+    private User createUser(int courses) {
+        User user = new User("Äijä Öljynen", "5678");
+        user.setDegreeModule("otm-1");
+        for (int i = 0; i < courses; i++) {
+            CourseUnit course = new CourseUnit("Kurssi " + i, "cu" + i, "gcu" + i, 200 + i, "COMP." + i, "NULL", "NULL");
+            course.setCompleted(i % 3 == 0);
+            user.addCourse(course);
+        }
+        return user;
+    }
+
+    /**
+     * Test that a user is decoded as it was encoded, including the
+     * completion flags of more than eight courses.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        BinaryUserCodec codec = new BinaryUserCodec();
+        byte[] data = codec.encode(createUser(20));
+        assertTrue(codec.canDecode(data));
+
+        User user = codec.decode(data);
+        assertEquals("Äijä Öljynen", user.getName());
+        assertEquals("5678", user.getStudentNumber());
+        assertEquals("otm-1", user.getDegreeModule());
+        assertEquals(20, user.getCourses().size());
+        for (int i = 0; i < 20; i++) {
+            CourseUnit course = user.getCourses().get(i);
+            assertEquals("Kurssi " + i, course.getName());
+            assertEquals("gcu" + i, course.getGroupId());
+            assertEquals(200 + i, course.getMinCredits());
+            assertEquals(i % 3 == 0, course.isCompleted());
+        }
+    }
+
+    /**
+     * Test that only the header of the user is decoded.
+     */
+    @Test
+    public void testDecodeHeader() throws IOException {
+        User user = new BinaryUserCodec().decodeHeader(new BinaryUserCodec().encode(createUser(3)));
+        assertEquals("5678", user.getStudentNumber());
+        assertEquals("otm-1", user.getDegreeModule());
+        assertTrue(user.getCourses().isEmpty());
+    }
+
+    /**
+     * Test that a user without a degree programme and courses is decoded.
+     */
+    @Test
+    public void testEmptyUser() throws IOException {
+        BinaryUserCodec codec = new BinaryUserCodec();
+        User user = codec.decode(codec.encode(new User("John Doe", "1234")));
+        assertEquals("John Doe", user.getName());
+        assertNull(user.getDegreeModule());
+        assertTrue(user.getCourses().isEmpty());
+    }
+
+    /**
+     * Test that the binary data is smaller than the compact JSON.
+     */
+    @Test
+    public void testSmallerThanJson() throws IOException {
+        User user = createUser(20);
+        byte[] binary = new BinaryUserCodec().encode(user);
+        byte[] json = new JsonUserCodec(new UserJsonWriter(true)).encode(user);
+        assertTrue(binary.length * 2 < json.length);
+    }
+
+    /**
+     * Test that broken data is not decoded.
+     */
+    @Test
+    public void testBrokenData() throws IOException {
+        BinaryUserCodec codec = new BinaryUserCodec();
+        byte[] data = codec.encode(createUser(5));
+        assertThrows(IOException.class, () -> codec.decode(Arrays.copyOf(data, data.length - 3)));
+        assertFalse(codec.canDecode("{\"name\":\"John Doe\"}".getBytes()));
+    }
+}
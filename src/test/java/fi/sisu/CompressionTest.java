@@ -0,0 +1,38 @@
+package fi.sisu;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the Compression class.
+ */
+public class CompressionTest {
+
+    /**
+     * Test that compressed and plain data and streams are both read as the
+     * plain data.
+     */
+    @Test
+    public void testDecompress() throws IOException {
+        byte[] plain = "{\"name\": \"Äijä\"}".repeat(100).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = Compression.compress(plain);
+        assertTrue(Compression.isCompressed(compressed));
+        assertFalse(Compression.isCompressed(plain));
+        assertFalse(Compression.isCompressed(new byte[]{0x1F}));
+
+        assertArrayEquals(plain, Compression.decompress(compressed));
+        assertSame(plain, Compression.decompress(plain));
+        for (byte[] data : new byte[][]{plain, compressed}) {
+            try (InputStream in = Compression.decompress(new ByteArrayInputStream(data))) {
+                assertArrayEquals(plain, in.readAllBytes());
+            }
+        }
+        try (InputStream in = Compression.decompress(new ByteArrayInputStream(new byte[0]))) {
+            assertEquals(-1, in.read());
+        }
+    }
+}
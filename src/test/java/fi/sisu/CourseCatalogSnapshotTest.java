@@ -0,0 +1,102 @@
+package fi.sisu;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the CourseCatalogSnapshot class.
+ */
+public class CourseCatalogSnapshotTest {
+
+    /**
+     * Test that the version is increased only when new courses are added, and
+     * that the snapshot is read back from its file.
+     */
+    @Test
+    public void testAddAndReload() throws IOException {
+        Path file = Files.createTempFile("catalog", ".json");
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        CourseCatalogSnapshot snapshot = new CourseCatalogSnapshot(file);
+        assertEquals(0, snapshot.getVersion());
+
+        CourseUnit course1 = new CourseUnit("Ohjelmointi", "cu1", "gcu1", 5, "COMP.1", "<p>Kuvaus</p>", "NULL");
+        CourseUnit course2 = new CourseUnit("Äänitekniikka", "cu2", "gcu2", 3, "COMP.2", "NULL", "NULL");
+        course1.setCompleted(true);
+        assertEquals(1, snapshot.addAll(List.of(course1)));
+        assertEquals(1, snapshot.addAll(List.of(course1)));
+        assertEquals(2, snapshot.addAll(List.of(course1, course2)));
+        // The completion of a user is not stored in the snapshot
+        assertFalse(snapshot.get("cu1").isCompleted());
+
+        CourseCatalogSnapshot reloaded = new CourseCatalogSnapshot(file);
+        assertEquals(2, reloaded.getVersion());
+        assertEquals("Äänitekniikka", reloaded.get("cu2").getName());
+        assertEquals("Kuvaus", reloaded.get("cu1").getDescription());
+        assertNull(reloaded.get("cu3"));
+    }
+
+    /**
+     * Test that a missing file gives an empty snapshot.
+     */
+    @Test
+    public void testMissingFile() throws IOException {
+        File dir = Files.createTempDirectory("catalog").toFile();
+        dir.deleteOnExit();
+        CourseCatalogSnapshot snapshot = new CourseCatalogSnapshot(dir.toPath().resolve("missing.json"));
+        assertEquals(0, snapshot.getVersion());
+        assertNull(snapshot.get("cu1"));
+    }
+
+    /**
+     * Test that the courses added by another snapshot of the same file are
+     * kept, that a newer version is read when required, and that the
+     * placeholders of missing courses are not added.
+     */
+    @Test
+    public void testConcurrentSnapshots() throws IOException {
+        Path file = Files.createTempDirectory("catalog").resolve("catalog.json");
+        CourseCatalogSnapshot snapshot = new CourseCatalogSnapshot(file);
+        CourseCatalogSnapshot other = new CourseCatalogSnapshot(file);
+        assertEquals(0, other.getVersion());
+
+        assertEquals(1, snapshot.addAll(List.of(new CourseUnit("Ohjelmointi", "cu1", "gcu1", 5, "COMP.1", "NULL",
+                "NULL"))));
+        assertNull(other.get("cu1"));
+        other.requireVersion(1);
+        assertEquals("Ohjelmointi", other.get("cu1").getName());
+
+        assertEquals(2, snapshot.addAll(List.of(new CourseUnit("Äänitekniikka", "cu2", "gcu2", 3, "COMP.2",
+                "NULL", "NULL"))));
+        assertEquals(3, other.addAll(List.of(new CourseUnit("Fysiikka", "cu3", "gcu3", 5, "PHYS.1", "NULL", "NULL"),
+                CourseUnit.placeholder("cu4", "gcu4"))));
+        CourseCatalogSnapshot reloaded = new CourseCatalogSnapshot(file);
+        assertEquals(3, reloaded.getVersion());
+        assertNotNull(reloaded.get("cu1"));
+        assertNotNull(reloaded.get("cu2"));
+        assertNotNull(reloaded.get("cu3"));
+        assertNull(reloaded.get("cu4"));
+    }
+
+    /**
+     * Test that a broken file is not written over, and that adding works
+     * again after the file can be read.
+     */
+    @Test
+    public void testBrokenFileIsNotWritten() throws IOException {
+        Path file = Files.createTempDirectory("catalog").resolve("catalog.json");
+        Files.writeString(file, "{\"version\": 4, \"courses\": [");
+        CourseCatalogSnapshot snapshot = new CourseCatalogSnapshot(file);
+        CourseUnit course = new CourseUnit("Ohjelmointi", "cu1", "gcu1", 5, "COMP.1", "NULL", "NULL");
+        assertThrows(IOException.class, () -> snapshot.addAll(List.of(course)));
+        assertEquals("{\"version\": 4, \"courses\": [", Files.readString(file));
+
+        Files.writeString(file, "{\"version\": 4, \"courses\": []}");
+        assertEquals(5, snapshot.addAll(List.of(course)));
+    }
+}
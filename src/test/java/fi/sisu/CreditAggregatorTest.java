@@ -0,0 +1,94 @@
+package fi.sisu;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the CreditAggregator class.
+ */
+public class CreditAggregatorTest {
+
+    /**
+     * Test that selecting and completing courses updates the totals of all
+     * modules containing them.
+     */
+    @Test
+    public void testCreditTotals() {
+        DegreeProgramme dp = new DegreeProgramme("dp", "dp", "dp", 180, "DP", "NULL", "NULL");
+        StudyModule sm1 = new StudyModule("sm1", "sm1", "sm1", 30, "SM1", "NULL", "NULL");
+        StudyModule sm2 = new StudyModule("sm2", "sm2", "sm2", 30, "SM2", "NULL", "NULL");
+        StudyModule childSm = new StudyModule("child", "child", "child", 10, "C", "NULL", "NULL");
+        CourseUnit cu1 = new CourseUnit("cu1", "cu1", "cu1", 5, "CU1", "NULL", "NULL");
+        CourseUnit cu2 = new CourseUnit("cu2", "cu2", "cu2", 3, "CU2", "NULL", "NULL");
+        CourseUnit cu3 = new CourseUnit("cu3", "cu3", "cu3", 2, "CU3", "NULL", "NULL");
+        sm1.addChildStudyModule(childSm);
+        childSm.addCourseUnit(cu1);
+        sm1.addCourseUnit(cu2);
+        sm2.addCourseUnit(cu3);
+        sm2.addCourseUnit(cu1);
+        dp.addStudyModule(sm1);
+        dp.addStudyModule(sm2);
+
+        CreditAggregator aggregator = new CreditAggregator(dp.getIndex());
+        aggregator.setSelected(cu1, true);
+        aggregator.setSelected(cu1, true);
+        aggregator.setSelected(cu2, true);
+        assertEquals(5, aggregator.getSelectedCredits(childSm));
+        assertEquals(8, aggregator.getSelectedCredits(sm1));
+        assertEquals(5, aggregator.getSelectedCredits(sm2));
+        // The course in both sm1 and sm2 is counted once in the degree programme
+        assertEquals(8, aggregator.getSelectedCredits(dp));
+        assertEquals(0, aggregator.getCompletedCredits(dp));
+
+        aggregator.setCompleted(cu2, true);
+        assertEquals(3, aggregator.getCompletedCredits(sm1));
+        assertEquals(0, aggregator.getCompletedCredits(childSm));
+        assertEquals(3, aggregator.getCompletedCredits(dp));
+
+        aggregator.setSelected(cu1, false);
+        aggregator.setCompleted(cu2, false);
+        assertEquals(3, aggregator.getSelectedCredits(dp));
+        assertEquals(0, aggregator.getSelectedCredits(sm2));
+        assertEquals(0, aggregator.getCompletedCredits(sm1));
+    }
+
+    /**
+     * Test that a course in several sibling modules is counted once in each
+     * module containing it.
+     */
+    @Test
+    public void testSharedCourseCountedOnce() {
+        DegreeProgramme dp = new DegreeProgramme("dp", "dp", "dp", 180, "DP", "NULL", "NULL");
+        StudyModule parent = new StudyModule("parent", "parent", "parent", 60, "P", "NULL", "NULL");
+        StudyModule sm1 = new StudyModule("sm1", "sm1", "sm1", 30, "SM1", "NULL", "NULL");
+        StudyModule sm2 = new StudyModule("sm2", "sm2", "sm2", 30, "SM2", "NULL", "NULL");
+        StudyModule sm3 = new StudyModule("sm3", "sm3", "sm3", 30, "SM3", "NULL", "NULL");
+        CourseUnit shared = new CourseUnit("shared", "shared", "shared", 5, "S", "NULL", "NULL");
+        CourseUnit other = new CourseUnit("other", "other", "other", 2, "O", "NULL", "NULL");
+        sm1.addCourseUnit(shared);
+        sm2.addCourseUnit(shared);
+        sm2.addCourseUnit(other);
+        sm3.addCourseUnit(shared);
+        parent.addChildStudyModule(sm1);
+        parent.addChildStudyModule(sm2);
+        dp.addStudyModule(parent);
+        dp.addStudyModule(sm3);
+
+        CreditAggregator aggregator = new CreditAggregator(dp.getIndex());
+        aggregator.setSelected(shared, true);
+        aggregator.setSelected(other, true);
+        aggregator.setCompleted(shared, true);
+        assertEquals(5, aggregator.getSelectedCredits(sm1));
+        assertEquals(7, aggregator.getSelectedCredits(sm2));
+        assertEquals(7, aggregator.getSelectedCredits(parent));
+        assertEquals(5, aggregator.getSelectedCredits(sm3));
+        assertEquals(7, aggregator.getSelectedCredits(dp));
+        assertEquals(5, aggregator.getCompletedCredits(parent));
+        assertEquals(5, aggregator.getCompletedCredits(dp));
+
+        aggregator.setSelected(shared, false);
+        assertEquals(2, aggregator.getSelectedCredits(parent));
+        assertEquals(0, aggregator.getSelectedCredits(sm3));
+        assertEquals(2, aggregator.getSelectedCredits(dp));
+    }
+}
@@ -23,6 +23,20 @@ class DegreeProgrammeTest {
         assertEquals("sm3", sms.get(2).getName());
     }
 
+    @Test
+    void testGetStudyModulesAsListInFinnishOrder() {
+        DegreeProgramme dp = new DegreeProgramme("degreeprogramme", "123", "987", 120, "code1", "desc", "out");
+        dp.addStudyModule(new StudyModule("Öljytekniikka", "1", "1", 10, "code1", "NULL", "NULL"));
+        dp.addStudyModule(new StudyModule("Äidinkieli", "2", "2", 10, "code2", "NULL", "NULL"));
+        dp.addStudyModule(new StudyModule("Zoologia", "3", "3", 10, "code3", "NULL", "NULL"));
+        dp.addStudyModule(new StudyModule("Aineopinnot", "4", "4", 10, "code4", "NULL", "NULL"));
+        List<StudyModule> sms = dp.getStudyModulesAsList();
+        assertEquals("Aineopinnot", sms.get(0).getName());
+        assertEquals("Zoologia", sms.get(1).getName());
+        assertEquals("Äidinkieli", sms.get(2).getName());
+        assertEquals("Öljytekniikka", sms.get(3).getName());
+    }
+
     @Test
     void testStudyModuleById() {
         DegreeProgramme dp = new DegreeProgramme("degreeprogramme", "123", "987", 120, "code123", "desc", "out");
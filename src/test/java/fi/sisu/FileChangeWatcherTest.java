@@ -0,0 +1,106 @@
+package fi.sisu;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the FileChangeWatcher class.
+ */
+public class FileChangeWatcherTest {
+
+    /**
+     * Waits until the given counter reaches the given value.
+     *
+     * @param counter the counter.
+     * @param value the value.
+     * @return true if the value was reached in five seconds.
+     */
+    private boolean waitFor(AtomicInteger counter, int value) throws InterruptedException {
+        for (int i = 0; i < 500 && counter.get() < value; i++) {
+            Thread.sleep(10);
+        }
+        return counter.get() >= value;
+    }
+
+    /**
+     * Test that a burst of changes calls the listener of the file, but not
+     * once per change, and that other files of the directory are ignored.
+     */
+    @Test
+    public void testWatchCoalescesChanges() throws Exception {
+        Path directory = Files.createTempDirectory("watched");
+        Path file = directory.resolve("12345.json");
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger otherCalls = new AtomicInteger();
+        try (FileChangeWatcher watcher = new FileChangeWatcher(false, 50)) {
+            watcher.watch(file, calls::incrementAndGet);
+            watcher.watch(directory.resolve("other.json"), otherCalls::incrementAndGet);
+            for (int i = 0; i < 20; i++) {
+                Files.writeString(file, "{\"version\":" + i + "}");
+            }
+            assertTrue(waitFor(calls, 1));
+            Thread.sleep(300);
+            assertTrue(calls.get() < 20);
+            assertEquals(0, otherCalls.get());
+        }
+    }
+
+    /**
+     * Test that the polling notices changes, and that the listener is not
+     * called after it is removed.
+     */
+    @Test
+    public void testPolling() throws Exception {
+        Path directory = Files.createTempDirectory("polled");
+        Path file = directory.resolve("12345.json");
+        Files.writeString(file, "{}");
+        AtomicInteger calls = new AtomicInteger();
+        Runnable listener = calls::incrementAndGet;
+        try (FileChangeWatcher watcher = new FileChangeWatcher(true, 20)) {
+            watcher.watch(file, listener);
+            assertTrue(watcher.isPolled(file));
+            Files.writeString(file, "{\"name\":\"Äijä\"}");
+            assertTrue(waitFor(calls, 1));
+
+            watcher.unwatch(file, listener);
+            int before = calls.get();
+            Files.writeString(file, "{}");
+            Thread.sleep(200);
+            assertEquals(before, calls.get());
+        }
+    }
+
+    /**
+     * Test that the catalog snapshot is read again after another process
+     * changed its file, but not after its own write.
+     */
+    @Test
+    public void testCatalogInvalidation() throws Exception {
+        Path file = Files.createTempFile("catalog", ".json");
+        Files.delete(file);
+        CourseCatalogSnapshot snapshot = new CourseCatalogSnapshot(file);
+        CountDownLatch changed = new CountDownLatch(1);
+        try (FileChangeWatcher watcher = new FileChangeWatcher(true, 20)) {
+            watcher.watch(file, () -> {
+                snapshot.invalidate();
+                changed.countDown();
+            });
+            snapshot.addAll(List.of(new CourseUnit("Ohjelmointi", "cu1", "gcu1", 5, "COMP.1", "NULL", "NULL")));
+            snapshot.invalidate();
+            assertEquals(1, snapshot.getVersion());
+
+            // Another process writes a newer snapshot
+            CourseCatalogSnapshot other = new CourseCatalogSnapshot(file);
+            other.addAll(List.of(new CourseUnit("Äänitekniikka", "cu2", "gcu2", 3, "COMP.2", "NULL", "NULL")));
+            assertTrue(changed.await(5, TimeUnit.SECONDS));
+            assertEquals(2, snapshot.getVersion());
+            assertEquals("Äänitekniikka", snapshot.get("cu2").getName());
+        }
+    }
+}
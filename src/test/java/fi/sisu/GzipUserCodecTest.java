@@ -0,0 +1,73 @@
+package fi.sisu;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the GzipUserCodec class.
+ */
+public class GzipUserCodecTest {
+
+    /**
+     * Creates a user with the given amount of courses with descriptions.
+     *
+     * @param courses the amount of courses.
+     * @return the user.
+     */
+    private User createUser(int courses) {
+        User user = new User("Äijä Öljynen", "5678");
+        user.setDegreeModule("otm-1");
+        for (int i = 0; i < courses; i++) {
+            CourseUnit course = new CourseUnit("Ohjelmointi " + i, "cu" + i, "gcu" + i, 5, "COMP." + i,
+                    "Kurssilla opitaan ohjelmoinnin perusteet ja tehdään harjoitustyö.", "NULL");
+            course.setCompleted(i % 3 == 0);
+            user.addCourse(course);
+        }
+        return user;
+    }
+
+    /**
+     * Test that the compressed formats are found by their names, are smaller
+     * than the plain formats, and are read back by detecting the
+     * compression.
+     */
+    @Test
+    public void testEncodeDecode() throws IOException {
+        User user = createUser(50);
+        for (String name : new String[]{JsonUserCodec.NAME, BinaryUserCodec.NAME}) {
+            UserCodec codec = UserCodecs.forName(name + GzipUserCodec.SUFFIX);
+            byte[] compressed = codec.encode(user);
+            assertTrue(Compression.isCompressed(compressed));
+            assertTrue(compressed.length < UserCodecs.forName(name).encode(user).length);
+
+            User read = UserCodecs.decode(compressed);
+            assertEquals("Äijä Öljynen", read.getName());
+            assertEquals("otm-1", read.getDegreeModule());
+            assertEquals(50, read.getCourses().size());
+            assertTrue(read.getCourses().get(48).isCompleted());
+            assertEquals("Ohjelmointi 49", read.getCourses().get(49).getName());
+            User header = UserCodecs.decodeHeader(compressed);
+            assertEquals("5678", header.getStudentNumber());
+            assertTrue(header.getCourses().isEmpty());
+        }
+    }
+
+    /**
+     * Test that a compressed user file is read like a plain one, and that
+     * broken compressed data gives an IOException.
+     */
+    @Test
+    public void testReadFile() throws IOException {
+        File file = File.createTempFile("user", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new GzipUserCodec(UserCodecs.forName(JsonUserCodec.NAME)).encode(createUser(2)));
+        User read = new UserReaderWriter(new User()).getUser(file.getAbsolutePath());
+        assertEquals(2, read.getCourses().size());
+        assertEquals("Äijä Öljynen", UserReaderWriter.readUserHeader(file.getAbsolutePath()).getName());
+
+        assertThrows(IOException.class, () -> UserCodecs.decode(new byte[]{0x1F, (byte) 0x8B, 8, 0, 1, 2}));
+    }
+}
@@ -0,0 +1,103 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the JournalUserStore class.
+ */
+public class JournalUserStoreTest {
+
+    /**
+     * Test that changes are appended to the journal and replayed on read.
+     */
+    @Test
+    public void testJournalReplay() throws IOException {
+        Path file = Files.createTempDirectory("journal").resolve("1234.json");
+        Path journal = file.resolveSibling("1234.json.journal");
+        User user = new User("John Doe", "1234");
+        CourseUnit math = new CourseUnit("Math", "MATH101", "Group A", 5, "MATH", "Calculus", "NULL");
+        CourseUnit physics = new CourseUnit("Physics", "PHYS101", "Group B", 5, "PHYS", "NULL", "NULL");
+        user.addCourse(math);
+        JournalUserStore.write(user, file);
+        assertFalse(Files.exists(journal));
+
+        user.setDegreeModule("otm-1");
+        user.addCourse(physics);
+        math.setCompleted(true);
+        JournalUserStore.write(user, file);
+        assertEquals(3, Files.readAllLines(journal).size());
+        user.setCourses(List.of(physics));
+        JournalUserStore.write(user, file);
+        assertEquals(4, Files.readAllLines(journal).size());
+
+        // Read the files again as another instance of the application would
+        JournalUserStore.clearStates();
+        User read = new User();
+        assertTrue(new JournalUserStore(read).readFromFile(file.toString()));
+        assertEquals("1234", read.getStudentNumber());
+        assertEquals("otm-1", read.getDegreeModule());
+        assertEquals(1, read.getCourses().size());
+        assertEquals("PHYS101", read.getCourses().get(0).getId());
+    }
+
+    /**
+     * Test that compaction writes the replayed state as the snapshot and that
+     * an interrupted record at the end of the journal is ignored.
+     */
+    @Test
+    public void testCompactionAndInterruptedAppend() throws IOException {
+        Path file = Files.createTempDirectory("journal").resolve("5678.json");
+        Path journal = file.resolveSibling("5678.json.journal");
+        User user = new User("Jane Doe", "5678");
+        JournalUserStore.write(user, file);
+        CourseUnit math = new CourseUnit("Math", "MATH101", "Group A", 5, "MATH", "NULL", "NULL");
+        user.addCourse(math);
+        JournalUserStore.write(user, file);
+        Files.write(journal, "{\"op\":\"remove\",\"id\":\"MA".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        JournalUserStore.clearStates();
+        JournalUserStore.compact(file);
+        assertFalse(Files.exists(journal));
+        User snapshot = UserReaderWriter.readUserFile(file.toString());
+        assertEquals(1, snapshot.getCourses().size());
+        assertEquals("MATH101", JournalUserStore.readUser(file).getCourses().get(0).getId());
+    }
+
+    /**
+     * Test that an interrupted record is cut off before the next append, so
+     * the records written after a crash are read after a restart, and that
+     * records with missing fields are skipped.
+     */
+    @Test
+    public void testAppendAfterInterruptedRecord() throws IOException {
+        Path file = Files.createTempDirectory("journal").resolve("9012.json");
+        Path journal = file.resolveSibling("9012.json.journal");
+        User user = new User("Jane Doe", "9012");
+        JournalUserStore.write(user, file);
+        user.addCourse(new CourseUnit("Math", "MATH101", "Group A", 5, "MATH", "NULL", "NULL"));
+        JournalUserStore.write(user, file);
+        Files.write(journal, ("{\"op\":\"completed\"}\n{\"op\":\"add\",\"course\":{}}\n"
+                + "{\"op\":\"remove\",\"id\":\"MA").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // The application is started again after the crash
+        JournalUserStore.clearStates();
+        User read = JournalUserStore.readUser(file);
+        assertEquals(1, read.getCourses().size());
+        read.addCourse(new CourseUnit("Physics", "PHYS101", "Group B", 5, "PHYS", "NULL", "NULL"));
+        JournalUserStore.write(read, file);
+        assertTrue(Files.readString(journal).endsWith("}\n"));
+
+        JournalUserStore.clearStates();
+        List<CourseUnit> courses = JournalUserStore.readUser(file).getCourses();
+        assertEquals(2, courses.size());
+        assertEquals("PHYS101", courses.get(1).getId());
+    }
+}
@@ -0,0 +1,156 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the PagedUserStore class.
+ */
+public class PagedUserStoreTest {
+
+    /**
+     * Creates an empty file for a store.
+     *
+     * @return the path of the file.
+     */
+    private Path createFile() throws IOException {
+        Path file = Files.createTempFile("users", ".db");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Creates a user with the given amount of courses.
+     *
+     * @param studentNumber the student number of the user.
+     * @param courses the amount of courses.
+     * @return the user.
+     */
+    private User createUser(String studentNumber, int courses) {
+        User user = new User("Äijä " + studentNumber, studentNumber);
+        user.setDegreeModule("otm-1");
+        for (int i = 0; i < courses; i++) {
+            CourseUnit course = new CourseUnit("Kurssi " + i, "cu" + i, "gcu" + i, 5, "COMP." + i, "NULL", "NULL");
+            course.setCompleted(i % 2 == 0);
+            user.addCourse(course);
+        }
+        return user;
+    }
+
+    /**
+     * Test that users are stored, updated and removed, and that the data is
+     * found again after the store is reopened.
+     */
+    @Test
+    public void testPutGetRemove() throws IOException {
+        Path file = createFile();
+        try (PagedUserStore store = PagedUserStore.open(file)) {
+            assertNull(store.get("1"));
+            store.put("1", createUser("1", 2));
+            store.put("2", createUser("2", 0));
+            // Grows the user over several pages
+            store.put("1", createUser("1", 200));
+            store.put("3", createUser("3", 1));
+            assertTrue(store.remove("2"));
+            assertFalse(store.remove("2"));
+            assertEquals(2, store.size());
+        }
+
+        try (PagedUserStore store = PagedUserStore.open(file)) {
+            assertEquals(2, store.size());
+            assertFalse(store.contains("2"));
+            User user = store.get("1");
+            assertEquals("Äijä 1", user.getName());
+            assertEquals("otm-1", user.getDegreeModule());
+            assertEquals(200, user.getCourses().size());
+            assertTrue(user.getCourses().get(198).isCompleted());
+            assertEquals(1, store.get("3").getCourses().size());
+        }
+    }
+
+    /**
+     * Test that the freed pages are used again, so that updates do not grow
+     * the file.
+     */
+    @Test
+    public void testFreePagesAreReused() throws IOException {
+        Path file = createFile();
+        try (PagedUserStore store = PagedUserStore.open(file)) {
+            for (int i = 0; i < 10; i++) {
+                store.put(String.valueOf(i), createUser(String.valueOf(i), 3));
+            }
+            long size = Files.size(file);
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 10; i++) {
+                    store.put(String.valueOf(i), createUser(String.valueOf(i), 3));
+                }
+            }
+            assertTrue(Files.size(file) <= size + PagedUserStore.PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Test that the scan returns all users in the order of the file.
+     */
+    @Test
+    public void testIterator() throws IOException {
+        Path file = createFile();
+        try (PagedUserStore store = PagedUserStore.open(file)) {
+            for (int i = 0; i < 5; i++) {
+                store.put(String.valueOf(i), createUser(String.valueOf(i), 1));
+            }
+            List<String> studentNumbers = new ArrayList<>();
+            for (User user : store) {
+                studentNumbers.add(user.getStudentNumber());
+            }
+            assertEquals(List.of("0", "1", "2", "3", "4"), studentNumbers);
+        }
+    }
+
+    /**
+     * Test that a record whose writing did not finish is ignored, and that a
+     * file that is not a store is not opened.
+     */
+    @Test
+    public void testUnfinishedRecordAndWrongFile() throws IOException {
+        Path file = createFile();
+        try (PagedUserStore store = PagedUserStore.open(file)) {
+            store.put("1", createUser("1", 1));
+            store.put("2", createUser("2", 1));
+        }
+        // Marks the record of the second user as pending
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(2L * PagedUserStore.PAGE_SIZE);
+            raf.write(2);
+        }
+        try (PagedUserStore store = PagedUserStore.open(file)) {
+            assertTrue(store.contains("1"));
+            assertFalse(store.contains("2"));
+        }
+
+        Path other = createFile();
+        Files.writeString(other, "{\"name\":\"John Doe\"}");
+        assertThrows(IOException.class, () -> PagedUserStore.open(other));
+    }
+
+    /**
+     * Test that a store in use can not be opened again until it is closed.
+     */
+    @Test
+    public void testStoreInUseIsNotOpened() throws IOException {
+        Path file = createFile();
+        try (PagedUserStore store = PagedUserStore.open(file)) {
+            store.put("1", createUser("1", 1));
+            assertThrows(IOException.class, () -> PagedUserStore.open(file));
+        }
+        try (PagedUserStore store = PagedUserStore.open(file)) {
+            assertEquals(1, store.size());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the PersistenceService class.
+ */
+public class PersistenceServiceTest {
+
+    /**
+     * Test that the tasks of the same user are run in the order they were
+     * submitted, also when an earlier task is slow or fails, and that the
+     * tasks of another user do not wait for them.
+     */
+    @Test
+    public void testTasksOfUserAreOrdered() throws Exception {
+        try (PersistenceService service = new PersistenceService(4, Runnable::run)) {
+            List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Integer> first = service.submit("1", () -> {
+                release.await(5, TimeUnit.SECONDS);
+                order.add(0);
+                return 0;
+            });
+            CompletableFuture<Integer> failing = service.submit("1", () -> {
+                order.add(1);
+                throw new IOException("Disk full");
+            });
+            List<CompletableFuture<Integer>> later = new ArrayList<>();
+            for (int i = 2; i < 20; i++) {
+                int value = i;
+                later.add(service.submit("1", () -> {
+                    order.add(value);
+                    return value;
+                }));
+            }
+            // Another user is not blocked by the slow task
+            assertEquals("done", service.submit("2", () -> "done").get(5, TimeUnit.SECONDS));
+            assertTrue(order.isEmpty());
+
+            release.countDown();
+            for (CompletableFuture<Integer> future : later) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(0, first.get());
+            ExecutionException e = assertThrows(ExecutionException.class, failing::get);
+            assertTrue(e.getCause() instanceof IOException);
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, order.get(i));
+            }
+        }
+    }
+
+    /**
+     * Test that the callbacks are given the result or the failure, and that
+     * the tasks are rejected after the service is closed.
+     */
+    @Test
+    public void testCallbacksAndClose() throws Exception {
+        PersistenceService service = new PersistenceService(1, Runnable::run);
+        AtomicReference<String> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(2);
+        service.submit("1", () -> "saved",
+                value -> {
+                    result.set(value);
+                    done.countDown();
+                },
+                error -> done.countDown());
+        service.submit("1", () -> {
+            throw new IOException("Disk full");
+        },
+                value -> done.countDown(),
+                error -> {
+                    failure.set(error);
+                    done.countDown();
+                });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("saved", result.get());
+        assertTrue(failure.get() instanceof IOException);
+
+        CompletableFuture<String> pending = service.submit("2", () -> {
+            Thread.sleep(50);
+            return "written";
+        });
+        service.close();
+        // The submitted task is finished before the service is closed
+        assertTrue(pending.isDone());
+        assertEquals("written", pending.get());
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> service.submit("1", () -> "late").get());
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+}
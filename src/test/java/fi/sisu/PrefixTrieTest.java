@@ -0,0 +1,46 @@
+package fi.sisu;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the PrefixTrie class.
+ */
+public class PrefixTrieTest {
+
+    /**
+     * Test that the values are found by the start of any word of their texts,
+     * ignoring the case and diacritics.
+     */
+    @Test
+    public void testFind() {
+        PrefixTrie<String> trie = new PrefixTrie<>();
+        trie.add("Tietojenkäsittelytieteiden kandidaattiohjelma", "dp1");
+        trie.add("Tietotekniikan DI-ohjelma", "dp2");
+        trie.add("Äidinkielen opettajan koulutus", "dp3");
+        trie.add("KAND-TIE", "dp1");
+        trie.addWord(SearchIndex.foldCode("KAND-TIE"), "dp1");
+
+        assertEquals(Set.of("dp1", "dp2"), trie.find("tieto"));
+        assertEquals(Set.of("dp1"), trie.find("tietojen"));
+        assertEquals(Set.of("dp3"), trie.find("aidin"));
+        assertEquals(Set.of("dp2"), trie.find("TIETO di"));
+        assertEquals(Set.of("dp1"), trie.find("kandt"));
+        assertEquals(Set.of("dp1"), trie.find("kand-tie"));
+        assertTrue(trie.find("fysiikka").isEmpty());
+        assertTrue(trie.find(" ").isEmpty());
+    }
+
+    /**
+     * Test that adding the same word and value twice stores it once.
+     */
+    @Test
+    public void testDuplicates() {
+        PrefixTrie<String> trie = new PrefixTrie<>();
+        trie.add("Ohjelmointi ohjelmointi", "cu1");
+        trie.addWord("ohjelmointi", "cu1");
+        assertEquals(1, trie.size());
+        assertEquals(Set.of("cu1"), trie.find("ohj"));
+    }
+}
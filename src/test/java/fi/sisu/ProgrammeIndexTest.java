@@ -0,0 +1,93 @@
+package fi.sisu;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the ProgrammeIndex class.
+ */
+public class ProgrammeIndexTest {
+
+    private DegreeProgramme dp;
+    private StudyModule sm1;
+    private StudyModule sm2;
+    private StudyModule childSm;
+    private CourseUnit cu1;
+    private CourseUnit cu2;
+    private CourseUnit cu3;
+
+    /**
+     * Sets up a degree programme with two study modules, one of which has a
+     * child study module. The course cu1 is in two study modules.
+     */
+    @BeforeEach
+    public void setUp() {
+        dp = new DegreeProgramme("dp", "dp", "dp", 180, "DP", "NULL", "NULL");
+        sm1 = new StudyModule("sm1", "sm1", "sm1", 30, "SM1", "NULL", "NULL");
+        sm2 = new StudyModule("sm2", "sm2", "sm2", 30, "SM2", "NULL", "NULL");
+        childSm = new StudyModule("child", "child", "child", 10, "C", "NULL", "NULL");
+        cu1 = new CourseUnit("cu1", "cu1", "cu1", 5, "CU1", "NULL", "NULL");
+        cu2 = new CourseUnit("cu2", "cu2", "cu2", 5, "CU2", "NULL", "NULL");
+        cu3 = new CourseUnit("cu3", "cu3", "cu3", 5, "CU3", "NULL", "NULL");
+
+        sm1.addCourseUnit(cu1);
+        sm1.addChildStudyModule(childSm);
+        childSm.addCourseUnit(cu2);
+        sm2.addCourseUnit(cu3);
+        sm2.addCourseUnit(cu1);
+        dp.addStudyModule(sm2);
+        dp.addStudyModule(sm1);
+    }
+
+    /**
+     * Test that the modules are indexed in pre-order with their parents.
+     */
+    @Test
+    public void testPreOrderLayout() {
+        ProgrammeIndex index = dp.getIndex();
+        assertSame(index, dp.getIndex());
+        assertEquals(8, index.size());
+        assertEquals(0, index.getPosition("dp"));
+        assertEquals(1, index.getPosition("sm1"));
+        assertEquals(2, index.getPosition("cu1"));
+        assertEquals(3, index.getPosition("child"));
+        assertEquals(5, index.getPosition("sm2"));
+        assertEquals(-1, index.getPosition("unknown"));
+        assertArrayEquals(new int[]{2, 6}, index.getPositions("cu1"));
+
+        assertEquals(-1, index.getParent(0));
+        assertEquals(3, index.getParent(index.getPosition("cu2")));
+        assertEquals(5, index.getSubtreeEnd(1));
+        assertEquals(8, index.getSubtreeEnd(0));
+    }
+
+    /**
+     * Test the ancestor checks of the index.
+     */
+    @Test
+    public void testIsAncestor() {
+        ProgrammeIndex index = dp.getIndex();
+        assertTrue(index.isAncestor(dp, cu2));
+        assertTrue(index.isAncestor(sm1, cu2));
+        assertTrue(index.isAncestor(sm2, cu1));
+        assertFalse(index.isAncestor(sm2, cu2));
+        assertFalse(index.isAncestor(cu2, sm1));
+        assertFalse(index.isAncestor(sm1, sm1));
+    }
+
+    /**
+     * Test that all courses under a module are returned as a slice.
+     */
+    @Test
+    public void testGetCourseUnitsUnder() {
+        ProgrammeIndex index = dp.getIndex();
+        assertEquals(List.of(cu1, cu2, cu1, cu3), index.getCourseUnitsUnder(dp));
+        assertEquals(List.of(cu1, cu2), index.getCourseUnitsUnder(sm1));
+        assertEquals(List.of(cu2), index.getCourseUnitsUnder(childSm));
+        assertEquals(List.of(cu1, cu3), index.getCourseUnitsUnder(sm2));
+        assertEquals(List.of(cu3), index.getCourseUnitsUnder(cu3));
+        assertThrows(UnsupportedOperationException.class, () -> index.getCourseUnitsUnder(dp).clear());
+    }
+}
@@ -0,0 +1,87 @@
+package fi.sisu;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the RegisteredUserIndex class.
+ */
+public class RegisteredUserIndexTest {
+
+    /**
+     * Test that all registered students are maybe registered, and that few
+     * of the unregistered ones are.
+     */
+    @Test
+    public void testNoFalseNegatives() throws Exception {
+        Path directory = Files.createTempDirectory("users");
+        for (int i = 0; i < 200; i++) {
+            Files.writeString(directory.resolve((100000 + i) + ".json"), "{}");
+        }
+        RegisteredUserIndex index = new RegisteredUserIndex(UserFileLayout.flat(directory));
+        for (int i = 0; i < 200; i++) {
+            assertTrue(index.mightBeRegistered(String.valueOf(100000 + i)));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (index.mightBeRegistered(String.valueOf(200000 + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "False positives: " + falsePositives);
+    }
+
+    /**
+     * Test that the students registered by this application and by others
+     * after the index was built are found, also when the index grows past
+     * its size.
+     */
+    @Test
+    public void testAddedAfterBuild() throws Exception {
+        Path directory = Files.createTempDirectory("users");
+        RegisteredUserIndex index = new RegisteredUserIndex(UserFileLayout.flat(directory));
+        assertFalse(index.mightBeRegistered("12345"));
+
+        // Another process writes a user file
+        Files.writeString(directory.resolve("12345.json"), "{}");
+        assertTrue(index.mightBeRegistered("12345"));
+        assertFalse(index.mightBeRegistered("54321"));
+
+
+        for (int i = 0; i < 5000; i++) {
+            index.add(String.valueOf(300000 + i));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(index.mightBeRegistered(String.valueOf(300000 + i)));
+        }
+        assertTrue(index.mightBeRegistered("12345"));
+    }
+
+    /**
+     * Test that the writes of this application are not taken for changes by
+     * others, and that the users registered by others after them are still
+     * found.
+     */
+    @Test
+    public void testOwnWrites() throws Exception {
+        Path directory = Files.createTempDirectory("users");
+        RegisteredUserIndex index = new RegisteredUserIndex(UserFileLayout.flat(directory));
+
+        // This application saves a user through a temporary file
+        Files.writeString(directory.resolve("12345.json.tmp"), "{}");
+        Files.move(directory.resolve("12345.json.tmp"), directory.resolve("12345.json"),
+                StandardCopyOption.REPLACE_EXISTING);
+        index.addWritten("12345");
+        assertTrue(index.mightBeRegistered("12345"));
+        assertFalse(index.mightBeRegistered("54321"));
+
+        // Another process writes a user file later
+        Thread.sleep(10);
+        Files.writeString(directory.resolve("54321.json"), "{}");
+        assertTrue(index.mightBeRegistered("54321"));
+        assertFalse(index.mightBeRegistered("67890"));
+    }
+}
@@ -0,0 +1,136 @@
+package fi.sisu;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the RequirementEvaluator class.
+ */
+public class RequirementEvaluatorTest {
+
+    private DegreeProgramme dp;
+    private StudyModule basics;
+    private StudyModule optional;
+    private CourseUnit cu1;
+    private CourseUnit cu2;
+    private CourseUnit cu3;
+    private CourseUnit cu4;
+
+    /**
+     * Sets up a degree programme of 10 credits. The basic studies require
+     * both of their courses, and one of the two optional courses must be
+     * chosen.
+     */
+    @BeforeEach
+    public void setUp() {
+        dp = new DegreeProgramme("dp", "dp", "gdp", 10, "DP", "NULL", "NULL");
+        basics = new StudyModule("basics", "sm1", "gsm1", 5, "SM1", "NULL", "NULL");
+        optional = new StudyModule("optional", "sm2", "gsm2", 3, "SM2", "NULL", "NULL");
+        cu1 = new CourseUnit("cu1", "cu1", "gcu1", 3, "CU1", "NULL", "NULL");
+        cu2 = new CourseUnit("cu2", "cu2", "gcu2", 2, "CU2", "NULL", "NULL");
+        cu3 = new CourseUnit("cu3", "cu3", "gcu3", 5, "CU3", "NULL", "NULL");
+        cu4 = new CourseUnit("cu4", "cu4", "gcu4", 3, "CU4", "NULL", "NULL");
+        basics.addCourseUnit(cu1);
+        basics.addCourseUnit(cu2);
+        optional.addCourseUnit(cu3);
+        optional.addCourseUnit(cu4);
+        dp.addStudyModule(basics);
+        dp.addStudyModule(optional);
+
+        basics.setRule(new CompositeRule(0, CompositeRule.NO_MAX, true,
+                List.of(new CourseUnitRule("gcu1"), new CourseUnitRule("gcu2"))));
+        optional.setRule(new CompositeRule(1, 1, false,
+                List.of(new CourseUnitRule("gcu3"), new CourseUnitRule("gcu4"))));
+        dp.setRule(new CreditsRule(10, CompositeRule.NO_MAX, new CompositeRule(0, CompositeRule.NO_MAX, true,
+                List.of(new ModuleRule("gsm1"), new ModuleRule("gsm2")))));
+    }
+
+    /**
+     * Test that the mandatory, optional and credit requirements are checked.
+     */
+    @Test
+    public void testEvaluate() {
+        RequirementEvaluator evaluator = new RequirementEvaluator(dp);
+        assertFalse(evaluator.isSelectionSatisfied());
+
+        evaluator.setSelected(cu1, true);
+        assertFalse(evaluator.evaluate(basics, false).isSatisfied());
+        evaluator.setSelected(cu2, true);
+        assertTrue(evaluator.evaluate(basics, false).isSatisfied());
+        assertEquals(5, evaluator.evaluate(basics, false).getCredits());
+
+        evaluator.setSelected(cu4, true);
+        assertTrue(evaluator.evaluate(optional, false).isSatisfied());
+        // All modules are fulfilled, but there are only 8 credits
+        assertFalse(evaluator.isSelectionSatisfied());
+        assertEquals(8, evaluator.evaluate(dp, false).getCredits());
+
+        evaluator.setSelected(cu3, true);
+        // Only one optional course is allowed
+        assertFalse(evaluator.evaluate(optional, false).isSatisfied());
+        evaluator.setSelected(cu4, false);
+        assertTrue(evaluator.isSelectionSatisfied());
+        assertEquals(10, evaluator.evaluate(dp, false).getCredits());
+    }
+
+    /**
+     * Test that only the completed courses are counted for graduation.
+     */
+    @Test
+    public void testGraduation() {
+        RequirementEvaluator evaluator = new RequirementEvaluator(dp);
+        for (CourseUnit courseUnit : List.of(cu1, cu2, cu3)) {
+            evaluator.setSelected(courseUnit, true);
+        }
+        assertTrue(evaluator.isSelectionSatisfied());
+        assertFalse(evaluator.isGraduationSatisfied());
+
+        evaluator.setCompleted(cu1, true);
+        evaluator.setCompleted(cu2, true);
+        assertTrue(evaluator.evaluate(basics, true).isSatisfied());
+        assertFalse(evaluator.isGraduationSatisfied());
+        evaluator.setCompleted(cu3, true);
+        assertTrue(evaluator.isGraduationSatisfied());
+        evaluator.setCompleted(cu1, false);
+        assertFalse(evaluator.isGraduationSatisfied());
+    }
+
+    /**
+     * Test that a module without a rule requires its minimum credits from any
+     * of its content.
+     */
+    @Test
+    public void testModuleWithoutRule() {
+        optional.setRule(null);
+        RequirementEvaluator evaluator = new RequirementEvaluator(dp);
+        evaluator.setSelected(cu4, true);
+        assertTrue(evaluator.evaluate(optional, false).isSatisfied());
+        assertFalse(evaluator.evaluate(new StudyModule("x", "x", "x", 0, "X", "NULL", "NULL"), false).isSatisfied());
+    }
+
+    /**
+     * Test that a study module under two modules counts under both of them
+     * and clears the results of both when its courses change.
+     */
+    @Test
+    public void testSharedModule() {
+        StudyModule extra = new StudyModule("extra", "sm3", "gsm3", 0, "SM3", "NULL", "NULL");
+        extra.addChildStudyModule(basics);
+        extra.setRule(new ModuleRule("gsm1"));
+        dp.addStudyModule(extra);
+        dp.setRule(new CompositeRule(0, CompositeRule.NO_MAX, true,
+                List.of(new ModuleRule("gsm1"), new ModuleRule("gsm2"), new ModuleRule("gsm3"))));
+        RequirementEvaluator evaluator = new RequirementEvaluator(dp);
+
+        evaluator.setSelected(cu1, true);
+        evaluator.setSelected(cu2, true);
+        assertTrue(evaluator.evaluate(extra, false).isSatisfied());
+        assertEquals(5, evaluator.evaluate(extra, false).getCredits());
+
+        evaluator.setSelected(cu1, false);
+        assertFalse(evaluator.evaluate(extra, false).isSatisfied());
+        assertFalse(evaluator.evaluate(basics, false).isSatisfied());
+    }
+}
@@ -0,0 +1,93 @@
+package fi.sisu;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the SearchIndex class.
+ */
+public class SearchIndexTest {
+
+    private SearchIndex searchIndex;
+    private StudyModule languages;
+    private CourseUnit finnish;
+    private CourseUnit programming;
+    private CourseUnit databases;
+
+    /**
+     * Sets up an index with a study module and three courses.
+     */
+    @BeforeEach
+    public void setUp() {
+        searchIndex = new SearchIndex();
+        languages = new StudyModule("Kieli- ja viestintäopinnot", "sm1", "sm1", 10, "KIVI", "NULL", "NULL");
+        finnish = new CourseUnit("Äidinkieli ja viestintä", "cu1", "cu1", 3, "KIE.100", "NULL", "NULL");
+        programming = new CourseUnit("Ohjelmointi 1", "cu2", "cu2", 5, "COMP.CS.100",
+                "<p>Kurssilla opitaan ohjelmoinnin perusteet.</p>", "NULL");
+        databases = new CourseUnit("Tietokannat", "cu3", "cu3", 5, "COMP.CS.300", "NULL",
+                "<p>Opiskelija osaa suunnitella tietokannan ja ohjelmoida kyselyitä.</p>");
+        searchIndex.add(languages);
+        searchIndex.add(finnish);
+        searchIndex.add(programming);
+        searchIndex.add(databases);
+    }
+
+    /**
+     * Test that the search ignores the case and diacritics of the texts.
+     */
+    @Test
+    public void testFolding() {
+        assertEquals(List.of(finnish), searchIndex.search("aidinkieli", 10));
+        assertEquals(List.of(finnish), searchIndex.search("ÄIDINKIELI", 10));
+        assertEquals(List.of(languages, finnish), searchIndex.search("viestin", 10));
+    }
+
+    /**
+     * Test that the codes can be searched whole or by their parts.
+     */
+    @Test
+    public void testCodes() {
+        assertEquals(List.of(programming), searchIndex.search("comp.cs.100", 10));
+        assertEquals(List.of(programming), searchIndex.search("compcs100", 10));
+        assertEquals(List.of(programming, databases), searchIndex.search("comp.cs", 10));
+    }
+
+    /**
+     * Test that all query terms must match and matches in names rank above
+     * matches in descriptions.
+     */
+    @Test
+    public void testRanking() {
+        assertEquals(List.of(programming, databases), searchIndex.search("ohjelmo", 10));
+        assertEquals(List.of(databases), searchIndex.search("ohjelmo tieto", 10));
+        assertEquals(List.of(programming), searchIndex.search("ohjelmo", 1));
+        assertTrue(searchIndex.search("ja", 10).contains(finnish));
+        assertTrue(searchIndex.search("fysiikka", 10).isEmpty());
+        assertTrue(searchIndex.search("  ", 10).isEmpty());
+    }
+
+    /**
+     * Test that the filter is applied before the limit, so a filtered match
+     * is found even when better matches fill the limit.
+     */
+    @Test
+    public void testFilterBeforeLimit() {
+        assertEquals(List.of(databases), searchIndex.search("ohjelmo", 1, module -> module == databases));
+        assertTrue(searchIndex.search("ohjelmo", 10, module -> false).isEmpty());
+    }
+
+    /**
+     * Test that adding a module again replaces the indexed module.
+     */
+    @Test
+    public void testReplace() {
+        CourseUnit loaded = new CourseUnit("Ohjelmointi 1", "cu2", "cu2", 5, "COMP.CS.100",
+                "<p>Python-kieli.</p>", "NULL");
+        searchIndex.add(loaded);
+        assertEquals(4, searchIndex.size());
+        assertSame(loaded, searchIndex.search("python", 10).get(0));
+        assertSame(loaded, searchIndex.search("ohjelmointi", 10).get(0));
+    }
+}
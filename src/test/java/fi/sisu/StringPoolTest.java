@@ -0,0 +1,50 @@
+package fi.sisu;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the StringPool class.
+ */
+public class StringPoolTest {
+
+    /**
+     * Test that equal strings are replaced with a single shared instance.
+     */
+    @Test
+    public void testIntern() {
+        StringPool pool = new StringPool();
+        String first = new String("Kandidaatin opinnot");
+        String second = new String("Kandidaatin opinnot");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertSame(first, pool.intern(first));
+        assertNull(pool.intern(null));
+        assertEquals(1, pool.size());
+        assertEquals(1, pool.getDuplicateCount());
+        assertTrue(pool.getSavedBytes() > 0);
+    }
+
+    /**
+     * Test that modules share their strings and keep the labels as flags.
+     */
+    @Test
+    public void testInternStringsOfModules() {
+        StringPool pool = new StringPool();
+        int labelFlags = DegreeModule.DESCRIPTION_LABEL_FLAG;
+        CourseUnit cu1 = new CourseUnit(new String("course"), "1", "g1", 5, "NULL", "<p>desc</p>", "NULL", labelFlags, pool);
+        CourseUnit cu2 = new CourseUnit(new String("course"), "2", "g2", 5, "NULL", "<p>desc</p>", "NULL", labelFlags, pool);
+
+        assertSame(cu1.getName(), cu2.getName());
+        assertSame(cu1.getOutcomes(), cu2.getOutcomes());
+        assertSame(cu1.getTooltipText(), cu1.getTooltipText());
+        assertEquals("Kuvaus: desc", cu1.getDescription());
+        assertEquals("Kuvaus: desc", cu1.getTooltipText());
+
+        // Texts saved with their labels are read back unchanged
+        CourseUnit saved = new CourseUnit("course", "3", "g3", 5, "NULL", "Kuvaus: desc", "Oppimistavoitteet: out");
+        assertEquals("Kuvaus: desc", saved.getDescription());
+        assertEquals("Oppimistavoitteet: out", saved.getOutcomes());
+    }
+}
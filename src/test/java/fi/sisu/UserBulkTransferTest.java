@@ -0,0 +1,108 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the UserBulkTransfer class.
+ */
+public class UserBulkTransferTest {
+
+    /**
+     * Creates a catalog snapshot with two courses and sets it shared.
+     */
+    private void setUpCatalog() throws IOException {
+        Path file = Files.createTempFile("catalog", ".json");
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        CourseCatalogSnapshot snapshot = new CourseCatalogSnapshot(file);
+        snapshot.addAll(List.of(
+                new CourseUnit("Ohjelmointi", "cu1", "gcu1", 5, "COMP.1", "NULL", "NULL"),
+                new CourseUnit("Äänitekniikka", "cu2", "gcu2", 3, "COMP.2", "NULL", "NULL")));
+        CourseCatalogSnapshot.setShared(snapshot);
+    }
+
+    /**
+     * Test that the valid rows of a CSV file are imported, and that invalid,
+     * repeated and already registered users are not.
+     */
+    @Test
+    public void testImportCsv() throws IOException {
+        setUpCatalog();
+        try {
+            Path directory = Files.createTempDirectory("users");
+            Path source = directory.resolve("cohort.csv");
+            Files.writeString(source, String.join("\n",
+                    UserBulkTransfer.CSV_HEADER,
+                    "1001,\"Virtanen, Äijä\",otm-1,cu1:1;cu2:0",
+                    "1002,Maija,,",
+                    "1002,Maija,,",
+                    "1003,,otm-1,",
+                    "1004,Pekka,otm-1,cu9:1",
+                    "1005,Liisa"));
+            UserBulkTransfer transfer = new UserBulkTransfer(UserFileLayout.flat(directory), 4);
+            UserBulkTransfer.Result result = transfer.importUsers(source);
+            assertEquals(2, result.getSucceeded());
+            assertEquals(4, result.getFailed());
+            assertEquals(4, result.getErrors().size());
+
+            User user = new UserReaderWriter(new User()).getUser(directory.resolve("1001.json").toString());
+            assertEquals("Virtanen, Äijä", user.getName());
+            assertEquals("otm-1", user.getDegreeModule());
+            assertEquals(2, user.getCourses().size());
+            assertTrue(user.getCourses().get(0).isCompleted());
+            assertEquals("Äänitekniikka", user.getCourses().get(1).getName());
+            assertFalse(Files.exists(directory.resolve("1004.json")));
+
+            // The registered users are skipped on the next import
+            result = transfer.importUsers(source);
+            assertEquals(0, result.getSucceeded());
+            assertEquals(2, result.getSkipped());
+        } finally {
+            CourseCatalogSnapshot.setShared(null);
+        }
+    }
+
+    /**
+     * Test that exported users are imported back the same, both as CSV and
+     * as JSON Lines.
+     */
+    @Test
+    public void testExportAndImportBack() throws Exception {
+        setUpCatalog();
+        try {
+            Path directory = Files.createTempDirectory("users");
+            for (int i = 0; i < 50; i++) {
+                User user = new User("Opiskelija " + i, String.valueOf(2000 + i));
+                CourseUnit course = new CourseUnit("Ohjelmointi", "cu1", "gcu1", 5, "COMP.1", "NULL", "NULL");
+                course.setCompleted(i % 2 == 0);
+                user.addCourse(course);
+                assertTrue(new UserReaderWriter(user).writeToFile(directory.resolve(2000 + i + ".json").toString()));
+            }
+            UserBulkTransfer transfer = new UserBulkTransfer(UserFileLayout.flat(directory), 3);
+            Path jsonLines = Files.createTempFile("export", ".jsonl");
+            Path csv = Files.createTempFile("export", ".csv");
+            assertEquals(50, transfer.exportUsers(jsonLines).getSucceeded());
+            assertEquals(50, transfer.exportUsers(csv).getSucceeded());
+            List<String> csvLines = Files.readAllLines(csv);
+            assertEquals(UserBulkTransfer.CSV_HEADER, csvLines.get(0));
+            assertEquals("2000,Opiskelija 0,,cu1:1", csvLines.get(1));
+
+            for (Path export : List.of(jsonLines, csv)) {
+                Path target = Files.createTempDirectory("users");
+                UserBulkTransfer.Result result = new UserBulkTransfer(UserFileLayout.flat(target), 3).importUsers(export);
+                assertEquals(50, result.getSucceeded());
+                assertEquals(0, result.getFailed());
+                User user = new UserReaderWriter(new User()).getUser(target.resolve("2001.json").toString());
+                assertEquals("Opiskelija 1", user.getName());
+                assertFalse(user.getCourses().get(0).isCompleted());
+            }
+        } finally {
+            CourseCatalogSnapshot.setShared(null);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package fi.sisu;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the UserCodecs class.
+ */
+public class UserCodecsTest {
+
+    /**
+     * Test that files in the binary format and in the legacy JSON format are
+     * both read by detecting their format.
+     */
+    @Test
+    public void testDetectFormat() throws IOException {
+        User user = new User("Äijä Öljynen", "5678");
+        user.addCourse(new CourseUnit("Ohjelmointi", "cu1", "gcu1", 5, "COMP.1", "NULL", "NULL"));
+
+        File binary = File.createTempFile("user", ".json");
+        binary.deleteOnExit();
+        Files.write(binary.toPath(), UserCodecs.forName(BinaryUserCodec.NAME).encode(user));
+        File json = File.createTempFile("user", ".json");
+        json.deleteOnExit();
+        Files.writeString(json.toPath(), "\n {\"name\": \"Äijä Öljynen\", \"studentNumber\": \"5678\", \"courses\": "
+                + "[{\"courseName\": \"Ohjelmointi\", \"id\": \"cu1\", \"groupId\": \"gcu1\", \"minCredits\": 5, "
+                + "\"code\": \"COMP.1\", \"description\": \"NULL\", \"outcomes\": \"NULL\", \"completed\": false}]}",
+                StandardCharsets.UTF_8);
+
+        for (File file : new File[]{binary, json}) {
+            User read = new UserReaderWriter(new User()).getUser(file.getAbsolutePath());
+            assertEquals("Äijä Öljynen", read.getName());
+            assertEquals("Ohjelmointi", read.getCourses().get(0).getName());
+        }
+        assertTrue(UserCodecs.decodeHeader(Files.readAllBytes(json.toPath())).getCourses().isEmpty());
+        assertThrows(IOException.class, () -> UserCodecs.decode("name=John".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IOException.class, () -> UserCodecs.decode("{\"name\": \"John\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Test that the formats are found by their names, and JSON is the
+     * default format.
+     */
+    @Test
+    public void testForName() {
+        assertEquals(System.getProperty(UserCodecs.CODEC_PROPERTY, JsonUserCodec.NAME),
+                UserCodecs.fromSystemProperties().getName());
+        assertEquals(BinaryUserCodec.NAME, UserCodecs.forName("binary").getName());
+        assertNull(UserCodecs.forName("xml"));
+    }
+}
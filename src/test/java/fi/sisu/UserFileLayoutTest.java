@@ -0,0 +1,165 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the UserFileLayout class.
+ */
+public class UserFileLayoutTest {
+
+    /**
+     * Test that the files of the sharded layout are in two levels of
+     * directories, and that the registered users are found from the index
+     * also after the layout is created again.
+     */
+    @Test
+    public void testShardedIndex() throws Exception {
+        Path root = Files.createTempDirectory("users");
+        UserFileLayout layout = UserFileLayout.sharded(root);
+        Path file = layout.fileOf("12345");
+        assertEquals(root, file.getParent().getParent().getParent());
+        assertEquals("12345.json", file.getFileName().toString());
+        assertEquals(file, UserFileLayout.sharded(root).fileOf("12345"));
+        assertEquals(Path.of("12345.json"), UserFileLayout.flat(Path.of("")).fileOf("12345"));
+
+        assertFalse(layout.isRegistered("12345"));
+        layout.register("12345");
+        layout.register("12345");
+        assertTrue(layout.isRegistered("12345"));
+        assertEquals(List.of("12345"), Files.readAllLines(root.resolve(UserFileLayout.INDEX_FILE)));
+        assertTrue(UserFileLayout.sharded(root).isRegistered("12345"));
+    }
+
+    /**
+     * Test that the users appended to the index file by another process are
+     * found without reading the whole index again.
+     */
+    @Test
+    public void testIndexAppendedByOthers() throws Exception {
+        Path root = Files.createTempDirectory("users");
+        UserFileLayout layout = UserFileLayout.sharded(root);
+        layout.register("1");
+        assertFalse(layout.isRegistered("2"));
+
+        UserFileLayout other = UserFileLayout.sharded(root);
+        other.register("2");
+        other.register("3");
+        assertTrue(layout.isRegistered("2"));
+        assertEquals(List.of("1", "2", "3"), layout.studentNumbers());
+    }
+
+    /**
+     * Test that the user files written through UserReaderWriter go to the
+     * shared sharded layout and are added to its index.
+     */
+    @Test
+    public void testWriteThroughSharedLayout() throws Exception {
+        Path root = Files.createTempDirectory("users");
+        UserFileLayout.setShared(UserFileLayout.sharded(root));
+        try {
+            Authentication auth = new Authentication();
+            assertTrue(auth.isRegisterInfoValid("55555", "Äijä"));
+            assertTrue(Files.exists(UserFileLayout.getShared().fileOf("55555")));
+            assertTrue(UserReaderWriter.isRegistered("55555"));
+            assertFalse(auth.isRegisterInfoValid("55555", "Äijä"));
+            assertTrue(auth.login("55555"));
+            assertEquals("Äijä", auth.getCurrentlyLoggedInUser().getName());
+        } finally {
+            UserFileLayout.setShared(null);
+        }
+    }
+
+    /**
+     * Test that the migration moves the flat files and their journals into
+     * the shards, and that a lost index is rebuilt from the directories.
+     */
+    @Test
+    public void testMigrateAndRebuild() throws Exception {
+        Path flat = Files.createTempDirectory("flat");
+        for (String studentNumber : List.of("1", "2", "3")) {
+            User user = new User("Opiskelija " + studentNumber, studentNumber);
+            assertTrue(new UserReaderWriter(user).writeToFile(flat.resolve(studentNumber + ".json").toString()));
+        }
+        Files.writeString(JournalUserStore.journalOf(flat.resolve("2.json")), "");
+        Path root = Files.createTempDirectory("users");
+        UserFileLayout layout = UserFileLayout.sharded(root);
+        assertEquals(3, layout.migrate(flat));
+        assertEquals(0, layout.migrate(flat));
+        assertFalse(Files.exists(flat.resolve("1.json")));
+        assertTrue(Files.exists(JournalUserStore.journalOf(layout.fileOf("2"))));
+        User user = new UserReaderWriter(new User()).getUser(layout.fileOf("3").toString());
+        assertEquals("Opiskelija 3", user.getName());
+
+        Files.delete(root.resolve(UserFileLayout.INDEX_FILE));
+        UserFileLayout reopened = UserFileLayout.sharded(root);
+        assertEquals(List.of("1", "2", "3"), reopened.studentNumbers());
+        assertTrue(Files.exists(root.resolve(UserFileLayout.INDEX_FILE)));
+    }
+
+    /**
+     * Test that an index rebuilt by another process is read again from the
+     * start, also when it is longer than the part already read.
+     */
+    @Test
+    public void testIndexRebuiltByOthers() throws Exception {
+        Path root = Files.createTempDirectory("users");
+        UserFileLayout layout = UserFileLayout.sharded(root);
+        for (String studentNumber : List.of("0", "1", "2")) {
+            layout.createDirectories(studentNumber);
+            Files.writeString(layout.fileOf(studentNumber), "{}");
+        }
+        layout.rebuildIndex();
+        Files.delete(layout.fileOf("0"));
+        layout.rebuildIndex();
+        assertFalse(layout.isRegistered("0"));
+
+        Files.writeString(layout.fileOf("0"), "{}");
+        UserFileLayout.sharded(root).rebuildIndex();
+        assertTrue(layout.isRegistered("0"));
+    }
+
+    /**
+     * Test that a user whose file can not be written is not added to the
+     * index.
+     */
+    @Test
+    public void testFailedWriteIsNotRegistered() throws Exception {
+        Path root = Files.createTempDirectory("users");
+        UserFileLayout.setShared(UserFileLayout.sharded(root));
+        try {
+            Path file = UserFileLayout.getShared().fileOf("77777");
+            // A directory in place of the file makes the write fail
+            Files.createDirectories(file.resolve("blocked"));
+            assertFalse(new UserReaderWriter(new User("Äijä", "77777")).writeToFile(file.toString()));
+            assertFalse(UserReaderWriter.isRegistered("77777"));
+        } finally {
+            UserFileLayout.setShared(null);
+        }
+    }
+
+    /**
+     * Test that the users moved before a failed move of the migration are in
+     * the index.
+     */
+    @Test
+    public void testFailedMigrationKeepsMovedUsers() throws Exception {
+        Path flat = Files.createTempDirectory("flat");
+        for (String studentNumber : List.of("1", "2", "3")) {
+            Files.writeString(flat.resolve(studentNumber + ".json"), "{}");
+        }
+        Path root = Files.createTempDirectory("users");
+        UserFileLayout layout = UserFileLayout.sharded(root);
+        Files.createDirectories(layout.fileOf("2").resolve("blocked"));
+        assertThrows(IOException.class, () -> layout.migrate(flat));
+
+        UserFileLayout reopened = UserFileLayout.sharded(root);
+        assertTrue(reopened.isRegistered("1"));
+        assertFalse(reopened.isRegistered("2"));
+        assertTrue(Files.exists(flat.resolve("2.json")));
+    }
+}
@@ -0,0 +1,117 @@
+package fi.sisu;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the UserJsonWriter class.
+ */
+public class UserJsonWriterTest {
+
+    /**
+     * Creates a user with a degree programme and two courses.
+     *
+     * @return the user.
+     */
+    private User createUser() {
+        User user = new User("Äijä Öljynen", "5678");
+        user.setDegreeModule("otm-1");
+        CourseUnit course1 = new CourseUnit("Ohjelmointi", "cu1", "gcu1", 5, "COMP.1", "<p>Kuvaus</p>", "NULL");
+        CourseUnit course2 = new CourseUnit("Äänitekniikka", "cu2", "gcu2", 3, "COMP.2", "NULL", "NULL");
+        course1.setCompleted(true);
+        user.addCourse(course1);
+        user.addCourse(course2);
+        return user;
+    }
+
+    /**
+     * Test that the compact output has no line breaks and the fields are
+     * written in the same order as before.
+     */
+    @Test
+    public void testCompactAndPrettyOutput() throws IOException {
+        StringWriter compact = new StringWriter();
+        new UserJsonWriter(true).write(createUser(), compact);
+        assertTrue(compact.toString().startsWith("{\"name\":\"Äijä Öljynen\",\"studentNumber\":\"5678\",\"degreeModule\":\"otm-1\","));
+        assertFalse(compact.toString().contains("\n"));
+
+        StringWriter pretty = new StringWriter();
+        new UserJsonWriter(false).write(createUser(), pretty);
+        assertTrue(pretty.toString().contains("\n  \"name\": \"Äijä Öljynen\""));
+        assertTrue(pretty.toString().length() > compact.toString().length());
+    }
+
+    /**
+     * Test that a user without a degree programme is written without the
+     * degreeModule field.
+     */
+    @Test
+    public void testUserWithoutDegreeProgramme() throws IOException {
+        StringWriter writer = new StringWriter();
+        new UserJsonWriter(true).write(new User("John Doe", "1234"), writer);
+        assertEquals("{\"name\":\"John Doe\",\"studentNumber\":\"1234\",\"courses\":[]}", writer.toString());
+    }
+
+    /**
+     * Test that a written file can be read back.
+     */
+    @Test
+    public void testWriteToFile() throws IOException {
+        File file = File.createTempFile("user", ".json");
+        file.deleteOnExit();
+        new UserJsonWriter(true).writeToFile(createUser(), file.toPath());
+
+        User user = new UserReaderWriter(new User()).getUser(file.getAbsolutePath());
+        assertEquals("Äijä Öljynen", user.getName());
+        assertEquals("otm-1", user.getDegreeModule());
+        assertEquals(2, user.getCourses().size());
+        assertEquals("Äänitekniikka", user.getCourses().get(1).getName());
+        assertTrue(user.getCourses().get(0).isCompleted());
+    }
+
+    /**
+     * Test that the reference format writes only the ids and completion of
+     * the courses, and that the courses are read back from the snapshot. A
+     * file in the old format is read as before.
+     */
+    @Test
+    public void testReferenceFormat() throws IOException {
+        Path catalogFile = Files.createTempFile("catalog", ".json");
+        Files.delete(catalogFile);
+        catalogFile.toFile().deleteOnExit();
+        CourseCatalogSnapshot catalog = new CourseCatalogSnapshot(catalogFile);
+        CourseCatalogSnapshot.setShared(catalog);
+        try {
+            File oldFormat = File.createTempFile("user", ".json");
+            oldFormat.deleteOnExit();
+            new UserJsonWriter(true).writeToFile(createUser(), oldFormat.toPath());
+            File referenceFormat = File.createTempFile("user", ".json");
+            referenceFormat.deleteOnExit();
+            new UserJsonWriter(true, catalog).writeToFile(createUser(), referenceFormat.toPath());
+
+            String written = Files.readString(referenceFormat.toPath());
+            assertTrue(written.contains("\"catalogVersion\":1"));
+            assertTrue(written.contains("{\"id\":\"cu1\",\"groupId\":\"gcu1\",\"completed\":true}"));
+            assertFalse(written.contains("Ohjelmointi"));
+            assertTrue(referenceFormat.length() < oldFormat.length());
+
+            for (File file : new File[]{oldFormat, referenceFormat}) {
+                User user = new UserReaderWriter(new User()).getUser(file.getAbsolutePath());
+                assertEquals(2, user.getCourses().size());
+                assertEquals("Ohjelmointi", user.getCourses().get(0).getName());
+                assertEquals("Kuvaus", user.getCourses().get(0).getDescription());
+                assertTrue(user.getCourses().get(0).isCompleted());
+                assertFalse(user.getCourses().get(1).isCompleted());
+            }
+            // The courses read from the snapshot are copies
+            assertFalse(catalog.get("cu1").isCompleted());
+        } finally {
+            CourseCatalogSnapshot.setShared(null);
+        }
+    }
+}
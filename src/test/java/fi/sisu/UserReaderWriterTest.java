@@ -2,6 +2,7 @@ package fi.sisu;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -145,4 +146,54 @@ public class UserReaderWriterTest {
         assertEquals("MATH Math (5 op)", actualUser.getCourses().get(0).toString());
     }
 
+    /**
+     * Test of saveCourses method, of class UserReaderWriter.
+     */
+    @Test
+    public void testSaveCourses() {
+        User user = new User("John Doe", "12346");
+        CourseUnit math = new CourseUnit("Math", "MATH101", "Group A", 5, "MATH", "Calculus", "Calculus topics");
+        CourseUnit physics = new CourseUnit("Physics", "PHYS101", "Group B", 5, "PHYS", "Mechanics", "Mechanics topics");
+        CourseUnit chemistry = new CourseUnit("Chemistry", "CHEM101", "Group C", 3, "CHEM", "NULL", "NULL");
+        UserReaderWriter readerWriter = new UserReaderWriter(user);
+
+        CourseChangeReport report = readerWriter.saveCourses(List.of(math, physics, math), user);
+        assertEquals(List.of(math, physics), report.getAdded());
+        assertTrue(report.getRemoved().isEmpty());
+        assertEquals(2, readerWriter.getUser("12346.json").getCourses().size());
+
+        User userFromFile = readerWriter.getUser("12346.json");
+        CourseUnit completedPhysics = new CourseUnit("Physics", "PHYS101", "Group B", 5, "PHYS", "Mechanics", "Mechanics topics");
+        completedPhysics.setCompleted(true);
+        report = readerWriter.saveCourses(List.of(completedPhysics, chemistry), userFromFile);
+        assertEquals(List.of(chemistry), report.getAdded());
+        assertEquals("MATH101", report.getRemoved().get(0).getId());
+        assertEquals(List.of(completedPhysics), report.getCompletionChanged());
+
+        User actualUser = readerWriter.getUser("12346.json");
+        assertEquals(2, actualUser.getCourses().size());
+        assertTrue(actualUser.getCourses().get(0).isCompleted());
+        assertEquals("CHEM Chemistry (3 op)", actualUser.getCourses().get(1).toString());
+        assertFalse(readerWriter.saveCourses(List.of(completedPhysics, chemistry), actualUser).hasChanges());
+    }
+
+    /**
+     * Test of userExists and readUserHeader methods, of class UserReaderWriter.
+     */
+    @Test
+    public void testUserExistsAndReadUserHeader() throws Exception {
+        File file = new File(tempFolder, "testHeader.json");
+        assertFalse(UserReaderWriter.userExists(file.getAbsolutePath()));
+        assertNull(UserReaderWriter.readUserHeader(file.getAbsolutePath()));
+
+        user.setDegreeModule("Computer Science");
+        user.addCourse(new CourseUnit("Math", "MATH101", "Group A", 5, "MATH", "Calculus", "Calculus topics"));
+        assertTrue(readerWriter.writeToFile(file.getAbsolutePath()));
+        assertTrue(UserReaderWriter.userExists(file.getAbsolutePath()));
+        User header = UserReaderWriter.readUserHeader(file.getAbsolutePath());
+        assertEquals("John Doe", header.getName());
+        assertEquals("1234", header.getStudentNumber());
+        assertEquals("Computer Science", header.getDegreeModule());
+        assertTrue(header.getCourses().isEmpty());
+    }
 }
@@ -0,0 +1,103 @@
+package fi.sisu;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test class for the WriteBehindScheduler class.
+ */
+public class WriteBehindSchedulerTest {
+
+    /**
+     * Test that rapid writes of the same file are combined and the latest
+     * content is written.
+     */
+    @Test
+    public void testCoalescedWrites() throws Exception {
+        Path file = Files.createTempDirectory("writebehind").resolve("1234.json");
+        WriteBehindScheduler scheduler = new WriteBehindScheduler(100);
+        scheduler.schedule(file, "first".getBytes(StandardCharsets.UTF_8));
+        scheduler.schedule(file, "second".getBytes(StandardCharsets.UTF_8));
+        assertFalse(Files.exists(file));
+
+        Thread.sleep(1000);
+        assertEquals("second", Files.readString(file));
+        scheduler.close();
+    }
+
+    /**
+     * Test that a waiting write is written when flushed, dropped when
+     * cancelled and written immediately after the scheduler is closed.
+     */
+    @Test
+    public void testFlushCancelAndClose() throws IOException {
+        Path file = Files.createTempDirectory("writebehind").resolve("1234.json");
+        WriteBehindScheduler scheduler = new WriteBehindScheduler(60000);
+        scheduler.schedule(file, "first".getBytes(StandardCharsets.UTF_8));
+        scheduler.flush(file);
+        assertEquals("first", Files.readString(file));
+
+        scheduler.schedule(file, "second".getBytes(StandardCharsets.UTF_8));
+        scheduler.cancel(file);
+        scheduler.flush(file);
+        assertEquals("first", Files.readString(file));
+
+        scheduler.schedule(file, "third".getBytes(StandardCharsets.UTF_8));
+        scheduler.close();
+        assertEquals("third", Files.readString(file));
+        scheduler.schedule(file, "fourth".getBytes(StandardCharsets.UTF_8));
+        assertEquals("fourth", Files.readString(file));
+    }
+
+    /**
+     * Test that a failed write is reported through its future and kept
+     * waiting, and that it is written when the file can be written again.
+     */
+    @Test
+    public void testFailedWriteIsKept() throws Exception {
+        Path folder = Files.createTempDirectory("writebehind").resolve("missing");
+        Path file = folder.resolve("1234.json");
+        WriteBehindScheduler scheduler = new WriteBehindScheduler(60000);
+        CompletableFuture<Void> future = scheduler.schedule(file, "first".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> scheduler.flush(file));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+        assertTrue(scheduler.isPending(file));
+
+        Files.createDirectories(folder);
+        CompletableFuture<Void> later = scheduler.schedule(file, "second".getBytes(StandardCharsets.UTF_8));
+        scheduler.flush(file);
+        later.get(5, TimeUnit.SECONDS);
+        assertFalse(scheduler.isPending(file));
+        assertEquals("second", Files.readString(file));
+        scheduler.close();
+    }
+
+    /**
+     * Test that a direct write replaces the waiting write of the same file,
+     * and that a failed direct write is not kept waiting.
+     */
+    @Test
+    public void testWriteNow() throws Exception {
+        Path folder = Files.createTempDirectory("writebehind");
+        Path file = folder.resolve("1234.json");
+        WriteBehindScheduler scheduler = new WriteBehindScheduler(60000);
+        CompletableFuture<Void> waiting = scheduler.schedule(file, "first".getBytes(StandardCharsets.UTF_8));
+        scheduler.writeNow(file, "second".getBytes(StandardCharsets.UTF_8));
+        waiting.get(5, TimeUnit.SECONDS);
+        assertFalse(scheduler.isPending(file));
+        assertEquals("second", Files.readString(file));
+
+        Path missing = folder.resolve("missing").resolve("1234.json");
+        assertThrows(IOException.class, () -> scheduler.writeNow(missing, "third".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(scheduler.isPending(missing));
+        scheduler.close();
+    }
+}